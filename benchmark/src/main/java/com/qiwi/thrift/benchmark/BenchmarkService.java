@@ -0,0 +1,55 @@
+package com.qiwi.thrift.benchmark;
+
+import com.qiwi.thrift.pool.server.DemoServer;
+import com.qiwi.thrift.pool.types.MapResult;
+import com.qiwi.thrift.pool.types.Status;
+import org.apache.thrift.TException;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Implementation without work, to measure overhead of server and client only
+ */
+public class BenchmarkService implements DemoServer.Iface {
+    private static final MapResult OK = new MapResult(Status.OK);
+
+    @Override
+    public boolean healthCheck() throws TException {
+        return true;
+    }
+
+    @Override
+    public MapResult request(String text, long id) throws TException {
+        return OK;
+    }
+
+    @Override
+    public MapResult requestWithError(String text, long id) throws TException {
+        return OK;
+    }
+
+    @Override
+    public void requestFullAsync(long requestId, String text, long id) throws TException {
+    }
+
+    @Override
+    public MapResult responseFullAsync(long requestId) throws TException {
+        return OK;
+    }
+
+    @Override
+    public MapResult crash(ByteBuffer trash, String text) throws TException {
+        return OK;
+    }
+
+    @Override
+    public MapResult requestWithMap(Map<String, Long> data, long id) throws TException {
+        return OK;
+    }
+
+    @Override
+    public Status loadTest() throws TException {
+        return Status.OK;
+    }
+}
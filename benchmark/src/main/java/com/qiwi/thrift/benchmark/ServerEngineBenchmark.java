@@ -0,0 +1,97 @@
+package com.qiwi.thrift.benchmark;
+
+import com.qiwi.thrift.pool.SyncClientFactory;
+import com.qiwi.thrift.pool.ThriftClientConfig;
+import com.qiwi.thrift.pool.server.DemoServer;
+import com.qiwi.thrift.pool.types.MapResult;
+import com.qiwi.thrift.reflect.ReflectConfigurator;
+import com.qiwi.thrift.server.AbstractThriftServer;
+import com.qiwi.thrift.server.ThriftEndpointConfig;
+import com.qiwi.thrift.server.ThriftServerConfig;
+import com.qiwi.thrift.server.ThriftServerEngine;
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small requests from few clients: SELECTOR vs THREAD_PER_CONNECTION server engine.
+ * Every benchmark thread use own connection from pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(ServerEngineBenchmark.CLIENT_THREADS)
+public class ServerEngineBenchmark {
+    static final int CLIENT_THREADS = 8;
+
+    @Param({"SELECTOR", "THREAD_PER_CONNECTION"})
+    public ThriftServerEngine engine;
+
+    private AbstractThriftServer server;
+    private DemoServer.Iface client;
+
+    @Setup
+    public void setUp() {
+        ThriftServerConfig config = new ThriftServerConfig.Builder()
+                .setServerThriftPort(0)
+                .setThriftPoolSize(CLIENT_THREADS * 2)
+                .setServerEngine(engine)
+                .build();
+        server = new AbstractThriftServer() {
+            @Override
+            public ThriftServerConfig createConfig() {
+                return config;
+            }
+
+            @Override
+            public ThriftEndpointConfig createEndpointConfig() {
+                return new ThriftEndpointConfig.Builder()
+                        .addEndpoint(DemoServer.Iface.class, new BenchmarkService())
+                        .build();
+            }
+        };
+        server.startServer();
+        server.awaitStart();
+        client = new SyncClientFactory(new ReflectConfigurator()).create(
+                DemoServer.Iface.class,
+                new ThriftClientConfig.Builder()
+                        .setAddress(server.getAddress())
+                        .setMaxConnections(CLIENT_THREADS)
+                        .build()
+        );
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ((Closeable) client).close();
+        server.close();
+    }
+
+    @Benchmark
+    public boolean healthCheck() throws TException {
+        return client.healthCheck();
+    }
+
+    @Benchmark
+    public MapResult request() throws TException {
+        return client.request("text", 42);
+    }
+}
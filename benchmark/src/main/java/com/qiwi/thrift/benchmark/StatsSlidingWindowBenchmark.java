@@ -0,0 +1,96 @@
+package com.qiwi.thrift.benchmark;
+
+import com.qiwi.thrift.balancer.load.StatsSlidingWindow;
+import com.qiwi.thrift.utils.ThriftRequestStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request statistic of one node, recorded from 1, 8 and 64 threads.
+ * atomic* - previous bucket with AtomicLong counters, window* - StatsSlidingWindow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsSlidingWindowBenchmark {
+    private static final long LATENCY_NANOS = 1_000_000;
+
+    private final StatsSlidingWindow window = new StatsSlidingWindow(Duration.ofMillis(100), 10);
+    private final AtomicBucket atomicBucket = new AtomicBucket();
+
+    private void window() {
+        window.getCurrent().requestBegin();
+        window.getCurrent().requestEnd(ThriftRequestStatus.SUCCESS, LATENCY_NANOS);
+    }
+
+    private void atomic() {
+        atomicBucket.requestBegin();
+        atomicBucket.requestEnd(LATENCY_NANOS);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void window1() {
+        window();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void window8() {
+        window();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void window64() {
+        window();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void atomic1() {
+        atomic();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void atomic8() {
+        atomic();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void atomic64() {
+        atomic();
+    }
+
+    private static class AtomicBucket {
+        private final AtomicLong requestsBeginCount = new AtomicLong(0);
+        private final AtomicLong requestsEndCount = new AtomicLong(0);
+        private final AtomicLong requestsLatencySumNanos = new AtomicLong(0);
+
+        private void requestBegin() {
+            requestsBeginCount.incrementAndGet();
+        }
+
+        private void requestEnd(long latencyNanos) {
+            requestsEndCount.incrementAndGet();
+            requestsLatencySumNanos.addAndGet(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.qiwi.thrift.benchmark;
+
+import com.qiwi.thrift.balancer.WeightedBalancer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node selection by weight: alias table vs binary search over cumulative weights.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeightedBalancerBenchmark {
+    @Param({"2", "10", "100", "500", "1000"})
+    public int nodes;
+
+    @Param({"ALIAS", "BINARY_SEARCH"})
+    public WeightedBalancer.Sampling sampling;
+
+    private WeightedBalancer<Integer> balancer;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(72049230523L);
+        List<Integer> items = new ArrayList<>(nodes);
+        double[] weights = new double[nodes];
+        for (int i = 0; i < nodes; i++) {
+            items.add(i);
+            weights[i] = 0.5 + random.nextDouble();
+        }
+        balancer = new WeightedBalancer<>(
+                items,
+                item -> weights[item],
+                () -> ThreadLocalRandom.current().nextDouble(),
+                sampling
+        );
+    }
+
+    @Benchmark
+    public Optional<Integer> get() {
+        return balancer.get();
+    }
+}
@@ -622,6 +622,8 @@ class GroupJmxReporter implements Closeable {
 
         double get75thPercentile();
 
+        double get90thPercentile();
+
         double get95thPercentile();
 
         double get98thPercentile();
@@ -680,6 +682,11 @@ class GroupJmxReporter implements Closeable {
             return metric.getSnapshot().get75thPercentile() * durationFactor;
         }
 
+        @Override
+        public double get90thPercentile() {
+            return metric.getSnapshot().getValue(0.9) * durationFactor;
+        }
+
         @Override
         public double get95thPercentile() {
             return metric.getSnapshot().get95thPercentile() * durationFactor;
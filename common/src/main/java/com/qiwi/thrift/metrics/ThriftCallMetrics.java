@@ -0,0 +1,274 @@
+package com.qiwi.thrift.metrics;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import com.qiwi.thrift.utils.ThriftRequestStatus;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Timers and meters of calls, resolved from registry once per call type, service, node and method.
+ * After first call recording don't build metric names and don't allocate memory.
+ *
+ * Metric names same as names built by ThriftMonitorImp, meters of errors registered on first error.
+ */
+class ThriftCallMetrics {
+    private static final char SEPARATOR = ThriftMonitorImp.SEPARATOR;
+
+    private final MetricRegistry metrics;
+    private final Map<ThriftCallType, ConcurrentMap<String, ServiceMetrics>> services = new EnumMap<>(ThriftCallType.class);
+    private final ConcurrentMap<String, QueueMetrics> queues = new ConcurrentHashMap<>();
+    /**
+     * null - reservoir of registry by default
+     */
+    private volatile Supplier<Reservoir> reservoirFactory;
+
+    ThriftCallMetrics(MetricRegistry metrics) {
+        this.metrics = metrics;
+        // Заполняется один раз, дальше только чтение
+        for (ThriftCallType type : ThriftCallType.values()) {
+            services.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * @param reservoirFactory reservoir of timers, created after this call
+     */
+    void setReservoirFactory(Supplier<Reservoir> reservoirFactory) {
+        this.reservoirFactory = reservoirFactory;
+    }
+
+    private Timer timer(String name) {
+        Supplier<Reservoir> factory = reservoirFactory;
+        if (factory == null) {
+            return metrics.timer(name);
+        } else {
+            return metrics.timer(name, () -> new Timer(factory.get()));
+        }
+    }
+
+    void logCall(
+            ThriftCallType type,
+            ThriftClientAddress address,
+            String serviceName,
+            String method,
+            long nanos,
+            ThriftRequestStatus requestStatus
+    ) {
+        logCall(type, address, serviceName, -1, method, nanos, requestStatus);
+    }
+
+    /**
+     * @param methodId number of method, unique inside service interface, negative if unknown
+     */
+    void logCall(
+            ThriftCallType type,
+            ThriftClientAddress address,
+            String serviceName,
+            int methodId,
+            String method,
+            long nanos,
+            ThriftRequestStatus requestStatus
+    ) {
+        ServiceMetrics service = getService(type, serviceName);
+        NodeMetrics node = service.getNode(address);
+        node.methods.get(methodId, method).log(nanos, requestStatus);
+        node.total.log(nanos, requestStatus);
+        if (service.allNodes != null) {
+            service.allNodes.log(nanos, requestStatus);
+            service.allNodesMethods.get(methodId, method).log(nanos, requestStatus);
+        }
+    }
+
+    void logQueueTime(String serviceName, long queueTimeNanos, boolean shed) {
+        QueueMetrics queue = queues.get(serviceName);
+        if (queue == null) {
+            queue = queues.computeIfAbsent(serviceName, QueueMetrics::new);
+        }
+        queue.queueTime.update(queueTimeNanos, TimeUnit.NANOSECONDS);
+        if (shed) {
+            queue.markShed();
+        }
+    }
+
+    private ServiceMetrics getService(ThriftCallType type, String serviceName) {
+        ConcurrentMap<String, ServiceMetrics> typeServices = services.get(type);
+        ServiceMetrics service = typeServices.get(serviceName);
+        if (service == null) {
+            service = typeServices.computeIfAbsent(serviceName, name -> new ServiceMetrics(type, name));
+        }
+        return service;
+    }
+
+    private static String getMethodPath(String path, String method) {
+        // method нужен на случай если имя метода совпадет с доп-параметром, напрмер error
+        return path + "method" + SEPARATOR + method + SEPARATOR;
+    }
+
+    private class ServiceMetrics {
+        private final String path;
+        private final ConcurrentMap<ThriftClientAddress, NodeMetrics> nodes = new ConcurrentHashMap<>();
+        /**
+         * null если для типа вызова не пишется статистика по всем нодам
+         */
+        private final CallMetrics allNodes;
+        private final MethodMetrics allNodesMethods;
+
+        private ServiceMetrics(ThriftCallType type, String serviceName) {
+            path = type.toString() + SEPARATOR + serviceName + SEPARATOR;
+            if (type.isLogAllHostStat()) {
+                allNodes = new CallMetrics(path + ThriftMonitorImp.ALL + SEPARATOR);
+                allNodesMethods = new MethodMetrics(allNodes.path);
+            } else {
+                allNodes = null;
+                allNodesMethods = null;
+            }
+        }
+
+        private NodeMetrics getNode(ThriftClientAddress address) {
+            NodeMetrics node = nodes.get(address);
+            if (node == null) {
+                node = nodes.computeIfAbsent(
+                        address,
+                        key -> new NodeMetrics(path + key.toEscapedString() + SEPARATOR)
+                );
+            }
+            return node;
+        }
+    }
+
+    private class NodeMetrics {
+        private final CallMetrics total;
+        private final MethodMetrics methods;
+
+        private NodeMetrics(String path) {
+            total = new CallMetrics(path);
+            methods = new MethodMetrics(path);
+        }
+    }
+
+    /**
+     * Metrics of methods by name, metrics of first methods also cached by method number
+     */
+    private class MethodMetrics {
+        private static final int MAX_CACHED_ID = 64;
+
+        private final String path;
+        private final ConcurrentMap<String, CallMetrics> byName = new ConcurrentHashMap<>();
+        private final AtomicReferenceArray<CallMetrics> byId = new AtomicReferenceArray<>(MAX_CACHED_ID);
+
+        private MethodMetrics(String path) {
+            this.path = path;
+        }
+
+        private CallMetrics get(int methodId, String method) {
+            if (methodId < 0 || methodId >= MAX_CACHED_ID) {
+                return get(method);
+            }
+            CallMetrics result = byId.get(methodId);
+            // Номера уникальны только внутри интерфейса, с одним именем сервиса могут работать разные интерфейсы
+            if (result == null || !result.method.equals(method)) {
+                result = get(method);
+                byId.set(methodId, result);
+            }
+            return result;
+        }
+
+        private CallMetrics get(String method) {
+            CallMetrics result = byName.get(method);
+            if (result == null) {
+                result = byName.computeIfAbsent(
+                        method,
+                        key -> new CallMetrics(getMethodPath(path, key), key)
+                );
+            }
+            return result;
+        }
+    }
+
+    private class CallMetrics {
+        private static final int UNEXPECTED_ERROR = 0;
+        private static final int ERROR = 1;
+        private static final int APP_ERROR = 2;
+        private static final int CONNECTION_ERROR = 3;
+
+        private final String path;
+        /**
+         * null for metrics of all methods
+         */
+        private final String method;
+        private final Timer requests;
+        private final AtomicReferenceArray<Meter> errors = new AtomicReferenceArray<>(4);
+
+        private CallMetrics(String path) {
+            this(path, null);
+        }
+
+        private CallMetrics(String path, String method) {
+            this.path = path;
+            this.method = method;
+            this.requests = timer(path + "requests");
+        }
+
+        private void log(long nanos, ThriftRequestStatus requestStatus) {
+            requests.update(nanos, TimeUnit.NANOSECONDS);
+            switch (requestStatus) {
+                case SUCCESS:
+                    break;
+                case UNEXPECTED_ERROR:
+                    mark(UNEXPECTED_ERROR, "unexpectedError");
+                    mark(ERROR, "error");
+                    break;
+                case APP_ERROR:
+                    mark(APP_ERROR, "appError");
+                    break;
+                case CONNECTION_ERROR:
+                    mark(CONNECTION_ERROR, "connectionError");
+                    mark(ERROR, "error");
+                    break;
+                case INTERNAL_ERROR:
+                    mark(ERROR, "error");
+                    break;
+            }
+        }
+
+        private void mark(int index, String name) {
+            Meter meter = errors.get(index);
+            if (meter == null) {
+                meter = metrics.meter(path + name);
+                errors.set(index, meter);
+            }
+            meter.mark();
+        }
+    }
+
+    private class QueueMetrics {
+        private final String path;
+        private final Timer queueTime;
+        private volatile Meter shed;
+
+        private QueueMetrics(String serviceName) {
+            path = ThriftCallType.SERVER.toString() + SEPARATOR + serviceName + SEPARATOR
+                    + "admission" + SEPARATOR;
+            queueTime = timer(path + "queueTime");
+        }
+
+        private void markShed() {
+            Meter meter = shed;
+            if (meter == null) {
+                meter = metrics.meter(path + "shed");
+                shed = meter;
+            }
+            meter.mark();
+        }
+    }
+}
@@ -17,6 +17,12 @@ public class ThriftGraphiteConfig {
     private final Duration graphitePushInterval;
     private final String cluster;
     private final String hostName;
+    private final boolean latencyHistogram;
+    private final int latencySignificantDigits;
+    private final Duration latencyInterval;
+    private final boolean prometheusEnabled;
+    private final String prometheusHost;
+    private final int prometheusPort;
 
     private ThriftGraphiteConfig(
             Builder builder
@@ -35,6 +41,12 @@ public class ThriftGraphiteConfig {
         this.graphitePushInterval = builder.getGraphitePushInterval();
         this.cluster = Objects.requireNonNull(builder.getCluster(), "Application name not set");
         this.hostName = builder.getHostName();
+        this.latencyHistogram = builder.isLatencyHistogram();
+        this.latencySignificantDigits = builder.getLatencySignificantDigits();
+        this.latencyInterval = builder.getLatencyInterval();
+        this.prometheusEnabled = builder.isPrometheusEnabled();
+        this.prometheusHost = Objects.requireNonNull(builder.getPrometheusHost(), "prometheusHost");
+        this.prometheusPort = builder.getPrometheusPort();
     }
 
     public boolean isGraphiteEnabled() {
@@ -61,6 +73,30 @@ public class ThriftGraphiteConfig {
         return hostName;
     }
 
+    public boolean isLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    public int getLatencySignificantDigits() {
+        return latencySignificantDigits;
+    }
+
+    public Duration getLatencyInterval() {
+        return latencyInterval;
+    }
+
+    public boolean isPrometheusEnabled() {
+        return prometheusEnabled;
+    }
+
+    public String getPrometheusHost() {
+        return prometheusHost;
+    }
+
+    public int getPrometheusPort() {
+        return prometheusPort;
+    }
+
     public static class Builder {
         private boolean graphiteEnabled = true;
         private String graphiteHost;
@@ -68,6 +104,12 @@ public class ThriftGraphiteConfig {
         private Duration graphitePushInterval = Duration.ofSeconds(60);
         private String cluster;
         private String hostName;
+        private boolean latencyHistogram = false;
+        private int latencySignificantDigits = 2;
+        private Duration latencyInterval = Duration.ofSeconds(60);
+        private boolean prometheusEnabled = false;
+        private String prometheusHost = "127.0.0.1";
+        private int prometheusPort = 9404;
 
         private ParameterSource source = ParameterSource.EMPTY;
 
@@ -140,6 +182,89 @@ public class ThriftGraphiteConfig {
             return this;
         }
 
+        public boolean isLatencyHistogram() {
+            return source.getBoolean("latency.histogram", latencyHistogram);
+        }
+
+        /**
+         * Timers of calls use HDR-style histogram instead of exponentially decaying reservoir:
+         * cheaper recording from many threads and accurate p99.9.
+         * Percentiles and max calculated over latency interval.
+         * Applied to timers created after connectToGraphite
+         * @param latencyHistogram
+         */
+        public Builder setLatencyHistogram(boolean latencyHistogram) {
+            this.latencyHistogram = latencyHistogram;
+            return this;
+        }
+
+        public int getLatencySignificantDigits() {
+            return source.getInteger("latency.significantDigits", latencySignificantDigits);
+        }
+
+        /**
+         * @param latencySignificantDigits precision of histogram 1 - 3, relative error 10%, 1% or 0.1%.
+         *                                 Memory of every timer about 3.5, 25 or 170 KB
+         */
+        public Builder setLatencySignificantDigits(int latencySignificantDigits) {
+            this.latencySignificantDigits = latencySignificantDigits;
+            return this;
+        }
+
+        public Duration getLatencyInterval() {
+            return Duration.ofSeconds(source.getInteger(
+                    "latency.intervalSec",
+                    (int) latencyInterval.getSeconds()
+            ));
+        }
+
+        /**
+         * @param latencyInterval period of histogram snapshot, should be equal to graphite push interval
+         */
+        public Builder setLatencyInterval(Duration latencyInterval) {
+            this.latencyInterval = latencyInterval;
+            return this;
+        }
+
+        public boolean isPrometheusEnabled() {
+            return source.getBoolean("prometheus", prometheusEnabled);
+        }
+
+        /**
+         * Embedded http server with metrics in Prometheus text format on path /metrics.
+         * Metric path type.service.address.method.name exported as thrift_name with labels
+         * @param prometheusEnabled prometheus endpoint enabled or not
+         */
+        public Builder setPrometheusEnabled(boolean prometheusEnabled) {
+            this.prometheusEnabled = prometheusEnabled;
+            return this;
+        }
+
+        public String getPrometheusHost() {
+            return source.getString("prometheus.host", prometheusHost);
+        }
+
+        /**
+         * Metrics contain service names and client addresses, so endpoint not exposed outside by default
+         * @param prometheusHost address of prometheus endpoint, 0.0.0.0 - all interfaces. Default: 127.0.0.1
+         */
+        public Builder setPrometheusHost(String prometheusHost) {
+            this.prometheusHost = prometheusHost;
+            return this;
+        }
+
+        public int getPrometheusPort() {
+            return source.getInteger("prometheus.port", prometheusPort);
+        }
+
+        /**
+         * @param prometheusPort port of prometheus endpoint, 0 - any free port
+         */
+        public Builder setPrometheusPort(int prometheusPort) {
+            this.prometheusPort = prometheusPort;
+            return this;
+        }
+
         public Builder fromParameterSource(ParameterSource source){
             this.source = source;
             return this;
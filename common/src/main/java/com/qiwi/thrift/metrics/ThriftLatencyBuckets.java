@@ -0,0 +1,94 @@
+package com.qiwi.thrift.metrics;
+
+/**
+ * Log-linear buckets of latency in style of HdrHistogram: 2^subBucketMagnitude / 2 buckets per power of two,
+ * resolution 1024 ns, values up to 2^40 ns (18 minutes), larger values counted in last bucket.
+ *
+ * Only index arithmetic, counters stored by histogram, so bucket layout is same for all latency histograms.
+ */
+public class ThriftLatencyBuckets {
+    /**
+     * Resolution 1024 ns, точнее микросекунды задержки не нужны
+     */
+    private static final int UNIT_MAGNITUDE = 10;
+    /**
+     * Values up to 2^40 ns (18 minutes), larger values counted in last bucket
+     */
+    private static final int VALUE_BITS = 30;
+
+    private final int subBucketMagnitude;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+    private final int length;
+
+    /**
+     * @param subBucketMagnitude log2 of bucket count in first power of two,
+     *                           relative error below 2 / 2^subBucketMagnitude
+     */
+    public ThriftLatencyBuckets(int subBucketMagnitude) {
+        if (subBucketMagnitude < 1 || subBucketMagnitude >= VALUE_BITS) {
+            throw new IllegalArgumentException("Sub bucket magnitude must be in range 1 - " + (VALUE_BITS - 1));
+        }
+        this.subBucketMagnitude = subBucketMagnitude;
+        subBucketCount = 1 << subBucketMagnitude;
+        subBucketHalfCount = subBucketCount / 2;
+        length = subBucketCount + (VALUE_BITS - subBucketMagnitude) * subBucketHalfCount;
+    }
+
+    /**
+     * @param significantDigits 1 - 3, relative error 10%, 1% or 0.1%
+     */
+    public static ThriftLatencyBuckets ofSignificantDigits(int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 3) {
+            throw new IllegalArgumentException("Significant digits must be in range 1 - 3");
+        }
+        long largestWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        return new ThriftLatencyBuckets(64 - Long.numberOfLeadingZeros(largestWithSingleUnitResolution - 1));
+    }
+
+    /**
+     * @return number of buckets
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param value latency in nanoseconds, negative counted as 0
+     */
+    public int getIndex(long value) {
+        long units = Math.max(value, 0) >>> UNIT_MAGNITUDE;
+        if (units < subBucketCount) {
+            return (int) units;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(units) - (subBucketMagnitude - 1);
+        if (shift > VALUE_BITS - subBucketMagnitude) {
+            return length - 1;
+        }
+        int subBucket = (int) (units >>> shift);
+        return subBucketCount + (shift - 1) * subBucketHalfCount + subBucket - subBucketHalfCount;
+    }
+
+    /**
+     * @return smallest value, counted in bucket
+     */
+    public long getLowestValue(int index) {
+        if (index < subBucketCount) {
+            return (long) index << UNIT_MAGNITUDE;
+        }
+        int bucket = index - subBucketCount;
+        int shift = bucket / subBucketHalfCount + 1;
+        long subBucket = bucket % subBucketHalfCount + subBucketHalfCount;
+        return subBucket << (shift + UNIT_MAGNITUDE);
+    }
+
+    /**
+     * @return largest value, counted in bucket
+     */
+    public long getHighestValue(int index) {
+        if (index + 1 < length) {
+            return getLowestValue(index + 1) - 1;
+        }
+        return (1L << (VALUE_BITS + UNIT_MAGNITUDE)) - 1;
+    }
+}
@@ -0,0 +1,216 @@
+package com.qiwi.thrift.metrics;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reservoir of Timer in style of HdrHistogram Recorder: fixed memory, lock free recording,
+ * percentiles with relative error below 10^-significantDigits.
+ *
+ * Values counted in log-linear buckets of active interval histogram. Snapshot swap histograms
+ * not more often than once per interval, so JMX and graphite read same snapshot of last interval.
+ * Writers never wait, reader wait only writers, already started record to previous histogram.
+ */
+class ThriftLatencyReservoir implements Reservoir {
+    private final ThriftLatencyBuckets buckets;
+    private final int length;
+    private final long intervalNanos;
+
+    // Фазы писателей как в WriterReaderPhaser из HdrHistogram
+    private final AtomicLong startEpoch = new AtomicLong();
+    private final AtomicLong evenEndEpoch = new AtomicLong();
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+    private volatile AtomicIntegerArray active;
+    private AtomicIntegerArray inactive;
+    private LatencySnapshot snapshot;
+    private long snapshotNanos;
+
+    /**
+     * @param significantDigits 1 - 3, relative error of percentiles 10%, 1% or 0.1%
+     * @param interval period of snapshot
+     */
+    ThriftLatencyReservoir(int significantDigits, Duration interval) {
+        buckets = ThriftLatencyBuckets.ofSignificantDigits(significantDigits);
+        length = buckets.getLength();
+        intervalNanos = interval.toNanos();
+        active = new AtomicIntegerArray(length);
+        inactive = new AtomicIntegerArray(length);
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        int index = buckets.getIndex(value);
+        long epoch = startEpoch.getAndIncrement();
+        active.incrementAndGet(index);
+        if (epoch < 0) {
+            oddEndEpoch.getAndIncrement();
+        } else {
+            evenEndEpoch.getAndIncrement();
+        }
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        long now = System.nanoTime();
+        // Допуск 10%, чтобы чтение репортером раз в интервал не попадало на границу и не пропускало смену
+        if (snapshot == null || now - snapshotNanos >= intervalNanos - intervalNanos / 10) {
+            snapshot = swap();
+            snapshotNanos = now;
+        }
+        return snapshot;
+    }
+
+    private LatencySnapshot swap() {
+        AtomicIntegerArray recorded = active;
+        active = inactive;
+        flipPhase();
+        LatencySnapshot result = new LatencySnapshot(recorded);
+        for (int i = 0; i < length; i++) {
+            recorded.set(i, 0);
+        }
+        inactive = recorded;
+        return result;
+    }
+
+    /**
+     * После возврата все писатели, начавшие запись в предыдущую гистограмму, закончили
+     */
+    private void flipPhase() {
+        boolean nextPhaseIsEven = startEpoch.get() < 0;
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        (nextPhaseIsEven ? evenEndEpoch : oddEndEpoch).set(initialStartValue);
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+        AtomicLong previousEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (previousEndEpoch.get() != startValueAtFlip) {
+            Thread.yield();
+        }
+    }
+
+    private class LatencySnapshot extends Snapshot {
+        private final long[] values;
+        private final long[] counts;
+        private final long count;
+        private final long min;
+        private final double mean;
+        private final double stdDev;
+
+        private LatencySnapshot(AtomicIntegerArray recorded) {
+            int nonEmpty = 0;
+            int[] bucketCounts = new int[length];
+            for (int i = 0; i < length; i++) {
+                bucketCounts[i] = recorded.get(i);
+                if (bucketCounts[i] != 0) {
+                    nonEmpty++;
+                }
+            }
+            values = new long[nonEmpty];
+            counts = new long[nonEmpty];
+            long total = 0;
+            double sum = 0;
+            long lowest = 0;
+            int position = 0;
+            for (int i = 0; i < length; i++) {
+                if (bucketCounts[i] == 0) {
+                    continue;
+                }
+                if (position == 0) {
+                    lowest = buckets.getLowestValue(i);
+                }
+                // Перцентили - по верхней границе бакета, как в HdrHistogram, среднее - по середине
+                values[position] = buckets.getHighestValue(i);
+                counts[position] = bucketCounts[i];
+                total += bucketCounts[i];
+                sum += (buckets.getLowestValue(i) + values[position]) / 2.0 * bucketCounts[i];
+                position++;
+            }
+            count = total;
+            min = lowest;
+            mean = total == 0 ? 0 : sum / total;
+            double variance = 0;
+            for (int i = 0, j = 0; i < length; i++) {
+                if (bucketCounts[i] == 0) {
+                    continue;
+                }
+                double diff = (buckets.getLowestValue(i) + values[j]) / 2.0 - mean;
+                variance += diff * diff * counts[j];
+                j++;
+            }
+            stdDev = total <= 1 ? 0 : Math.sqrt(variance / (total - 1));
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max((long) Math.ceil(quantile * count), 1);
+            long seen = 0;
+            for (int i = 0; i < values.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return values[i];
+                }
+            }
+            return values[values.length - 1];
+        }
+
+        /**
+         * @return distinct recorded values, one per bucket
+         */
+        @Override
+        public long[] getValues() {
+            return values.clone();
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(count, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getMax() {
+            return values.length == 0 ? 0 : values[values.length - 1];
+        }
+
+        @Override
+        public double getMean() {
+            return mean;
+        }
+
+        @Override
+        public long getMin() {
+            return min;
+        }
+
+        @Override
+        public double getStdDev() {
+            return stdDev;
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (int i = 0; i < values.length; i++) {
+                    out.printf("%d %d%n", values[i], counts[i]);
+                }
+            }
+        }
+    }
+}
@@ -22,6 +22,22 @@ public interface ThriftMonitor extends Closeable{
             ThriftRequestStatus requestStatus
     );
 
+    /**
+     * Same as logMethodCall by method name, but metrics of method found by number without map lookup
+     * @param methodId number of method, unique inside service interface, negative if unknown
+     */
+    default void logMethodCall(
+            ThriftCallType type,
+            ThriftClientAddress address,
+            String serviceName,
+            int methodId,
+            String method,
+            long nanos,
+            ThriftRequestStatus requestStatus
+    ) {
+        logMethodCall(type, address, serviceName, method, nanos, requestStatus);
+    }
+
     boolean registerPool(
             String serviceName,
             DoubleSupplier load,
@@ -68,6 +84,97 @@ public interface ThriftMonitor extends Closeable{
             ThriftClientAddress address
     );
 
+    void registerSelector(
+            String groupName,
+            int index,
+            LongSupplier queueDepth,
+            LongSupplier busyTimeMs,
+            LongSupplier callbackTimeMs,
+            LongSupplier calls
+    );
+
+    void unRegisterSelector(
+            String groupName,
+            int index
+    );
+
+    /**
+     * @param executorName server executor name, server port by default
+     * @param active requests processed now
+     * @param queued requests waiting for thread
+     * @param completed total number of processed requests
+     * @param rejected total number of requests rejected by executor
+     */
+    void registerServerExecutor(
+            String executorName,
+            LongSupplier active,
+            LongSupplier queued,
+            LongSupplier completed,
+            LongSupplier rejected
+    );
+
+    void unRegisterServerExecutor(
+            String executorName
+    );
+
+    /**
+     * @param allocatedBytes memory of requests read by server, but not yet processed
+     * @param budgetBytes limit of allocated memory
+     */
+    void registerServerReadBuffer(
+            String serverName,
+            LongSupplier allocatedBytes,
+            LongSupplier budgetBytes
+    );
+
+    void unRegisterServerReadBuffer(
+            String serverName
+    );
+
+    /**
+     * Called once per new client address of server
+     * @param activeConnections open connections of client
+     * @param connections total number of client connections
+     * @param requests total number of client requests
+     */
+    void registerServerClient(
+            String serverName,
+            String clientAddress,
+            LongSupplier activeConnections,
+            LongSupplier connections,
+            LongSupplier requests
+    );
+
+    void unRegisterServerClient(
+            String serverName,
+            String clientAddress
+    );
+
+    /**
+     * @param serviceName endpoint name
+     * @param active requests of endpoint processed now
+     * @param rejected total number of requests rejected by endpoint concurrency limits
+     */
+    void registerServerEndpoint(
+            String serviceName,
+            LongSupplier active,
+            LongSupplier rejected
+    );
+
+    void unRegisterServerEndpoint(
+            String serviceName
+    );
+
+    /**
+     * @param queueTimeNanos time between request read and start of processing
+     * @param shed true if request rejected by admission control
+     */
+    void logServerQueueTime(
+            String serviceName,
+            long queueTimeNanos,
+            boolean shed
+    );
+
     void connectToGraphite(ThriftGraphiteConfig config);
 
     void close();
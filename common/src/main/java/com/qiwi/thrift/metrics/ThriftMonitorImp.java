@@ -4,6 +4,8 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metered;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.graphite.Graphite;
 import com.codahale.metrics.graphite.GraphiteReporter;
 import com.qiwi.thrift.utils.ThriftClientAddress;
@@ -14,8 +16,10 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.time.Duration;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.DoubleSupplier;
 import java.util.function.LongSupplier;
@@ -31,10 +35,18 @@ class ThriftMonitorImp implements ThriftMonitor {
 
 
     private final MetricRegistry metrics = new MetricRegistry();
+    private final ThriftCallMetrics callMetrics = new ThriftCallMetrics(metrics);
+    /**
+     * Meters and timers of registry by name, for ratio gauges.
+     * registry.getMetrics() copies all metrics to sorted map on every call
+     */
+    private final ConcurrentMap<String, Metered> meteredByName = new ConcurrentHashMap<>();
     private final GroupJmxReporter jmxReporter;
     private Closeable graphiteReporter = null;
+    private ThriftPrometheusExporter prometheusExporter = null;
 
     ThriftMonitorImp() {
+        metrics.addListener(new MeteredListener(meteredByName));
         jmxReporter = GroupJmxReporter.forRegistry(metrics)
                 .convertDurationsTo(TimeUnit.MILLISECONDS)
                 .inDomain("thrift")
@@ -71,13 +83,6 @@ class ThriftMonitorImp implements ThriftMonitor {
                 .append(SEPARATOR);
     }
 
-    private static void getMethodPath(StringBuilder path, String method){
-        path.append("method")// Нужно на случай если имя метода совпадет с доп-параметром, напрмер error
-                .append(SEPARATOR)
-                .append(method)
-                .append(SEPARATOR);
-    }
-
     @Override
     public void logMethodCall(
             ThriftCallType type,
@@ -88,70 +93,28 @@ class ThriftMonitorImp implements ThriftMonitor {
             ThriftRequestStatus requestStatus
     ) {
         try {
-            StringBuilder path = getServicePath(type, serviceName);
-            int length = path.length();
-            path.setLength(length);
-            getNodePath(path, address.toEscapedString());
-            logCall(path, method, nanos, requestStatus);
-
-            path.setLength(length);
-            getNodePath(path, address.toEscapedString());
-            logCall(path, null, nanos, requestStatus);
-
-            if (type.isLogAllHostStat()) {
-                path.setLength(length);
-                getNodePath(path, ALL);
-                logCall(path, null, nanos, requestStatus);
-
-                path.setLength(length);
-                getNodePath(path, ALL);
-                logCall(path, method, nanos, requestStatus);
-            }
+            callMetrics.logCall(type, address, serviceName, method, nanos, requestStatus);
         } catch (Throwable ex) {
             ThriftMonitoring.disable();
             log.error("Thrift metric fail to run", ex);
         }
     }
 
-
-    private void logCall(StringBuilder path, String method, long nanos, ThriftRequestStatus requestStatus){
-        if (method != null) {
-            getMethodPath(path, method);
-        }
-        int length = path.length();
-
-        path.append("requests");
-        metrics.timer(path.toString()).update(nanos, TimeUnit.NANOSECONDS);
-
-        switch (requestStatus) {
-            case SUCCESS:
-                break;
-            case UNEXPECTED_ERROR:
-                path.setLength(length);
-                path.append("unexpectedError");
-                metrics.meter(path.toString()).mark();
-                path.setLength(length);
-                path.append("error");
-                metrics.meter(path.toString()).mark();
-                break;
-            case APP_ERROR:
-                path.setLength(length);
-                path.append("appError");
-                metrics.meter(path.toString()).mark();
-                break;
-            case CONNECTION_ERROR:
-                path.setLength(length);
-                path.append("connectionError");
-                metrics.meter(path.toString()).mark();
-                path.setLength(length);
-                path.append("error");
-                metrics.meter(path.toString()).mark();
-                break;
-            case INTERNAL_ERROR:
-                path.setLength(length);
-                path.append("error");
-                metrics.meter(path.toString()).mark();
-                break;
+    @Override
+    public void logMethodCall(
+            ThriftCallType type,
+            ThriftClientAddress address,
+            String serviceName,
+            int methodId,
+            String method,
+            long nanos,
+            ThriftRequestStatus requestStatus
+    ) {
+        try {
+            callMetrics.logCall(type, address, serviceName, methodId, method, nanos, requestStatus);
+        } catch (Throwable ex) {
+            ThriftMonitoring.disable();
+            log.error("Thrift metric fail to run", ex);
         }
     }
 
@@ -300,15 +263,226 @@ class ThriftMonitorImp implements ThriftMonitor {
             remove(path, "statusId");
             remove(path, "latency");
             remove(path, "errorRatio");
+            remove(path, "appErrorRatio");
         } catch (Throwable ex) {
             log.error("Thrift metric fail to register for service: {}", serviceName, ex);
         }
     }
 
 
+    private static StringBuilder getSelectorPath(String groupName, int index) {
+        StringBuilder path = getServicePath(ThriftCallType.ASYNC_CLIENT, "selector");
+        getNodePath(path, groupName);
+        getNodePath(path, Integer.toString(index));
+        return path;
+    }
+
+    @Override
+    public void registerSelector(
+            String groupName,
+            int index,
+            LongSupplier queueDepth,
+            LongSupplier busyTimeMs,
+            LongSupplier callbackTimeMs,
+            LongSupplier calls
+    ) {
+        try {
+            StringBuilder path = getSelectorPath(groupName, index);
+            registerGauge(path, "queueDepth", queueDepth::getAsLong);
+            registerGauge(path, "busyTime", busyTimeMs::getAsLong);
+            registerGauge(path, "callbackTime", callbackTimeMs::getAsLong);
+            registerGauge(path, "calls", calls::getAsLong);
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to register for selector: {} {}", groupName, index, ex);
+        }
+    }
+
+    @Override
+    public void unRegisterSelector(
+            String groupName,
+            int index
+    ) {
+        try {
+            StringBuilder path = getSelectorPath(groupName, index);
+            remove(path, "queueDepth");
+            remove(path, "busyTime");
+            remove(path, "callbackTime");
+            remove(path, "calls");
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to unregister for selector: {} {}", groupName, index, ex);
+        }
+    }
+
+    private static StringBuilder getServerExecutorPath(String executorName) {
+        StringBuilder path = getServicePath(ThriftCallType.SERVER, "executor");
+        getNodePath(path, executorName);
+        return path;
+    }
+
+    @Override
+    public void registerServerExecutor(
+            String executorName,
+            LongSupplier active,
+            LongSupplier queued,
+            LongSupplier completed,
+            LongSupplier rejected
+    ) {
+        try {
+            StringBuilder path = getServerExecutorPath(executorName);
+            registerGauge(path, "active", active::getAsLong);
+            registerGauge(path, "queued", queued::getAsLong);
+            registerGauge(path, "completed", completed::getAsLong);
+            registerGauge(path, "rejected", rejected::getAsLong);
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to register for server executor: {}", executorName, ex);
+        }
+    }
+
+    @Override
+    public void unRegisterServerExecutor(
+            String executorName
+    ) {
+        try {
+            StringBuilder path = getServerExecutorPath(executorName);
+            remove(path, "active");
+            remove(path, "queued");
+            remove(path, "completed");
+            remove(path, "rejected");
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to unregister for server executor: {}", executorName, ex);
+        }
+    }
+
+    @Override
+    public void registerServerReadBuffer(
+            String serverName,
+            LongSupplier allocatedBytes,
+            LongSupplier budgetBytes
+    ) {
+        try {
+            StringBuilder path = getServerExecutorPath(serverName);
+            registerGauge(path, "readBufferBytes", allocatedBytes::getAsLong);
+            registerGauge(path, "readBufferBudget", budgetBytes::getAsLong);
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to register for server read buffer: {}", serverName, ex);
+        }
+    }
+
+    @Override
+    public void unRegisterServerReadBuffer(
+            String serverName
+    ) {
+        try {
+            StringBuilder path = getServerExecutorPath(serverName);
+            remove(path, "readBufferBytes");
+            remove(path, "readBufferBudget");
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to unregister for server read buffer: {}", serverName, ex);
+        }
+    }
+
+    private static StringBuilder getServerClientPath(String serverName, String clientAddress) {
+        StringBuilder path = getServicePath(ThriftCallType.SERVER, "client");
+        getNodePath(path, serverName);
+        getNodePath(path, ThriftMonitoring.escapeDots(clientAddress));
+        return path;
+    }
+
+    @Override
+    public void registerServerClient(
+            String serverName,
+            String clientAddress,
+            LongSupplier activeConnections,
+            LongSupplier connections,
+            LongSupplier requests
+    ) {
+        try {
+            StringBuilder path = getServerClientPath(serverName, clientAddress);
+            registerGauge(path, "activeConnections", activeConnections::getAsLong);
+            registerGauge(path, "connections", connections::getAsLong);
+            registerGauge(path, "requests", requests::getAsLong);
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to register for server client: {} {}", serverName, clientAddress, ex);
+        }
+    }
+
+    @Override
+    public void unRegisterServerClient(
+            String serverName,
+            String clientAddress
+    ) {
+        try {
+            StringBuilder path = getServerClientPath(serverName, clientAddress);
+            remove(path, "activeConnections");
+            remove(path, "connections");
+            remove(path, "requests");
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to unregister for server client: {} {}", serverName, clientAddress, ex);
+        }
+    }
+
+    private static StringBuilder getServerEndpointPath(String serviceName) {
+        StringBuilder path = getServicePath(ThriftCallType.SERVER, serviceName);
+        path.append("bulkhead").append(SEPARATOR);
+        return path;
+    }
+
+    @Override
+    public void registerServerEndpoint(
+            String serviceName,
+            LongSupplier active,
+            LongSupplier rejected
+    ) {
+        try {
+            StringBuilder path = getServerEndpointPath(serviceName);
+            registerGauge(path, "active", active::getAsLong);
+            registerGauge(path, "rejected", rejected::getAsLong);
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to register for server endpoint: {}", serviceName, ex);
+        }
+    }
+
+    @Override
+    public void unRegisterServerEndpoint(
+            String serviceName
+    ) {
+        try {
+            StringBuilder path = getServerEndpointPath(serviceName);
+            remove(path, "active");
+            remove(path, "rejected");
+        } catch (Throwable ex) {
+            log.error("Thrift metric fail to unregister for server endpoint: {}", serviceName, ex);
+        }
+    }
+
+    @Override
+    public void logServerQueueTime(
+            String serviceName,
+            long queueTimeNanos,
+            boolean shed
+    ) {
+        try {
+            callMetrics.logQueueTime(serviceName, queueTimeNanos, shed);
+        } catch (Throwable ex) {
+            ThriftMonitoring.disable();
+            log.error("Thrift metric fail to run", ex);
+        }
+    }
+
     @Override
     public void connectToGraphite(ThriftGraphiteConfig config){
         try {
+            if (config.isLatencyHistogram()) {
+                int significantDigits = config.getLatencySignificantDigits();
+                Duration interval = config.getLatencyInterval();
+                // Проверяем параметры сразу, а не на первом запросе
+                new ThriftLatencyReservoir(significantDigits, interval);
+                callMetrics.setReservoirFactory(() -> new ThriftLatencyReservoir(significantDigits, interval));
+                log.info("Latency histogram enabled with {} significant digits", significantDigits);
+            }
+            if (config.isPrometheusEnabled() && prometheusExporter == null) {
+                startPrometheus(config.getPrometheusHost(), config.getPrometheusPort());
+            }
             if (!config.isGraphiteEnabled()) {
                 return;
             }
@@ -335,10 +509,26 @@ class ThriftMonitorImp implements ThriftMonitor {
         }
     }
 
+    private void startPrometheus(String host, int port) {
+        ThriftPrometheusExporter exporter = new ThriftPrometheusExporter(metrics);
+        try {
+            exporter.start(host, port);
+            prometheusExporter = exporter;
+        } catch (IOException | RuntimeException ex) {
+            exporter.close();
+            log.error("Unable to start prometheus endpoint on {}:{}", host, port, ex);
+        }
+    }
+
     @Override
     public void close() {
         try {
             jmxReporter.close();
+            ThriftPrometheusExporter prometheusExporterCopy = prometheusExporter;
+            if (prometheusExporterCopy != null) {
+                prometheusExporterCopy.close();
+                prometheusExporter = null;
+            }
             Closeable graphiteReporterCopy = graphiteReporter;
             if (graphiteReporterCopy != null) {
                     graphiteReporterCopy.close();
@@ -371,7 +561,7 @@ class ThriftMonitorImp implements ThriftMonitor {
         path.setLength(length);
 
         path.append(name);
-        metrics.register(path.toString(), new MeterRatio(numeratorPath, denominatorPath, metrics));
+        metrics.register(path.toString(), new MeterRatio(numeratorPath, denominatorPath, meteredByName));
         path.setLength(length);
     }
 
@@ -382,32 +572,63 @@ class ThriftMonitorImp implements ThriftMonitor {
         path.setLength(length);
     }
 
-    private static class MeterRatio extends Meter {
-        public final String numeratorPath;
-        public final String denominatorPath;
-        public final MetricRegistry registry;
+    private static class MeteredListener extends MetricRegistryListener.Base {
+        private final ConcurrentMap<String, Metered> meteredByName;
 
-        private MeterRatio(String numeratorPath, String denominatorPath, MetricRegistry registry) {
-            this.numeratorPath = numeratorPath;
-            this.denominatorPath = denominatorPath;
-            this.registry = registry;
+        private MeteredListener(ConcurrentMap<String, Metered> meteredByName) {
+            this.meteredByName = meteredByName;
+        }
+
+        @Override
+        public void onMeterAdded(String name, Meter meter) {
+            // Отношения не бывают числителем или знаменателем других отношений
+            if (!(meter instanceof MeterRatio)) {
+                meteredByName.put(name, meter);
+            }
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            meteredByName.remove(name);
+        }
+
+        @Override
+        public void onTimerAdded(String name, Timer timer) {
+            meteredByName.put(name, timer);
         }
 
-        public Optional<Metered> getMetered(String path){
-            return Optional.ofNullable((Metered) registry.getMetrics().get(path));
+        @Override
+        public void onTimerRemoved(String name) {
+            meteredByName.remove(name);
+        }
+    }
+
+    /**
+     * Ratio of two meters, numerator and denominator looked up by name on every read,
+     * because they can be created after ratio
+     */
+    static class MeterRatio extends Meter {
+        private final String numeratorPath;
+        private final String denominatorPath;
+        private final ConcurrentMap<String, Metered> meteredByName;
+
+        private MeterRatio(String numeratorPath, String denominatorPath, ConcurrentMap<String, Metered> meteredByName) {
+            this.numeratorPath = numeratorPath;
+            this.denominatorPath = denominatorPath;
+            this.meteredByName = meteredByName;
         }
 
-        public double getRate(ToDoubleFunction<Metered> getter) {
-            Optional<Metered> denominatorMetered = getMetered(denominatorPath);
-            double denominator = denominatorMetered.isPresent()
-                    ? getter.applyAsDouble(denominatorMetered.get())
+        private double getRate(ToDoubleFunction<Metered> getter) {
+            Metered denominatorMetered = meteredByName.get(denominatorPath);
+            double denominator = denominatorMetered != null
+                    ? getter.applyAsDouble(denominatorMetered)
                     : 0;
             if (!Double.isFinite(denominator) || denominator < 0.000001) {
                 return 0;
             }
-            Optional<Metered> numeratorMetered = getMetered(numeratorPath);
-            double numerator = numeratorMetered.isPresent()
-                    ? getter.applyAsDouble(numeratorMetered.get())
+            Metered numeratorMetered = meteredByName.get(numeratorPath);
+            double numerator = numeratorMetered != null
+                    ? getter.applyAsDouble(numeratorMetered)
                     : 0;
             if (!Double.isFinite(numerator)) {
                 return 0;
@@ -427,7 +648,8 @@ class ThriftMonitorImp implements ThriftMonitor {
 
         @Override
         public long getCount() {
-            return registry.meter(numeratorPath).getCount();
+            Metered numeratorMetered = meteredByName.get(numeratorPath);
+            return numeratorMetered != null ? numeratorMetered.getCount() : 0;
         }
 
         @Override
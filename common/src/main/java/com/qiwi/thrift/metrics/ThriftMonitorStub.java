@@ -90,6 +90,104 @@ class ThriftMonitorStub implements ThriftMonitor {
 
     }
 
+    @Override
+    public void registerSelector(
+            String groupName,
+            int index,
+            LongSupplier queueDepth,
+            LongSupplier busyTimeMs,
+            LongSupplier callbackTimeMs,
+            LongSupplier calls
+    ) {
+
+    }
+
+    @Override
+    public void unRegisterSelector(
+            String groupName,
+            int index
+    ) {
+
+    }
+
+    @Override
+    public void registerServerExecutor(
+            String executorName,
+            LongSupplier active,
+            LongSupplier queued,
+            LongSupplier completed,
+            LongSupplier rejected
+    ) {
+
+    }
+
+    @Override
+    public void unRegisterServerExecutor(
+            String executorName
+    ) {
+
+    }
+
+    @Override
+    public void registerServerReadBuffer(
+            String serverName,
+            LongSupplier allocatedBytes,
+            LongSupplier budgetBytes
+    ) {
+
+    }
+
+    @Override
+    public void unRegisterServerReadBuffer(
+            String serverName
+    ) {
+
+    }
+
+    @Override
+    public void registerServerClient(
+            String serverName,
+            String clientAddress,
+            LongSupplier activeConnections,
+            LongSupplier connections,
+            LongSupplier requests
+    ) {
+
+    }
+
+    @Override
+    public void unRegisterServerClient(
+            String serverName,
+            String clientAddress
+    ) {
+
+    }
+
+    @Override
+    public void registerServerEndpoint(
+            String serviceName,
+            LongSupplier active,
+            LongSupplier rejected
+    ) {
+
+    }
+
+    @Override
+    public void unRegisterServerEndpoint(
+            String serviceName
+    ) {
+
+    }
+
+    @Override
+    public void logServerQueueTime(
+            String serviceName,
+            long queueTimeNanos,
+            boolean shed
+    ) {
+
+    }
+
     @Override
     public void connectToGraphite(ThriftGraphiteConfig config) {
 
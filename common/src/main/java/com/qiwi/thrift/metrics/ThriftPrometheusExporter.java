@@ -0,0 +1,479 @@
+package com.qiwi.thrift.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Sampling;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP endpoint /metrics in Prometheus text format, based on JDK http server.
+ *
+ * Metric name path type.service.address[.method.name].metric converted to metric thrift_metric with labels
+ * type, service, address and method. Labels of every metric prepared once, when metric added to registry,
+ * scrape write values directly to reusable buffer.
+ */
+class ThriftPrometheusExporter implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ThriftPrometheusExporter.class);
+
+    static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String PREFIX = "thrift_";
+    private static final double NANOS_IN_SECOND = 1_000_000_000d;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final byte[][] QUANTILE_LABELS = {
+            ascii(",quantile=\"0.5\"}"),
+            ascii(",quantile=\"0.9\"}"),
+            ascii(",quantile=\"0.99\"}"),
+            ascii(",quantile=\"0.999\"}"),
+    };
+
+    private final MetricRegistry registry;
+    private final Listener listener = new Listener();
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+    private final Buffer buffer = new Buffer();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    ThriftPrometheusExporter(MetricRegistry registry) {
+        this.registry = registry;
+        // Слушатель сразу получает все уже зарегистрированные метрики
+        registry.addListener(listener);
+    }
+
+    void start(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "{\"prometheus\":\"exporter\"}");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+        log.info("Prometheus metrics available on port {} path {}", server.getAddress().getPort(), PATH);
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        boolean headersSent = false;
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                headersSent = true;
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            // Запросы обрабатывает один поток, буфер переиспользуется
+            buffer.reset();
+            write(buffer);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            headersSent = true;
+            exchange.sendResponseHeaders(200, buffer.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(buffer.bytes, 0, buffer.size());
+            }
+        } catch (RuntimeException ex) {
+            log.error("Unable to export metrics", ex);
+            // После заголовков статус уже не изменить, клиент получит оборванный ответ
+            if (!headersSent) {
+                exchange.sendResponseHeaders(500, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    void write(Buffer out) {
+        for (Family family : families.values()) {
+            if (family.series.isEmpty()) {
+                continue;
+            }
+            out.append(family.header);
+            for (Series series : family.series.values()) {
+                try {
+                    writeSeries(out, family, series);
+                } catch (RuntimeException ex) {
+                    log.debug("Metric {} not exported", family.name, ex);
+                }
+            }
+        }
+    }
+
+    private static void writeSeries(Buffer out, Family family, Series series) {
+        Metric metric = series.metric;
+        switch (family.kind) {
+            case GAUGE:
+                Object value = ((Gauge<?>) metric).getValue();
+                if (value instanceof Number) {
+                    writeSample(out, family.name, series.labels, ((Number) value).doubleValue());
+                } else if (value instanceof Boolean) {
+                    writeSample(out, family.name, series.labels, (Boolean) value ? 1 : 0);
+                }
+                break;
+            case COUNTER:
+                writeSample(out, family.name, series.labels, ((Counter) metric).getCount());
+                break;
+            case METER:
+                writeSample(out, family.name, series.labels, ((Meter) metric).getCount());
+                break;
+            case RATIO:
+                writeSample(out, family.name, series.labels, ((Meter) metric).getOneMinuteRate());
+                break;
+            case TIMER:
+                writeSummary(out, family.name, series, 1 / NANOS_IN_SECOND);
+                break;
+            case HISTOGRAM:
+                writeSummary(out, family.name, series, 1);
+                break;
+            default:
+                throw new IllegalStateException("Kind " + family.kind + " not implemented");
+        }
+    }
+
+    private static void writeSummary(Buffer out, byte[] name, Series series, double factor) {
+        Snapshot snapshot = ((Sampling) series.metric).getSnapshot();
+        for (int i = 0; i < QUANTILES.length; i++) {
+            out.append(name).append('{').append(series.labels).append(QUANTILE_LABELS[i]).append(' ');
+            out.append(snapshot.getValue(QUANTILES[i]) * factor).append('\n');
+        }
+        long count = ((Counting) series.metric).getCount();
+        out.append(name).append(Family.COUNT_SUFFIX).append('{').append(series.labels).append('}').append(' ');
+        out.append(count).append('\n');
+    }
+
+    private static void writeSample(Buffer out, byte[] name, byte[] labels, double value) {
+        out.append(name).append('{').append(labels).append('}').append(' ').append(value).append('\n');
+    }
+
+    private static void writeSample(Buffer out, byte[] name, byte[] labels, long value) {
+        out.append(name).append('{').append(labels).append('}').append(' ').append(value).append('\n');
+    }
+
+    private void add(String name, Metric metric, Kind kind) {
+        String[] parts = parse(name);
+        String familyName = PREFIX + sanitize(parts[4]) + kind.suffix;
+        Family family = families.computeIfAbsent(familyName, key -> new Family(key, kind));
+        if (family.kind != kind) {
+            log.warn("Metric {} not exported, family {} has type {}", name, familyName, family.kind);
+            return;
+        }
+        family.series.put(name, new Series(metric, labels(parts)));
+    }
+
+    private void remove(String name, Kind kind) {
+        Family family = families.get(PREFIX + sanitize(parse(name)[4]) + kind.suffix);
+        if (family != null) {
+            family.series.remove(name);
+        }
+    }
+
+    /**
+     * @return type, service, address, method, metric
+     */
+    static String[] parse(String name) {
+        String[] tokens = name.split("\\.");
+        String[] result = new String[5];
+        Arrays.fill(result, "");
+        result[4] = tokens[tokens.length - 1];
+        if (tokens.length > 1) {
+            result[0] = tokens[0];
+        }
+        if (tokens.length > 2) {
+            result[1] = tokens[1];
+        }
+        int addressEnd = tokens.length - 1;
+        // method - служебное слово пути, имя метода после него
+        for (int i = 2; i < tokens.length - 2; i++) {
+            if ("method".equals(tokens[i])) {
+                result[3] = tokens[i + 1];
+                addressEnd = i;
+                break;
+            }
+        }
+        if (addressEnd > 2) {
+            result[2] = String.join(".", Arrays.asList(tokens).subList(2, addressEnd));
+        }
+        return result;
+    }
+
+    private static byte[] labels(String[] parts) {
+        StringBuilder builder = new StringBuilder(64);
+        appendLabel(builder, "type", parts[0]);
+        appendLabel(builder, "service", parts[1]);
+        appendLabel(builder, "address", parts[2]);
+        appendLabel(builder, "method", parts[3]);
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendLabel(StringBuilder builder, String label, String value) {
+        if (value.isEmpty()) {
+            return;
+        }
+        if (builder.length() > 0) {
+            builder.append(',');
+        }
+        builder.append(label).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    static String sanitize(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_') {
+                builder.append(c);
+            } else {
+                builder.append('_');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() {
+        registry.removeListener(listener);
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    private enum Kind {
+        GAUGE("", "gauge"),
+        COUNTER("", "gauge"),
+        METER("_total", "counter"),
+        RATIO("", "gauge"),
+        TIMER("_seconds", "summary"),
+        HISTOGRAM("", "summary"),
+        ;
+
+        private final String suffix;
+        private final String type;
+
+        Kind(String suffix, String type) {
+            this.suffix = suffix;
+            this.type = type;
+        }
+    }
+
+    private static class Family {
+        private static final byte[] COUNT_SUFFIX = ascii("_count");
+
+        private final byte[] name;
+        private final Kind kind;
+        private final byte[] header;
+        private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<>();
+
+        private Family(String name, Kind kind) {
+            this.name = ascii(name);
+            this.kind = kind;
+            this.header = ascii("# TYPE " + name + " " + kind.type + "\n");
+        }
+    }
+
+    private static class Series {
+        private final Metric metric;
+        private final byte[] labels;
+
+        private Series(Metric metric, byte[] labels) {
+            this.metric = metric;
+            this.labels = labels;
+        }
+    }
+
+    private class Listener implements MetricRegistryListener {
+        @Override
+        public void onGaugeAdded(String name, Gauge<?> gauge) {
+            add(name, gauge, Kind.GAUGE);
+        }
+
+        @Override
+        public void onGaugeRemoved(String name) {
+            remove(name, Kind.GAUGE);
+        }
+
+        @Override
+        public void onCounterAdded(String name, Counter counter) {
+            add(name, counter, Kind.COUNTER);
+        }
+
+        @Override
+        public void onCounterRemoved(String name) {
+            remove(name, Kind.COUNTER);
+        }
+
+        @Override
+        public void onHistogramAdded(String name, Histogram histogram) {
+            add(name, histogram, Kind.HISTOGRAM);
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            remove(name, Kind.HISTOGRAM);
+        }
+
+        @Override
+        public void onMeterAdded(String name, Meter meter) {
+            add(name, meter, meter instanceof ThriftMonitorImp.MeterRatio ? Kind.RATIO : Kind.METER);
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            // Тип удалённой метрики неизвестен, отношения - только у имён *Ratio
+            remove(name, Kind.METER);
+            remove(name, Kind.RATIO);
+        }
+
+        @Override
+        public void onTimerAdded(String name, Timer timer) {
+            add(name, timer, Kind.TIMER);
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            remove(name, Kind.TIMER);
+        }
+    }
+
+    /**
+     * Growable byte buffer, numbers written without intermediate strings
+     */
+    static class Buffer {
+        private static final long MAX_FIXED_POINT = 1_000_000_000L;
+        private static final int FRACTION_DIGITS = 9;
+
+        private byte[] bytes = new byte[64 * 1024];
+        private int size;
+        private final byte[] digits = new byte[20];
+
+        void reset() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        String asString() {
+            return new String(bytes, 0, size, StandardCharsets.UTF_8);
+        }
+
+        private void ensure(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+        }
+
+        Buffer append(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+            return this;
+        }
+
+        Buffer append(char value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+            return this;
+        }
+
+        Buffer append(long value) {
+            if (value == Long.MIN_VALUE) {
+                return append(ascii(Long.toString(value)));
+            }
+            ensure(20);
+            if (value < 0) {
+                bytes[size++] = '-';
+                value = -value;
+            }
+            int length = 0;
+            do {
+                digits[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            while (length > 0) {
+                bytes[size++] = digits[--length];
+            }
+            return this;
+        }
+
+        Buffer append(double value) {
+            if (Double.isNaN(value)) {
+                return append(ascii("NaN"));
+            }
+            if (Double.isInfinite(value)) {
+                return append(ascii(value > 0 ? "+Inf" : "-Inf"));
+            }
+            double abs = Math.abs(value);
+            if (abs >= MAX_FIXED_POINT) {
+                return append(ascii(Double.toString(value)));
+            }
+            // Фиксированная точка, 9 знаков после запятой
+            long scaled = Math.round(abs * MAX_FIXED_POINT);
+            if (value < 0 && scaled != 0) {
+                append('-');
+            }
+            append(scaled / MAX_FIXED_POINT);
+            long fraction = scaled % MAX_FIXED_POINT;
+            if (fraction != 0) {
+                int length = FRACTION_DIGITS;
+                while (fraction % 10 == 0) {
+                    fraction /= 10;
+                    length--;
+                }
+                ensure(length + 1);
+                bytes[size++] = '.';
+                for (int i = length - 1; i >= 0; i--) {
+                    bytes[size + i] = (byte) ('0' + fraction % 10);
+                    fraction /= 10;
+                }
+                size += length;
+            }
+            return this;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.apache.thrift.protocol.*;
 import org.apache.thrift.transport.TTransport;
 
 import java.nio.ByteBuffer;
+import java.util.OptionalLong;
 
 public class TCompactTracedProtocol extends TCompactProtocol {
     public static final byte MESSAGE_TYPE_CALL_WITH_TRACE_ID = 6;
@@ -16,15 +17,29 @@ public class TCompactTracedProtocol extends TCompactProtocol {
         private final long stringLengthLimit;
         private final long containerLengthLimit;
         private final ThriftTraceMode traceMode;
+        private final long requestTimeoutMillis;
 
         public Factory(
                 long stringLengthLimit,
                 long containerLengthLimit,
                 ThriftTraceMode traceMode
+        ) {
+            this(stringLengthLimit, containerLengthLimit, traceMode, 0);
+        }
+
+        /**
+         * @param requestTimeoutMillis client request timeout, sent to server as deadline. 0 - not send
+         */
+        public Factory(
+                long stringLengthLimit,
+                long containerLengthLimit,
+                ThriftTraceMode traceMode,
+                long requestTimeoutMillis
         ) {
             this.stringLengthLimit = stringLengthLimit;
             this.containerLengthLimit = containerLengthLimit;
             this.traceMode = traceMode;
+            this.requestTimeoutMillis = requestTimeoutMillis;
         }
 
         @Override
@@ -33,23 +48,39 @@ public class TCompactTracedProtocol extends TCompactProtocol {
                     trans,
                     stringLengthLimit,
                     containerLengthLimit,
-                    traceMode
+                    traceMode,
+                    requestTimeoutMillis
             );
         }
     }
 
     private final ThriftTraceMode traceMode;
     private final long stringLengthLimit;
+    private final long requestTimeoutMillis;
 
     public TCompactTracedProtocol(
             TTransport transport,
             long stringLengthLimit,
             long containerLengthLimit,
             ThriftTraceMode traceMode
+    ) {
+        this(transport, stringLengthLimit, containerLengthLimit, traceMode, 0);
+    }
+
+    /**
+     * @param requestTimeoutMillis client request timeout, sent to server as deadline. 0 - not send
+     */
+    public TCompactTracedProtocol(
+            TTransport transport,
+            long stringLengthLimit,
+            long containerLengthLimit,
+            ThriftTraceMode traceMode,
+            long requestTimeoutMillis
     ) {
         super(transport, stringLengthLimit, containerLengthLimit);
         this.stringLengthLimit = stringLengthLimit;
         this.traceMode = traceMode;
+        this.requestTimeoutMillis = requestTimeoutMillis;
     }
 
     @Override
@@ -68,6 +99,13 @@ public class TCompactTracedProtocol extends TCompactProtocol {
         RequestHeader header = new RequestHeader();
         header.read(this);
         ThriftLogContext.setParentRequestHeader(header);
+        if (header.isSetTimeoutMs()) {
+            // Таймаут отсчитывается от чтения фрейма, время в очереди сервера входит в бюджет
+            long readMillis = System.currentTimeMillis() - ThriftLogContext.getRequestQueueMillis();
+            ThriftLogContext.setDeadline(OptionalLong.of(readMillis + header.getTimeoutMs()));
+        } else {
+            ThriftLogContext.setDeadline(OptionalLong.empty());
+        }
         return new TMessage(message.name, messageType, message.seqid);
     }
 
@@ -88,7 +126,20 @@ public class TCompactTracedProtocol extends TCompactProtocol {
 
     private void writeHeader(TMessage message, byte messageType) throws TException {
         super.writeMessageBegin(new TMessage(message.name, messageType, message.seqid));
-        ThriftLogContext.getRequestHeader().write(this);
+        RequestHeader header = ThriftLogContext.getRequestHeader();
+        // Сервер получает меньшее из таймаута клиента и остатка дедлайна текущего запроса
+        long timeoutMillis = requestTimeoutMillis;
+        OptionalLong remainingMillis = ThriftLogContext.getRemainingMillis();
+        if (remainingMillis.isPresent()) {
+            long remaining = Math.max(remainingMillis.getAsLong(), 0);
+            timeoutMillis = timeoutMillis > 0 ? Math.min(timeoutMillis, remaining) : remaining;
+            header.setTimeoutMs(timeoutMillis);
+        } else if (timeoutMillis > 0) {
+            header.setTimeoutMs(timeoutMillis);
+        } else {
+            header.unsetTimeoutMs();
+        }
+        header.write(this);
     }
 
 
@@ -6,11 +6,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import java.time.Duration;
 import java.util.EnumMap;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BooleanSupplier;
 
 public class ThriftLogContext {
@@ -21,6 +23,14 @@ public class ThriftLogContext {
     public static final String PARENT_SPAN_ID = "parentSpanId";
     public static final String SAMPLED = "sampled";
     public static final String CLIENT_ADDRESS = "clientAdr";
+    /**
+     * Deadline of current execution, epoch millis
+     */
+    public static final String DEADLINE = "deadline";
+    /**
+     * Method processed by server, format service.method. Can be used in log layout: %X{thriftMethod}
+     */
+    public static final String METHOD = "thriftMethod";
 
     private static Optional<BooleanSupplier> sampledSupplier = Optional.empty();
 
@@ -50,6 +60,15 @@ public class ThriftLogContext {
         threadLocal.get().setHeader(new RequestHeader());
     }
 
+    /**
+     * Clear context after request processing.
+     * Unlike newExecution TraceId and SpanId not generated, they assigned on first use
+     */
+    public static void clearExecution() {
+        MDC.clear();
+        threadLocal.get().reset();
+    }
+
     public static long getTraceId(){
         return threadLocal.get().getHeader().getTraceId();
     }
@@ -163,6 +182,90 @@ public class ThriftLogContext {
         }
     }
 
+    /**
+     * @return deadline of current execution in epoch millis. Set by server from request header
+     *         or by application with setTimeout. Stored in MDC, so copied with MDC context to other threads
+     */
+    public static OptionalLong getDeadline() {
+        String strValue = MDC.get(DEADLINE);
+        if (ThriftUtils.empty(strValue)) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(strValue));
+        } catch (NumberFormatException ex) {
+            log.error("Unable to parse MDC parameter {}, value {}", DEADLINE, strValue, ex);
+            return OptionalLong.empty();
+        }
+    }
+
+    public static void setDeadline(OptionalLong deadlineMillis) {
+        if (deadlineMillis.isPresent()) {
+            MDC.put(DEADLINE, Long.toString(deadlineMillis.getAsLong()));
+        } else {
+            MDC.remove(DEADLINE);
+        }
+    }
+
+    /**
+     * Per-call deadline. Deadline can be only decreased, so nested call can't extend budget of caller
+     */
+    public static void setTimeout(Duration timeout) {
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
+        OptionalLong current = getDeadline();
+        if (!current.isPresent() || current.getAsLong() > deadline) {
+            setDeadline(OptionalLong.of(deadline));
+        }
+    }
+
+    /**
+     * @return milliseconds left until deadline, negative if deadline expired
+     */
+    public static OptionalLong getRemainingMillis() {
+        OptionalLong deadline = getDeadline();
+        if (deadline.isPresent()) {
+            return OptionalLong.of(deadline.getAsLong() - System.currentTimeMillis());
+        } else {
+            return OptionalLong.empty();
+        }
+    }
+
+    public static boolean isDeadlineExpired() {
+        OptionalLong remaining = getRemainingMillis();
+        return remaining.isPresent() && remaining.getAsLong() <= 0;
+    }
+
+    /**
+     * Server worker set time when request frame was read, so deadline from request header
+     * includes time spent in server queue
+     * @param nanoTime System.nanoTime() of frame read, 0 - request not queued
+     */
+    public static void setRequestReadNanos(long nanoTime) {
+        threadLocal.get().requestReadNanos = nanoTime;
+    }
+
+    /**
+     * @return milliseconds since request frame was read, 0 if called outside of server worker
+     */
+    public static long getRequestQueueMillis() {
+        long readNanos = threadLocal.get().requestReadNanos;
+        if (readNanos == 0) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - readNanos));
+    }
+
+    public static String getMethod() {
+        return MDC.get(METHOD);
+    }
+
+    /**
+     * @param method service.method, server pass precomputed string, to avoid concatenation on every request
+     */
+    public static void setMethod(String method) {
+        MDC.put(METHOD, method);
+    }
+
     public static String getClientAddress() {
         return MDC.get(CLIENT_ADDRESS);
     }
@@ -174,8 +277,12 @@ public class ThriftLogContext {
     private static class Context{
         private EnumMap<RequestHeader._Fields, String> cached = new EnumMap<>(RequestHeader._Fields.class);
         private RequestHeader cachedHeader = new RequestHeader();
+        private long requestReadNanos;
 
         public RequestHeader getHeader(){
+            if (cachedHeader == null) {
+                cachedHeader = new RequestHeader();
+            }
             readField(cachedHeader, TRACE_ID, RequestHeader._Fields.TRACE_ID);
             readField(cachedHeader, SPAN_ID, RequestHeader._Fields.SPAN_ID);
             readField(cachedHeader, PARENT_SPAN_ID, RequestHeader._Fields.PARENT_SPAN_ID);
@@ -192,6 +299,12 @@ public class ThriftLogContext {
         }
 
 
+        public void reset() {
+            cached.clear();
+            // Заголовок мог быть сохранён приложением, поэтому не очищаем, а создаём новый при первом использовании
+            cachedHeader = null;
+        }
+
         private void readField(RequestHeader header, String mdcParameterName, RequestHeader._Fields field) {
             String strValue = MDC.get(mdcParameterName);
             if (Objects.equals(cached.get(field), strValue)) {
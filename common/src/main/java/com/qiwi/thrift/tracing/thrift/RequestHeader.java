@@ -27,6 +27,7 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
   private static final org.apache.thrift.protocol.TField SAMPLED_FIELD_DESC = new org.apache.thrift.protocol.TField("sampled", org.apache.thrift.protocol.TType.BOOL, (short)5);
   private static final org.apache.thrift.protocol.TField CLIENT_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("client_id", org.apache.thrift.protocol.TType.STRUCT, (short)6);
   private static final org.apache.thrift.protocol.TField FLAGS_FIELD_DESC = new org.apache.thrift.protocol.TField("flags", org.apache.thrift.protocol.TType.I64, (short)7);
+  private static final org.apache.thrift.protocol.TField TIMEOUT_MS_FIELD_DESC = new org.apache.thrift.protocol.TField("timeout_ms", org.apache.thrift.protocol.TType.I64, (short)8);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -40,6 +41,7 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
   public boolean sampled; // optional
   public ClientId client_id; // optional
   public long flags; // optional
+  public long timeout_ms; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
@@ -48,7 +50,8 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
     PARENT_SPAN_ID((short)3, "parent_span_id"),
     SAMPLED((short)5, "sampled"),
     CLIENT_ID((short)6, "client_id"),
-    FLAGS((short)7, "flags");
+    FLAGS((short)7, "flags"),
+    TIMEOUT_MS((short)8, "timeout_ms");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -75,6 +78,8 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
           return CLIENT_ID;
         case 7: // FLAGS
           return FLAGS;
+        case 8: // TIMEOUT_MS
+          return TIMEOUT_MS;
         default:
           return null;
       }
@@ -120,8 +125,9 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
   private static final int __PARENT_SPAN_ID_ISSET_ID = 2;
   private static final int __SAMPLED_ISSET_ID = 3;
   private static final int __FLAGS_ISSET_ID = 4;
+  private static final int __TIMEOUT_MS_ISSET_ID = 5;
   private byte __isset_bitfield = 0;
-  private static final _Fields optionals[] = {_Fields.PARENT_SPAN_ID,_Fields.SAMPLED,_Fields.CLIENT_ID,_Fields.FLAGS};
+  private static final _Fields optionals[] = {_Fields.PARENT_SPAN_ID,_Fields.SAMPLED,_Fields.CLIENT_ID,_Fields.FLAGS,_Fields.TIMEOUT_MS};
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -137,6 +143,8 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, ClientId.class)));
     tmpMap.put(_Fields.FLAGS, new org.apache.thrift.meta_data.FieldMetaData("flags", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I64)));
+    tmpMap.put(_Fields.TIMEOUT_MS, new org.apache.thrift.meta_data.FieldMetaData("timeout_ms", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I64)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(RequestHeader.class, metaDataMap);
   }
@@ -168,6 +176,7 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
       this.client_id = new ClientId(other.client_id);
     }
     this.flags = other.flags;
+    this.timeout_ms = other.timeout_ms;
   }
 
   public RequestHeader deepCopy() {
@@ -187,6 +196,8 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
     this.client_id = null;
     setFlagsIsSet(false);
     this.flags = 0;
+    setTimeoutMsIsSet(false);
+    this.timeout_ms = 0;
   }
 
   public long getTraceId() {
@@ -328,6 +339,29 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
     __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __FLAGS_ISSET_ID, value);
   }
 
+  public long getTimeoutMs() {
+    return this.timeout_ms;
+  }
+
+  public RequestHeader setTimeoutMs(long timeout_ms) {
+    this.timeout_ms = timeout_ms;
+    setTimeoutMsIsSet(true);
+    return this;
+  }
+
+  public void unsetTimeoutMs() {
+    __isset_bitfield = EncodingUtils.clearBit(__isset_bitfield, __TIMEOUT_MS_ISSET_ID);
+  }
+
+  /** Returns true if field timeout_ms is set (has been assigned a value) and false otherwise */
+  public boolean isSetTimeoutMs() {
+    return EncodingUtils.testBit(__isset_bitfield, __TIMEOUT_MS_ISSET_ID);
+  }
+
+  public void setTimeoutMsIsSet(boolean value) {
+    __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __TIMEOUT_MS_ISSET_ID, value);
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case TRACE_ID:
@@ -378,6 +412,14 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
       }
       break;
 
+    case TIMEOUT_MS:
+      if (value == null) {
+        unsetTimeoutMs();
+      } else {
+        setTimeoutMs((Long)value);
+      }
+      break;
+
     }
   }
 
@@ -401,6 +443,9 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
     case FLAGS:
       return getFlags();
 
+    case TIMEOUT_MS:
+      return getTimeoutMs();
+
     }
     throw new IllegalStateException();
   }
@@ -424,6 +469,8 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
       return isSetClientId();
     case FLAGS:
       return isSetFlags();
+    case TIMEOUT_MS:
+      return isSetTimeoutMs();
     }
     throw new IllegalStateException();
   }
@@ -495,6 +542,15 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
         return false;
     }
 
+    boolean this_present_timeout_ms = true && this.isSetTimeoutMs();
+    boolean that_present_timeout_ms = true && that.isSetTimeoutMs();
+    if (this_present_timeout_ms || that_present_timeout_ms) {
+      if (!(this_present_timeout_ms && that_present_timeout_ms))
+        return false;
+      if (this.timeout_ms != that.timeout_ms)
+        return false;
+    }
+
     return true;
   }
 
@@ -532,6 +588,11 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
     if (present_flags)
       list.add(flags);
 
+    boolean present_timeout_ms = true && (isSetTimeoutMs());
+    list.add(present_timeout_ms);
+    if (present_timeout_ms)
+      list.add(timeout_ms);
+
     return list.hashCode();
   }
 
@@ -603,6 +664,16 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetTimeoutMs()).compareTo(other.isSetTimeoutMs());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetTimeoutMs()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.timeout_ms, other.timeout_ms);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -658,6 +729,12 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
       sb.append(this.flags);
       first = false;
     }
+    if (isSetTimeoutMs()) {
+      if (!first) sb.append(", ");
+      sb.append("timeout_ms:");
+      sb.append(this.timeout_ms);
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -755,6 +832,14 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 8: // TIMEOUT_MS
+            if (schemeField.type == org.apache.thrift.protocol.TType.I64) {
+              struct.timeout_ms = iprot.readI64();
+              struct.setTimeoutMsIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -798,6 +883,11 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
         oprot.writeI64(struct.flags);
         oprot.writeFieldEnd();
       }
+      if (struct.isSetTimeoutMs()) {
+        oprot.writeFieldBegin(TIMEOUT_MS_FIELD_DESC);
+        oprot.writeI64(struct.timeout_ms);
+        oprot.writeFieldEnd();
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -834,7 +924,10 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
       if (struct.isSetFlags()) {
         optionals.set(5);
       }
-      oprot.writeBitSet(optionals, 6);
+      if (struct.isSetTimeoutMs()) {
+        optionals.set(6);
+      }
+      oprot.writeBitSet(optionals, 7);
       if (struct.isSetTraceId()) {
         oprot.writeI64(struct.trace_id);
       }
@@ -853,12 +946,15 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
       if (struct.isSetFlags()) {
         oprot.writeI64(struct.flags);
       }
+      if (struct.isSetTimeoutMs()) {
+        oprot.writeI64(struct.timeout_ms);
+      }
     }
 
     @Override
     public void read(org.apache.thrift.protocol.TProtocol prot, RequestHeader struct) throws org.apache.thrift.TException {
       TTupleProtocol iprot = (TTupleProtocol) prot;
-      BitSet incoming = iprot.readBitSet(6);
+      BitSet incoming = iprot.readBitSet(7);
       if (incoming.get(0)) {
         struct.trace_id = iprot.readI64();
         struct.setTraceIdIsSet(true);
@@ -884,6 +980,10 @@ public class RequestHeader implements org.apache.thrift.TBase<RequestHeader, Req
         struct.flags = iprot.readI64();
         struct.setFlagsIsSet(true);
       }
+      if (incoming.get(6)) {
+        struct.timeout_ms = iprot.readI64();
+        struct.setTimeoutMsIsSet(true);
+      }
     }
   }
 
@@ -17,5 +17,6 @@ struct RequestHeader {
   5: optional bool sampled // if true we should trace the request, if not set we have not decided.
   6: optional ClientId client_id
   7: optional i64 flags // contains various flags such as debug mode on/off
+  8: optional i64 timeout_ms // time left until caller deadline, relative to avoid clock skew between hosts
 }
 
@@ -0,0 +1,66 @@
+package com.qiwi.thrift.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import com.qiwi.thrift.utils.ThriftRequestStatus;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.testng.Assert.assertEquals;
+
+@SuppressWarnings("MagicNumber")
+public class ThriftCallMetricsTest {
+    @Test(groups = "unit")
+    public void metricNames() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        ThriftCallMetrics metrics = new ThriftCallMetrics(registry);
+        ThriftClientAddress address = ThriftClientAddress.parse("127.0.0.1:9090");
+
+        metrics.logCall(ThriftCallType.SYNC_BALANCER, address, "Demo", "request", 1000, ThriftRequestStatus.SUCCESS);
+        metrics.logCall(ThriftCallType.SYNC_BALANCER, address, "Demo", "request", 1000, ThriftRequestStatus.CONNECTION_ERROR);
+
+        assertEquals(registry.getTimers().keySet(), new HashSet<>(Arrays.asList(
+                "Client.Demo.127_0_0_1:9090.requests",
+                "Client.Demo.127_0_0_1:9090.method.request.requests",
+                "Client.Demo.all.requests",
+                "Client.Demo.all.method.request.requests"
+        )));
+        assertEquals(registry.timer("Client.Demo.127_0_0_1:9090.method.request.requests").getCount(), 2);
+        assertEquals(registry.meter("Client.Demo.all.method.request.connectionError").getCount(), 1);
+        assertEquals(registry.meter("Client.Demo.all.error").getCount(), 1);
+        assertEquals(registry.getMeters().size(), 8);
+    }
+
+    @Test(groups = "unit")
+    public void methodId() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        ThriftCallMetrics metrics = new ThriftCallMetrics(registry);
+        ThriftClientAddress address = ThriftClientAddress.parse("127.0.0.1:9090");
+
+        metrics.logCall(ThriftCallType.SYNC_BALANCER, address, "Demo", 0, "request", 1000, ThriftRequestStatus.SUCCESS);
+        metrics.logCall(ThriftCallType.SYNC_BALANCER, address, "Demo", "request", 1000, ThriftRequestStatus.SUCCESS);
+        // Другой интерфейс с тем же именем сервиса, номер метода совпадает
+        metrics.logCall(ThriftCallType.SYNC_BALANCER, address, "Demo", 0, "healthCheck", 1000, ThriftRequestStatus.SUCCESS);
+        metrics.logCall(ThriftCallType.SYNC_BALANCER, address, "Demo", 0, "request", 1000, ThriftRequestStatus.SUCCESS);
+
+        assertEquals(registry.timer("Client.Demo.127_0_0_1:9090.method.request.requests").getCount(), 3);
+        assertEquals(registry.timer("Client.Demo.all.method.request.requests").getCount(), 3);
+        assertEquals(registry.timer("Client.Demo.127_0_0_1:9090.method.healthCheck.requests").getCount(), 1);
+        assertEquals(registry.timer("Client.Demo.all.requests").getCount(), 4);
+    }
+
+    @Test(groups = "unit")
+    public void queueTime() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        ThriftCallMetrics metrics = new ThriftCallMetrics(registry);
+
+        metrics.logQueueTime("Demo", 1000, false);
+        assertEquals(registry.getMeters().size(), 0);
+        metrics.logQueueTime("Demo", 1000, true);
+
+        assertEquals(registry.timer("Server.Demo.admission.queueTime").getCount(), 2);
+        assertEquals(registry.meter("Server.Demo.admission.shed").getCount(), 1);
+    }
+}
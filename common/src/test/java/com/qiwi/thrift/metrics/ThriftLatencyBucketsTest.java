@@ -0,0 +1,41 @@
+package com.qiwi.thrift.metrics;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@SuppressWarnings("MagicNumber")
+public class ThriftLatencyBucketsTest {
+    @Test(groups = "unit")
+    public void buckets() throws Exception {
+        ThriftLatencyBuckets buckets = ThriftLatencyBuckets.ofSignificantDigits(2);
+        int previous = -1;
+        for (long value = 0; value < TimeUnit.MINUTES.toNanos(20); value = value * 11 / 10 + 1024) {
+            int index = buckets.getIndex(value);
+            assertTrue(index >= previous);
+            if (value < (1L << 40)) {
+                assertTrue(buckets.getLowestValue(index) <= value, "value " + value);
+                assertTrue(buckets.getHighestValue(index) >= value, "value " + value);
+                // Ошибка не больше 1% для двух значащих цифр, кроме первой микросекунды
+                assertTrue(buckets.getHighestValue(index) - buckets.getLowestValue(index) <= Math.max(value / 100, 1024));
+            }
+            previous = index;
+        }
+        assertEquals(buckets.getIndex(Long.MAX_VALUE), buckets.getLength() - 1);
+    }
+
+    @Test(groups = "unit")
+    public void balancerBuckets() throws Exception {
+        // 8 бакетов на степень двойки, как у гистограммы балансировщика
+        ThriftLatencyBuckets buckets = new ThriftLatencyBuckets(4);
+        assertEquals(buckets.getLength(), 224);
+        for (long value = 16 * 1024; value < (1L << 40); value = value * 11 / 10) {
+            int index = buckets.getIndex(value);
+            assertTrue(buckets.getLowestValue(index) <= value && value <= buckets.getHighestValue(index));
+            assertTrue(buckets.getHighestValue(index) - buckets.getLowestValue(index) <= value / 8);
+        }
+    }
+}
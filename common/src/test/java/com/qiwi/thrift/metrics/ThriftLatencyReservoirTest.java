@@ -0,0 +1,40 @@
+package com.qiwi.thrift.metrics;
+
+import com.codahale.metrics.Snapshot;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+@SuppressWarnings("MagicNumber")
+public class ThriftLatencyReservoirTest {
+    @Test(groups = "unit")
+    public void percentiles() throws Exception {
+        ThriftLatencyReservoir reservoir = new ThriftLatencyReservoir(2, Duration.ofMinutes(1));
+        for (int i = 1; i <= 10_000; i++) {
+            reservoir.update(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(snapshot.size(), 10_000);
+        assertEquals(snapshot.getMedian(), 5_000_000, 50_000);
+        assertEquals(snapshot.get999thPercentile(), 9_990_000, 100_000);
+        assertEquals(snapshot.getMax(), 10_000_000, 100_000);
+        assertEquals(snapshot.getMin(), 1000, 1024);
+        assertEquals(snapshot.getMean(), 5_000_000, 50_000);
+        // Снимок не меняется до конца интервала
+        reservoir.update(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(reservoir.getSnapshot().size(), 10_000);
+    }
+
+    @Test(groups = "unit")
+    public void interval() throws Exception {
+        ThriftLatencyReservoir reservoir = new ThriftLatencyReservoir(1, Duration.ZERO);
+        reservoir.update(1_000_000);
+        assertEquals(reservoir.getSnapshot().size(), 1);
+        assertEquals(reservoir.getSnapshot().size(), 0);
+        reservoir.update(2_000_000);
+        assertEquals(reservoir.getSnapshot().getMax(), 2_000_000, 200_000);
+    }
+}
@@ -0,0 +1,105 @@
+package com.qiwi.thrift.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import com.qiwi.thrift.utils.ThriftRequestStatus;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@SuppressWarnings("MagicNumber")
+public class ThriftPrometheusExporterTest {
+    @Test(groups = "unit")
+    public void parse() throws Exception {
+        assertEquals(
+                ThriftPrometheusExporter.parse("Client.Demo.127_0_0_1:9090.method.request.requests"),
+                new String[]{"Client", "Demo", "127_0_0_1:9090", "request", "requests"}
+        );
+        assertEquals(
+                ThriftPrometheusExporter.parse("Client.Demo.all.dc1.errorRatio"),
+                new String[]{"Client", "Demo", "all.dc1", "", "errorRatio"}
+        );
+        assertEquals(
+                ThriftPrometheusExporter.parse("Server.Demo.method"),
+                new String[]{"Server", "Demo", "", "", "method"}
+        );
+        assertEquals(ThriftPrometheusExporter.parse("uptime"), new String[]{"", "", "", "", "uptime"});
+    }
+
+    @Test(groups = "unit")
+    public void numbers() throws Exception {
+        ThriftPrometheusExporter.Buffer buffer = new ThriftPrometheusExporter.Buffer();
+        buffer.append(0L).append(' ').append(-1234567890123L).append(' ')
+                .append(0.0).append(' ').append(1.5).append(' ').append(-0.000123).append(' ')
+                .append(Double.NaN).append(' ').append(Double.NEGATIVE_INFINITY).append(' ').append(1e12);
+        assertEquals(buffer.asString(), "0 -1234567890123 0 1.5 -0.000123 NaN -Inf 1.0E12");
+    }
+
+    @Test(groups = "unit")
+    public void write() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        ThriftCallMetrics metrics = new ThriftCallMetrics(registry);
+        ThriftPrometheusExporter exporter = new ThriftPrometheusExporter(registry);
+        ThriftClientAddress address = ThriftClientAddress.parse("127.0.0.1:9090");
+        metrics.logCall(ThriftCallType.SYNC_BALANCER, address, "Demo", "request", 2_000_000, ThriftRequestStatus.SUCCESS);
+        metrics.logCall(ThriftCallType.SYNC_BALANCER, address, "Demo", "request", 2_000_000, ThriftRequestStatus.APP_ERROR);
+        registry.register("Server.executor.9090.active", (Gauge<Integer>) () -> 3);
+        registry.register("Server.executor.9090.status", (Gauge<String>) () -> "UP");
+
+        ThriftPrometheusExporter.Buffer buffer = new ThriftPrometheusExporter.Buffer();
+        exporter.write(buffer);
+        String text = buffer.asString();
+
+        assertTrue(text.contains("# TYPE thrift_requests_seconds summary\n"), text);
+        assertTrue(text.contains(
+                "thrift_requests_seconds_count{type=\"Client\",service=\"Demo\",address=\"127_0_0_1:9090\",method=\"request\"} 2\n"
+        ), text);
+        assertTrue(text.contains(
+                "thrift_requests_seconds{type=\"Client\",service=\"Demo\",address=\"all\",quantile=\"0.5\"} 0.002"
+        ), text);
+        assertTrue(text.contains("# TYPE thrift_appError_total counter\n"), text);
+        assertTrue(text.contains("thrift_appError_total{type=\"Client\",service=\"Demo\",address=\"all\"} 1\n"), text);
+        assertTrue(text.contains("thrift_active{type=\"Server\",service=\"executor\",address=\"9090\"} 3\n"), text);
+        assertFalse(text.contains("thrift_status{"), text);
+
+        registry.remove("Server.executor.9090.active");
+        buffer.reset();
+        exporter.write(buffer);
+        assertFalse(buffer.asString().contains("thrift_active"));
+        exporter.close();
+    }
+
+    @Test(groups = "unit")
+    public void http() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.meter("Server.Demo.all.error").mark(5);
+        try (ThriftPrometheusExporter exporter = new ThriftPrometheusExporter(registry)) {
+            exporter.start("127.0.0.1", 0);
+            URL url = new URL("http://127.0.0.1:" + exporter.getPort() + ThriftPrometheusExporter.PATH);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(connection.getResponseCode(), 200);
+            assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] bytes = new byte[1024];
+                for (int read = in.read(bytes); read >= 0; read = in.read(bytes)) {
+                    body.write(bytes, 0, read);
+                }
+            }
+            assertEquals(
+                    new String(body.toByteArray(), StandardCharsets.UTF_8),
+                    "# TYPE thrift_error_total counter\n"
+                            + "thrift_error_total{type=\"Server\",service=\"Demo\",address=\"all\"} 5\n"
+            );
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.qiwi.thrift.tracing;
 
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
 import org.apache.thrift.transport.TFastFramedTransport;
 import org.apache.thrift.transport.TMemoryBuffer;
 import org.testng.annotations.Test;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TCompactTracedProtocolTest {
 
@@ -34,4 +40,57 @@ public class TCompactTracedProtocolTest {
         assertEquals(new String(bytes2, StandardCharsets.UTF_8), "Test2");
 
     }
+
+    @Test(groups = "unit")
+    public void deadlinePropagation() throws Exception {
+        TMemoryBuffer buffer = new TMemoryBuffer(1024);
+        TCompactTracedProtocol client = new TCompactTracedProtocol(buffer, 1024, 1024, ThriftTraceMode.BASIC, 5000);
+        TCompactTracedProtocol server = new TCompactTracedProtocol(buffer, 1024, 1024, ThriftTraceMode.BASIC);
+        try {
+            ThriftLogContext.newExecution();
+            client.writeMessageBegin(new TMessage("test", TMessageType.CALL, 1));
+            ThriftLogContext.newExecution();
+            server.readMessageBegin();
+            long remaining = ThriftLogContext.getRemainingMillis().getAsLong();
+            assertTrue(remaining > 4000 && remaining <= 5000, "Remaining " + remaining);
+
+            // Вложенный вызов получает остаток бюджета, а не свой таймаут
+            ThriftLogContext.setDeadline(OptionalLong.of(System.currentTimeMillis() + 100));
+            client.writeMessageBegin(new TMessage("nested", TMessageType.CALL, 2));
+            ThriftLogContext.newExecution();
+            server.readMessageBegin();
+            assertTrue(ThriftLogContext.getRequestHeader().getTimeoutMs() <= 100);
+            assertFalse(ThriftLogContext.isDeadlineExpired());
+
+            ThriftLogContext.setDeadline(OptionalLong.of(System.currentTimeMillis() - 1));
+            assertTrue(ThriftLogContext.isDeadlineExpired());
+        } finally {
+            ThriftLogContext.newExecution();
+        }
+    }
+
+    @Test(groups = "unit")
+    public void queuedRequestDeadlineExpired() throws Exception {
+        TMemoryBuffer buffer = new TMemoryBuffer(1024);
+        TCompactTracedProtocol client = new TCompactTracedProtocol(buffer, 1024, 1024, ThriftTraceMode.BASIC, 100);
+        TCompactTracedProtocol server = new TCompactTracedProtocol(buffer, 1024, 1024, ThriftTraceMode.BASIC);
+        try {
+            ThriftLogContext.newExecution();
+            client.writeMessageBegin(new TMessage("test", TMessageType.CALL, 1));
+            ThriftLogContext.newExecution();
+            // Фрейм прочитан 200 мс назад и ждал свободного потока дольше таймаута клиента
+            ThriftLogContext.setRequestReadNanos(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(200));
+            server.readMessageBegin();
+            assertTrue(ThriftLogContext.isDeadlineExpired(), "Queued request must be dropped");
+
+            ThriftLogContext.newExecution();
+            client.writeMessageBegin(new TMessage("test", TMessageType.CALL, 2));
+            ThriftLogContext.setRequestReadNanos(System.nanoTime());
+            server.readMessageBegin();
+            assertFalse(ThriftLogContext.isDeadlineExpired());
+        } finally {
+            ThriftLogContext.setRequestReadNanos(0);
+            ThriftLogContext.newExecution();
+        }
+    }
 }
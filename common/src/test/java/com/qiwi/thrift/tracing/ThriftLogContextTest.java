@@ -158,6 +158,25 @@ public class ThriftLogContextTest {
         assertNotEquals(MDC.get(ThriftLogContext.PARENT_SPAN_ID), Optional.of("deaf"));
     }
 
+    @Test(groups = "unit")
+    public void clearExecution() throws Exception {
+        RequestHeader requestHeader = new RequestHeader();
+        requestHeader.setTraceId(0xDEAD);
+        requestHeader.setSpanId(0xDEAF);
+        ThriftLogContext.setRequestHeader(requestHeader);
+        ThriftLogContext.setMethod("DemoServer.request");
+
+        ThriftLogContext.clearExecution();
+        assertNull(MDC.get(ThriftLogContext.TRACE_ID));
+        assertNull(ThriftLogContext.getMethod());
+        assertEquals(requestHeader.getTraceId(), 0xDEAD);
+
+        long traceId = ThriftLogContext.getTraceId();
+        assertNotEquals(traceId, 0xDEAD);
+        assertEquals(MDC.get(ThriftLogContext.TRACE_ID), Long.toHexString(traceId));
+        assertNotEquals(ThriftLogContext.getSpanId(), 0xDEAF);
+    }
+
     @Test(groups = "unit")
     public void setters() throws Exception {
         ThriftLogContext.setTraceId(0xDEAD);
@@ -0,0 +1,71 @@
+package com.qiwi.thrift.balancer;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Power of two choices: two random nodes, request sent to node with fewer requests in flight.
+ * Reacts to node queueing on every request, without waiting for reBalance.
+ *
+ * reBalance and nodes delegated, so delegate keeps load statistic used by circuit breaker.
+ */
+public class LeastRequestsBalancer<I> implements Balancer<I> {
+    // Здесь не может быть пустого значения, оптионал не аллоцируется на каждый запрос.
+    private final Optional<I>[] nodes;
+    private final ToLongFunction<I> requestsInFlightGetter;
+    private final Balancer<I> delegate;
+    private final IntUnaryOperator randomSupplier;
+
+    public LeastRequestsBalancer(List<I> items, ToLongFunction<I> requestsInFlightGetter, Balancer<I> delegate) {
+        this(items, requestsInFlightGetter, delegate, bound -> ThreadLocalRandom.current().nextInt(bound));
+    }
+
+    /**
+     * @param randomSupplier random number from 0 inclusive to bound exclusive
+     */
+    @SuppressWarnings("unchecked")
+    public LeastRequestsBalancer(
+            List<I> items,
+            ToLongFunction<I> requestsInFlightGetter,
+            Balancer<I> delegate,
+            IntUnaryOperator randomSupplier
+    ) {
+        this.nodes = items.stream().map(Optional::of).toArray(Optional[]::new);
+        this.requestsInFlightGetter = requestsInFlightGetter;
+        this.delegate = delegate;
+        this.randomSupplier = randomSupplier;
+    }
+
+    @Override
+    public Optional<I> get() {
+        switch (nodes.length) {
+            case 0:
+                return Optional.empty();
+            case 1:
+                return nodes[0];
+            default:
+                int first = randomSupplier.applyAsInt(nodes.length);
+                int second = randomSupplier.applyAsInt(nodes.length - 1);
+                if (second >= first) {
+                    second++;
+                }
+                long firstRequests = requestsInFlightGetter.applyAsLong(nodes[first].get());
+                long secondRequests = requestsInFlightGetter.applyAsLong(nodes[second].get());
+                return firstRequests <= secondRequests ? nodes[first] : nodes[second];
+        }
+    }
+
+    @Override
+    public Stream<I> nodes() {
+        return delegate.nodes();
+    }
+
+    @Override
+    public void reBalance() {
+        delegate.reBalance();
+    }
+}
@@ -3,6 +3,7 @@ package com.qiwi.thrift.balancer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.DoubleSupplier;
@@ -15,6 +16,7 @@ public class WeightedBalancer<I> implements Balancer<I> {
     private final List<I> items;
     private final ToDoubleFunction<I> weightGetter;
     private final DoubleSupplier randomSupplier;
+    private final Sampling sampling;
 
     public static <T> void normalize(List<? extends Weight<T>> items){
         double sumWeight = items.stream()
@@ -51,9 +53,19 @@ public class WeightedBalancer<I> implements Balancer<I> {
     }
 
     public WeightedBalancer(List<I> items, ToDoubleFunction<I> weightGetter, DoubleSupplier randomSupplier) {
+        this(items, weightGetter, randomSupplier, Sampling.ALIAS);
+    }
+
+    public WeightedBalancer(
+            List<I> items,
+            ToDoubleFunction<I> weightGetter,
+            DoubleSupplier randomSupplier,
+            Sampling sampling
+    ) {
         this.items = new ArrayList<>(items);
         this.weightGetter = weightGetter;
         this.randomSupplier = randomSupplier;
+        this.sampling = Objects.requireNonNull(sampling);
         reBalance();
     }
 
@@ -80,11 +92,108 @@ public class WeightedBalancer<I> implements Balancer<I> {
         if (filtered.size() == 1) {
             I item = filtered.get(0).item;
             implementation = new SingleNodeBalancer<I>(item);
+        } else if (sampling == Sampling.ALIAS) {
+            implementation = new AliasBalancer<>(filtered, randomSupplier);
         } else {
             implementation = new RandomizeBalancer<>(filtered, randomSupplier);
         }
     }
 
+    public enum Sampling {
+        /**
+         * Alias table (Vose), O(1) on every request, O(n) on reBalance
+         */
+        ALIAS,
+        /**
+         * Binary search over cumulative weights, O(log n) on every request
+         */
+        BINARY_SEARCH,
+    }
+
+    /**
+     * Alias method: every slot of table selected with equal probability, then one of two nodes of slot
+     * selected by slot threshold. Slot and threshold taken from one random number.
+     */
+    private static class AliasBalancer<I> implements Balancer<I> {
+        private final Optional<I>[] nodes;
+        private final double[] thresholds;
+        private final int[] aliases;
+        private final DoubleSupplier randomSupplier;
+
+        public AliasBalancer(List<Weight<I>> nodes, DoubleSupplier randomSupplier) {
+            this.randomSupplier = randomSupplier;
+            int size = nodes.size();
+            Optional<I>[] newNodes = new Optional[size];
+            double sumWeight = 0;
+            for (int i = 0; i < size; i++) {
+                newNodes[i] = Optional.of(nodes.get(i).item);
+                sumWeight += nodes.get(i).weight;
+            }
+            double[] scaled = new double[size];
+            int[] small = new int[size];
+            int[] large = new int[size];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int i = 0; i < size; i++) {
+                scaled[i] = nodes.get(i).weight * size / sumWeight;
+                if (scaled[i] < 1) {
+                    small[smallCount++] = i;
+                } else {
+                    large[largeCount++] = i;
+                }
+            }
+            double[] newThresholds = new double[size];
+            int[] newAliases = new int[size];
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[--largeCount];
+                newThresholds[less] = scaled[less];
+                newAliases[less] = more;
+                scaled[more] = (scaled[more] + scaled[less]) - 1;
+                if (scaled[more] < 1) {
+                    small[smallCount++] = more;
+                } else {
+                    large[largeCount++] = more;
+                }
+            }
+            // Остатки из-за погрешности на дробях, их вероятность равна единице
+            while (largeCount > 0) {
+                int index = large[--largeCount];
+                newThresholds[index] = 1;
+                newAliases[index] = index;
+            }
+            while (smallCount > 0) {
+                int index = small[--smallCount];
+                newThresholds[index] = 1;
+                newAliases[index] = index;
+            }
+            this.nodes = newNodes;
+            this.thresholds = newThresholds;
+            this.aliases = newAliases;
+        }
+
+        @Override
+        public Optional<I> get() {
+            double position = randomSupplier.getAsDouble() * nodes.length;
+            int idx = Math.min((int) position, nodes.length - 1);
+            if (position - idx < thresholds[idx]) {
+                return nodes[idx];
+            } else {
+                return nodes[aliases[idx]];
+            }
+        }
+
+        @Override
+        public Stream<I> nodes() {
+            return Arrays.stream(nodes).map(Optional::get);
+        }
+
+        @Override
+        public void reBalance() {
+            throw new UnsupportedOperationException("reBalance not supported in internal implementation");
+        }
+    }
+
     private static class RandomizeBalancer<I> implements Balancer<I> {
         // Здесь не может быть пустого значения. Просто небольшая оптимизация чтобы не аллоцировать
         // оптионал на каждый запрос.
@@ -3,6 +3,8 @@ package com.qiwi.thrift.balancer.key;
 import com.qiwi.thrift.balancer.load.NodeStatus;
 import com.qiwi.thrift.balancer.load.ThriftBalancerAbstractClient;
 import com.qiwi.thrift.pool.ThriftSyncClient;
+import com.qiwi.thrift.reflect.SyncClientDispatcher;
+import com.qiwi.thrift.reflect.SyncMethodInfo;
 import com.qiwi.thrift.utils.LambdaUtils;
 import org.apache.thrift.TServiceClient;
 import org.apache.thrift.transport.TTransportException;
@@ -18,6 +20,7 @@ public class ThriftKeySyncClientImp<K, I, T extends TServiceClient>
         implements ThriftKeySyncClient<K, I> {
     private final Constructor<? extends I> proxyConstructor;
     private final ThriftKeyLoadBalancer<K, I, ThriftSyncClient<I, T>> keyBalancer;
+    private final SyncClientDispatcher dispatcher;
 
     public ThriftKeySyncClientImp(
             ThriftKeyLoadBalancer<K, I, ThriftSyncClient<I, T>> balancer,
@@ -26,6 +29,7 @@ public class ThriftKeySyncClientImp<K, I, T extends TServiceClient>
     ) {
         super(balancer, config);
         keyBalancer = balancer;
+        dispatcher = SyncClientDispatcher.of(interfaceClass);
         Class<? extends I> proxyClass = (Class<? extends I>) Proxy.getProxyClass(
                 interfaceClass.getClassLoader(),
                 interfaceClass,
@@ -86,7 +90,7 @@ public class ThriftKeySyncClientImp<K, I, T extends TServiceClient>
     }
 
     private I createProxy(NodeStatus<I, ThriftSyncClient<I, T>> status) {
-        Handler<I, T> handler = new Handler<>(status, getMaxWaitMillis());
+        Handler<I, T> handler = new Handler<>(status, dispatcher, getMaxWaitMillis());
         try {
             return proxyConstructor.newInstance(handler);
         } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
@@ -96,19 +100,26 @@ public class ThriftKeySyncClientImp<K, I, T extends TServiceClient>
 
     private static class Handler<I, T extends TServiceClient> implements InvocationHandler{
         private final NodeStatus<I, ThriftSyncClient<I, T>> nodeStatus;
+        private final SyncClientDispatcher dispatcher;
         private final long maxWaitMillis;
 
-        private Handler(NodeStatus<I, ThriftSyncClient<I, T>> nodeStatus, long maxWaitMillis) {
+        private Handler(
+                NodeStatus<I, ThriftSyncClient<I, T>> nodeStatus,
+                SyncClientDispatcher dispatcher,
+                long maxWaitMillis
+        ) {
             this.nodeStatus = nodeStatus;
+            this.dispatcher = dispatcher;
             this.maxWaitMillis = maxWaitMillis;
         }
 
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+            SyncMethodInfo methodInfo = dispatcher.get(method);
+            if (methodInfo.getKind() == SyncMethodInfo.Kind.CLOSE) {
                 return null;
             }
-            return nodeStatus.getClient().invoke(method, args, nodeStatus.isWorking()? maxWaitMillis: 0);
+            return nodeStatus.getClient().invoke(methodInfo, args, nodeStatus.isWorking()? maxWaitMillis: 0);
         }
     }
 }
@@ -0,0 +1,338 @@
+package com.qiwi.thrift.balancer.load;
+
+import org.slf4j.MDC;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests: if response not received in hedge delay, same request sent to other node,
+ * first successful response returned to caller, other ignored.
+ *
+ * Delay is fixed (hedge_delay_ms) or p95 of observed latency. Number of hedged requests limited by
+ * budget - hedge_budget_ratio of hedged methods requests, so on outage load grow no more than this ratio.
+ */
+class HedgingPolicy {
+    static final double LATENCY_PERCENTILE = 0.95;
+    static final int LATENCY_SAMPLES = 1024;
+    /**
+     * До этого числа замеров p95 не считается, и запросы без фиксированной задержки не дублируются
+     */
+    static final int MIN_LATENCY_SAMPLES = 64;
+    private static final int RECALCULATE_PERIOD = 64;
+    private static final long BUDGET_SCALE = 1000;
+    /**
+     * Не копим бюджет больше чем на 10 запросов, иначе после долгой нормальной работы
+     * пачка дублей уйдёт на упавший сервис
+     */
+    private static final long MAX_BUDGET = 10 * BUDGET_SCALE;
+    private static final int MAX_NODE_SELECT_ATTEMPTS = 3;
+    /**
+     * Потоков для синхронных запросов с дублированием. Если все заняты, запрос не дублируется
+     */
+    static final int MAX_SYNC_THREADS = 256;
+
+    private static final ScheduledThreadPoolExecutor scheduler = createScheduler();
+    private static final ThreadPoolExecutor syncExecutor = createSyncExecutor();
+
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong budget = new AtomicLong();
+    private final AtomicLong hedgedCount = new AtomicLong();
+    private volatile long percentileNanos = -1;
+
+    private volatile Set<String> hedgedMethods = Collections.emptySet();
+    private volatile long fixedDelayNanos;
+    private volatile long budgetIncrement;
+
+    void reconfigure(ThriftBalancerConfig config) {
+        hedgedMethods = config.getHedgedMethods();
+        fixedDelayNanos = config.getHedgeDelay().toNanos();
+        budgetIncrement = Math.round(config.getHedgeBudgetRatio() * BUDGET_SCALE);
+    }
+
+    boolean isHedged(String methodName) {
+        return hedgedMethods.contains(methodName);
+    }
+
+    /**
+     * @return delay before hedged request, -1 - if hedging not possible now
+     */
+    long getDelayNanos() {
+        if (fixedDelayNanos > 0) {
+            return fixedDelayNanos;
+        }
+        return percentileNanos;
+    }
+
+    long getHedgedCount() {
+        return hedgedCount.get();
+    }
+
+    void recordLatency(long latencyNanos) {
+        long sample = samples.getAndIncrement();
+        latencies.set((int) (sample % LATENCY_SAMPLES), latencyNanos);
+        if ((sample + 1) % RECALCULATE_PERIOD == 0) {
+            recalculatePercentile(sample + 1);
+        }
+    }
+
+    private void recalculatePercentile(long sampleCount) {
+        if (sampleCount < MIN_LATENCY_SAMPLES) {
+            return;
+        }
+        int count = (int) Math.min(sampleCount, LATENCY_SAMPLES);
+        long[] copy = new long[count];
+        for (int i = 0; i < count; i++) {
+            copy[i] = latencies.get(i);
+        }
+        Arrays.sort(copy);
+        percentileNanos = copy[Math.min(count - 1, (int) Math.ceil(count * LATENCY_PERCENTILE) - 1)];
+    }
+
+    private void earnBudget() {
+        long increment = budgetIncrement;
+        if (increment <= 0) {
+            return;
+        }
+        long current;
+        do {
+            current = budget.get();
+            if (current >= MAX_BUDGET) {
+                return;
+            }
+        } while (!budget.compareAndSet(current, Math.min(MAX_BUDGET, current + increment)));
+    }
+
+    boolean tryAcquireBudget() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < BUDGET_SCALE) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - BUDGET_SCALE));
+        return true;
+    }
+
+    /**
+     * @param primaryNode node selected for request
+     * @param nodeSupplier balancer, used to select node for hedged request
+     * @param call send request to node. Must not block, hedged request should not wait for connection
+     */
+    <N, R> CompletableFuture<R> execute(
+            N primaryNode,
+            Supplier<Optional<N>> nodeSupplier,
+            NodeCall<N, R> call
+    ) {
+        earnBudget();
+        long delayNanos = getDelayNanos();
+        long startNanos = System.nanoTime();
+        CompletableFuture<R> primary = call.send(primaryNode, false);
+        primary.whenComplete((response, error) -> {
+            if (error == null) {
+                recordLatency(System.nanoTime() - startNanos);
+            }
+        });
+        if (delayNanos < 0 || primary.isDone()) {
+            return primary;
+        }
+
+        CompletableFuture<R> result = new CompletableFuture<>();
+        AtomicInteger inFlight = new AtomicInteger(1);
+        subscribe(primary, result, inFlight);
+        Map<String, String> diagnosticContext = MDC.getCopyOfContextMap();
+        ScheduledFuture<?> timer = scheduler.schedule(
+                () -> withContext(diagnosticContext, () -> sendHedged(primaryNode, nodeSupplier, call, result, inFlight)),
+                delayNanos,
+                TimeUnit.NANOSECONDS
+        );
+        result.whenComplete((response, error) -> timer.cancel(false));
+        return result;
+    }
+
+    private <N, R> void sendHedged(
+            N primaryNode,
+            Supplier<Optional<N>> nodeSupplier,
+            NodeCall<N, R> call,
+            CompletableFuture<R> result,
+            AtomicInteger inFlight
+    ) {
+        if (result.isDone()) {
+            return;
+        }
+        Optional<N> node = selectNode(primaryNode, nodeSupplier);
+        if (!node.isPresent() || !tryAcquireBudget()) {
+            return;
+        }
+        // Основной запрос мог завершиться ошибкой, тогда результат уже отдан
+        if (inFlight.getAndUpdate(count -> count == 0 ? 0 : count + 1) == 0) {
+            budget.addAndGet(BUDGET_SCALE);
+            return;
+        }
+        hedgedCount.incrementAndGet();
+        CompletableFuture<R> hedged;
+        try {
+            hedged = call.send(node.get(), true);
+        } catch (RejectedExecutionException e) {
+            // Нет свободного потока: запрос не дублируется, бюджет возвращается
+            budget.addAndGet(BUDGET_SCALE);
+            hedgedCount.decrementAndGet();
+            hedged = new CompletableFuture<>();
+            hedged.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            hedged = new CompletableFuture<>();
+            hedged.completeExceptionally(e);
+        }
+        subscribe(hedged, result, inFlight);
+    }
+
+    private static <N> Optional<N> selectNode(N primaryNode, Supplier<Optional<N>> nodeSupplier) {
+        Optional<N> node = Optional.empty();
+        for (int i = 0; i < MAX_NODE_SELECT_ATTEMPTS && !node.isPresent(); i++) {
+            node = nodeSupplier.get().filter(candidate -> !Objects.equals(candidate, primaryNode));
+        }
+        return node;
+    }
+
+    /**
+     * First success completes result, error - only if it last request in flight
+     */
+    private static <R> void subscribe(CompletableFuture<R> request, CompletableFuture<R> result, AtomicInteger inFlight) {
+        request.whenComplete((response, error) -> {
+            if (error == null) {
+                result.complete(response);
+            } else if (inFlight.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    /**
+     * Primary and hedged requests executed in bounded thread pool, caller wait first successful response.
+     * Slower call finish in background. If pool is full, primary request executed in caller thread without hedging
+     * @param call send request to node and wait for response
+     */
+    <N, R> R executeBlocking(
+            N primaryNode,
+            Supplier<Optional<N>> nodeSupplier,
+            BlockingNodeCall<N, R> call
+    ) throws Throwable {
+        CompletableFuture<R> result = null;
+        if (getDelayNanos() >= 0) {
+            try {
+                result = execute(primaryNode, nodeSupplier, (node, hedged) -> supplyAsync(() -> call.call(node, hedged)));
+            } catch (RejectedExecutionException e) {
+                // Бюджет уже начислен в execute
+                result = null;
+            }
+        } else {
+            earnBudget();
+        }
+        if (result == null) {
+            long startNanos = System.nanoTime();
+            R response = call.call(primaryNode, false);
+            recordLatency(System.nanoTime() - startNanos);
+            return response;
+        }
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause;
+        }
+    }
+
+    /**
+     * @throws RejectedExecutionException if all threads busy
+     */
+    private static <R> CompletableFuture<R> supplyAsync(BlockingCall<R> call) {
+        Map<String, String> diagnosticContext = MDC.getCopyOfContextMap();
+        CompletableFuture<R> future = new CompletableFuture<>();
+        syncExecutor.execute(() -> withContext(diagnosticContext, () -> {
+            try {
+                future.complete(call.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }));
+        return future;
+    }
+
+    private static void withContext(Map<String, String> diagnosticContext, Runnable runnable) {
+        if (diagnosticContext != null) {
+            MDC.setContextMap(diagnosticContext);
+        } else {
+            MDC.clear();
+        }
+        try {
+            runnable.run();
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "{\"balancer hedge\":\"timer\"}");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Without queue, so request never wait for thread: execute throws RejectedExecutionException
+     */
+    private static ThreadPoolExecutor createSyncExecutor() {
+        return new ThreadPoolExecutor(
+                0,
+                MAX_SYNC_THREADS,
+                60,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "{\"balancer hedge\":\"sync call\"}");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    @FunctionalInterface
+    interface NodeCall<N, R> {
+        CompletableFuture<R> send(N node, boolean hedged);
+    }
+
+    @FunctionalInterface
+    interface BlockingNodeCall<N, R> {
+        R call(N node, boolean hedged) throws Throwable;
+    }
+
+    @FunctionalInterface
+    private interface BlockingCall<R> {
+        R call() throws Throwable;
+    }
+}
@@ -0,0 +1,71 @@
+package com.qiwi.thrift.balancer.load;
+
+import com.qiwi.thrift.metrics.ThriftLatencyBuckets;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of request latency with fixed size.
+ * 8 buckets per power of two, so percentile error below 12.5%, from 1 microsecond to 18 minutes.
+ * Recording lock free, histograms merged by summing counters.
+ * Counters striped by LongAdder like other counters of StatsSlidingWindow:
+ * most requests of node fall into few buckets, one shared counter would be contended.
+ */
+class LatencyHistogram {
+    private static final ThriftLatencyBuckets BUCKETS = new ThriftLatencyBuckets(4);
+    static final int LENGTH = BUCKETS.getLength();
+
+    private final LongAdder[] counts = new LongAdder[LENGTH];
+
+    LatencyHistogram() {
+        for (int i = 0; i < LENGTH; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    void record(long latencyNanos) {
+        counts[BUCKETS.getIndex(latencyNanos)].increment();
+    }
+
+    void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+    }
+
+    /**
+     * @param result array of LENGTH counters
+     */
+    void addTo(long[] result) {
+        for (int i = 0; i < LENGTH; i++) {
+            result[i] += counts[i].sum();
+        }
+    }
+
+    /**
+     * @param counts counters, summed by addTo
+     * @param quantile 0.0 - 1.0
+     * @return upper bound of bucket with quantile or 0 if histogram is empty
+     */
+    static long getValueAtQuantile(long[] counts, double quantile) {
+        if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        }
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max((long) Math.ceil(quantile * total), 1);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BUCKETS.getHighestValue(i);
+            }
+        }
+        return BUCKETS.getHighestValue(counts.length - 1);
+    }
+}
@@ -15,6 +15,7 @@ import java.time.Instant;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 public class NodeStatus<I, C extends ThriftClient<I>> implements Closeable, ThriftRequestReporter {
@@ -52,6 +53,7 @@ public class NodeStatus<I, C extends ThriftClient<I>> implements Closeable, Thri
      */
     private final AtomicLong remainingTestRequest = new AtomicLong(0);
     private final AtomicLong finishedTestRequest = new AtomicLong(0);
+    private final LongAdder requestsInFlight = new LongAdder();
 
     // ----- эти поля изменяются только потоком updateRingStatus, по этому не требуют синхронизации -----
     private Instant returnTime = Instant.MIN;
@@ -115,6 +117,7 @@ public class NodeStatus<I, C extends ThriftClient<I>> implements Closeable, Thri
     @Override
     public void requestBegin(String serviceName, String methodName, ThriftCallType callType) {
         stats.getCurrent().requestBegin();
+        requestsInFlight.increment();
         // атомарная операция дорогая, оптимизируем.
         if (status.isTesting()) {
             remainingTestRequest.decrementAndGet();
@@ -132,6 +135,7 @@ public class NodeStatus<I, C extends ThriftClient<I>> implements Closeable, Thri
             Optional<Throwable> exception
     ) {
         stats.getCurrent().requestEnd(requestStatus, latencyNanos);
+        requestsInFlight.decrement();
         if (status.isTesting()) {
             finishedTestRequest.incrementAndGet();
         }
@@ -155,11 +159,11 @@ public class NodeStatus<I, C extends ThriftClient<I>> implements Closeable, Thri
 
     public double getLoad(){
         // Первый период пересекается со значения из предыдущей балансировки
-        StatsSlidingWindow.Bucket stat = stats.getStat(PERIODS_PER_RE_BALANCE - 1);
+        StatsSlidingWindow.Stat stat = stats.getStat(PERIODS_PER_RE_BALANCE - 1);
 
         int maxConnections = client.getMaxConnections();
         int numWaiters = client.getNumWaiters();
-        double loadByStat = stat.getLoad(maxConnections, numWaiters);
+        double loadByStat = stat.getLoad(maxConnections, numWaiters, config.getLatencyPercentile());
         return loadByStat;
     }
 
@@ -168,6 +172,13 @@ public class NodeStatus<I, C extends ThriftClient<I>> implements Closeable, Thri
         return getClient().getUsedConnections();
     }
 
+    /**
+     * @return requests started, but not finished yet, including waiting for connection
+     */
+    public long getRequestsInFlight() {
+        return Math.max(requestsInFlight.sum(), 0);
+    }
+
     public int getOpenConnections() {
         return getClient().getOpenConnections();
     }
@@ -246,7 +257,7 @@ public class NodeStatus<I, C extends ThriftClient<I>> implements Closeable, Thri
     }
 
     private boolean isFail(double avgDcLoad) {
-        StatsSlidingWindow.Bucket stat = stats.getStat();
+        StatsSlidingWindow.Stat stat = stats.getStat();
         long requestCountGap = status.requestCountGap;
         if (stat.getErrorRatio(requestCountGap) > config.getCircuitBreakerErrorRatio()) {
             log.warn(
@@ -444,6 +455,14 @@ public class NodeStatus<I, C extends ThriftClient<I>> implements Closeable, Thri
         return stats.getStat().getRequestLatencyNanos(1) / TimeUnit.MICROSECONDS.toNanos(1);
     }
 
+    public double getLatencyP50Ms() {
+        return stats.getStat().getLatencyPercentileNanos(0.5) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getLatencyP99Ms() {
+        return stats.getStat().getLatencyPercentileNanos(0.99) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
     public void reconfigure(ThriftBalancerConfig config) {
         this.config = config;
         // correct maxConnections set by ThriftDcBalancer in next node refresh cycle
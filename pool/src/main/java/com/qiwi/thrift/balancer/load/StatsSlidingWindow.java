@@ -7,8 +7,17 @@ import java.time.Duration;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Ring of buckets with request statistics, one bucket per period.
+ *
+ * Buckets allocated once and reused when ring rotates, counters striped by LongAdder,
+ * so requests from many threads don't contend on one cache line.
+ * Every bucket has latency histogram, so window gives latency percentiles, not only mean.
+ * Statistic summed without lock: request, finished during rotation, can be counted in next period.
+ * Bucket, recycled by rotation while it is summed, detected by its version and skipped.
+ */
 public class StatsSlidingWindow {
     private final long periodMillis;
     private final int size;
@@ -16,7 +25,7 @@ public class StatsSlidingWindow {
 
     private volatile Bucket currentBucket;
     private final Bucket[] window;
-    private long idx;
+    private volatile long idx;
 
     public StatsSlidingWindow(Duration period, int size) {
         this(period, size, Clock.systemUTC());
@@ -28,6 +37,9 @@ public class StatsSlidingWindow {
         this.clock = clock;
         this.idx = size * 2L;
         this.window = new Bucket[size];
+        for (int i = 0; i < window.length; i++) {
+            window[i] = new Bucket();
+        }
         reset();
     }
 
@@ -39,10 +51,12 @@ public class StatsSlidingWindow {
             synchronized (window) {
                 bucket = currentBucket;
                 if (bucket.id < periodId) {
-                    bucket = new Bucket(periodId, periodMillis);
+                    long nextIdx = idx + 1;
+                    // Самый старый бакет кольца
+                    bucket = window[(int) (nextIdx % size)];
+                    bucket.reset(periodId);
+                    idx = nextIdx;
                     currentBucket = bucket;
-                    idx++;
-                    window[(int) (idx % size)] = bucket;
                 }
             }
         }
@@ -51,33 +65,73 @@ public class StatsSlidingWindow {
 
 
 
-    public Bucket getStat() {
+    public Stat getStat() {
         return getStat(size);
     }
 
 
-    public Bucket getStat(int count){
+    public Stat getStat(int count){
         if (count > size) {
             throw new IndexOutOfBoundsException("Size " + size + " count " + count);
         }
         long currentTimeMillis = clock.millis();
-        synchronized (window) {
-            long id = idx;
-            long statPeriod = currentTimeMillis - window[(int) ((id - count + 1) % size)].id * periodMillis;
-            Bucket result = new Bucket(id - count, statPeriod);
-            for (int i = 0; i < count; i++) {
-                Bucket bucket = window[(int) ((id - i) % size)];
-                result.addOther(bucket);
+        long id = idx;
+        long firstBucketId = -1;
+        long requestsBeginCount = 0;
+        long requestsEndCount = 0;
+        long requestsLatencySumNanos = 0;
+        long requestsError = 0;
+        long requestsDisconnect = 0;
+        long[] latencyCounts = new long[LatencyHistogram.LENGTH];
+        long[] bucketLatencyCounts = new long[LatencyHistogram.LENGTH];
+        // От старого бакета к новому: перезаписан может быть только самый старый, если кольцо повернулось
+        for (int i = count - 1; i >= 0; i--) {
+            Bucket bucket = window[(int) ((id - i) % size)];
+            long version = bucket.version;
+            if ((version & 1) != 0) {
+                continue;
+            }
+            long bucketId = bucket.id;
+            long bucketBeginCount = bucket.requestsBeginCount.sum();
+            long bucketEndCount = bucket.requestsEndCount.sum();
+            long bucketLatencySumNanos = bucket.requestsLatencySumNanos.sum();
+            long bucketError = bucket.requestsError.sum();
+            long bucketDisconnect = bucket.requestsDisconnect.sum();
+            Arrays.fill(bucketLatencyCounts, 0);
+            bucket.latency.addTo(bucketLatencyCounts);
+            if (bucket.version != version) {
+                // Бакет переиспользован для нового периода во время чтения
+                continue;
+            }
+            if (firstBucketId < 0) {
+                firstBucketId = bucketId;
+            }
+            requestsBeginCount += bucketBeginCount;
+            requestsEndCount += bucketEndCount;
+            requestsLatencySumNanos += bucketLatencySumNanos;
+            requestsError += bucketError;
+            requestsDisconnect += bucketDisconnect;
+            for (int j = 0; j < latencyCounts.length; j++) {
+                latencyCounts[j] += bucketLatencyCounts[j];
             }
-            return result;
         }
+        long statPeriod = firstBucketId < 0 ? periodMillis : currentTimeMillis - firstBucketId * periodMillis;
+        return new Stat(
+                requestsBeginCount,
+                requestsEndCount,
+                requestsLatencySumNanos,
+                requestsError,
+                requestsDisconnect,
+                latencyCounts,
+                statPeriod
+        );
     }
 
     public void reset() {
         long periodId = clock.millis() / periodMillis;
         synchronized (window) {
-            for (int i = 0; i < window.length; i++) {
-                window[i] = new Bucket(periodId, periodMillis);
+            for (Bucket bucket : window) {
+                bucket.reset(periodId);
             }
             currentBucket = window[(int) (idx % size)];
         }
@@ -92,86 +146,152 @@ public class StatsSlidingWindow {
     }
 
     public static class Bucket {
-        private final long id;
-
-        private final AtomicLong requestsBeginCount = new AtomicLong(0);
-        private final AtomicLong requestsEndCount = new AtomicLong(0);
-        private final AtomicLong requestsLatencySumNanos = new AtomicLong(0);
-        private final AtomicLong requestsError = new AtomicLong(0);
-        private final AtomicLong requestsDisconnect = new AtomicLong(0);
-        private final long periodMills;
+        private volatile long id;
+        /**
+         * Odd while bucket reset. Changed only under window lock
+         */
+        private volatile long version;
 
+        private final LongAdder requestsBeginCount = new LongAdder();
+        private final LongAdder requestsEndCount = new LongAdder();
+        private final LongAdder requestsLatencySumNanos = new LongAdder();
+        private final LongAdder requestsError = new LongAdder();
+        private final LongAdder requestsDisconnect = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
 
-        private Bucket(long id, long periodMillis) {
-            this.id = id;
-            this.periodMills = periodMillis;
+        private Bucket() {
         }
 
-        private Bucket addOther(Bucket other) {
-            requestsBeginCount.addAndGet(other.requestsBeginCount.get());
-            requestsDisconnect.addAndGet(other.requestsDisconnect.get());
-            requestsLatencySumNanos.addAndGet(other.requestsLatencySumNanos.get());
-            requestsError.addAndGet(other.requestsError.get());
-            requestsEndCount.addAndGet(other.requestsEndCount.get());
-            return this;
+        private void reset(long id) {
+            version++;
+            requestsBeginCount.reset();
+            requestsEndCount.reset();
+            requestsLatencySumNanos.reset();
+            requestsError.reset();
+            requestsDisconnect.reset();
+            latency.reset();
+            this.id = id;
+            version++;
         }
 
         public void requestBegin() {
-            requestsBeginCount.incrementAndGet();
+            requestsBeginCount.increment();
         }
 
         public void requestEnd(ThriftRequestStatus requestStatus, long latencyNanos) {
-            requestsEndCount.incrementAndGet();
-            requestsLatencySumNanos.addAndGet(latencyNanos);
+            requestsEndCount.increment();
+            requestsLatencySumNanos.add(latencyNanos);
+            latency.record(latencyNanos);
             switch (requestStatus) {
                 case SUCCESS:
                 case APP_ERROR:// Ошибки уровня приложения не считаются ошибками
                     break;
                 case INTERNAL_ERROR:
                 case UNEXPECTED_ERROR:
-                    requestsError.incrementAndGet();
+                    requestsError.increment();
                     break;
                 case CONNECTION_ERROR:
-                    requestsError.incrementAndGet();
-                    requestsDisconnect.incrementAndGet();
+                    requestsError.increment();
+                    requestsDisconnect.increment();
                     break;
                 default:
                     throw new IllegalArgumentException("Status " + requestStatus + " not supported");
             }
         }
 
+        @Override
+        public String toString() {
+            return "Bucket{" +
+                    "id=" + id +
+                    ", requestsBeginCount=" + requestsBeginCount +
+                    ", requestsEndsCount=" + requestsEndCount +
+                    ", requestsLatencySumNanos=" + requestsLatencySumNanos +
+                    ", requestsError=" + requestsError +
+                    ", requestsDisconnect=" + requestsDisconnect +
+                    '}';
+        }
+    }
+
+    /**
+     * Sum of last buckets
+     */
+    public static class Stat {
+        private final long requestsBeginCount;
+        private final long requestsEndCount;
+        private final long requestsLatencySumNanos;
+        private final long requestsError;
+        private final long requestsDisconnect;
+        private final long[] latencyCounts;
+        private final long periodMills;
+
+        private Stat(
+                long requestsBeginCount,
+                long requestsEndCount,
+                long requestsLatencySumNanos,
+                long requestsError,
+                long requestsDisconnect,
+                long[] latencyCounts,
+                long periodMills
+        ) {
+            this.requestsBeginCount = requestsBeginCount;
+            this.requestsEndCount = requestsEndCount;
+            this.requestsLatencySumNanos = requestsLatencySumNanos;
+            this.requestsError = requestsError;
+            this.requestsDisconnect = requestsDisconnect;
+            this.latencyCounts = latencyCounts;
+            this.periodMills = periodMills;
+        }
+
         public double getErrorRatio(long minRequestCount){
-            return requestsError.get() / (double)  getRequestEndCount(minRequestCount);
+            return requestsError / (double)  getRequestEndCount(minRequestCount);
         }
 
         public double getDisconnectRatio(long minRequestCount){
-            return requestsDisconnect.get() / (double) getRequestEndCount(minRequestCount);
+            return requestsDisconnect / (double) getRequestEndCount(minRequestCount);
         }
 
         public double getRequestLatencyNanos(long minRequestCount){
-            return requestsLatencySumNanos.get() / (double) getRequestEndCount(minRequestCount);
+            return requestsLatencySumNanos / (double) getRequestEndCount(minRequestCount);
+        }
+
+        /**
+         * @param quantile 0.0 - 1.0, for example 0.99 for p99
+         * @return latency with relative error below 12.5%, 0 if no requests finished
+         */
+        public long getLatencyPercentileNanos(double quantile) {
+            return LatencyHistogram.getValueAtQuantile(latencyCounts, quantile);
         }
 
         public double getLoad(long connectionCount, long waitersCount){
+            return getLoad(connectionCount, waitersCount, 0);
+        }
+
+        /**
+         * @param latencyPercentile percentile of latency used as request time, 0 - mean latency
+         */
+        public double getLoad(long connectionCount, long waitersCount, double latencyPercentile){
             double timeProducedNanos = connectionCount * TimeUnit.MILLISECONDS.toNanos(periodMills);
-            double requestLatencyNanos = getRequestLatencyNanos(1);
-            double timeConsumedNanos = (requestLatencyNanos + ThriftBalancerConfig.LATENCY_OFFSET_NANOS) * (requestsBeginCount.get() + waitersCount);
+            double requestLatencyNanos = latencyPercentile > 0
+                    ? getLatencyPercentileNanos(latencyPercentile)
+                    : getRequestLatencyNanos(1);
+            double timeConsumedNanos = (requestLatencyNanos + ThriftBalancerConfig.LATENCY_OFFSET_NANOS) * (requestsBeginCount + waitersCount);
             return timeConsumedNanos / timeProducedNanos;
         }
 
         public long getRequestEndCount(long minRequestCount){
-            return Math.max(requestsEndCount.get(), minRequestCount);
+            return Math.max(requestsEndCount, minRequestCount);
         }
 
         @Override
         public String toString() {
-            return "Bucket{" +
-                    "id=" + id +
-                    ", requestsBeginCount=" + requestsBeginCount +
+            return "Stat{" +
+                    "requestsBeginCount=" + requestsBeginCount +
                     ", requestsEndsCount=" + requestsEndCount +
                     ", requestsLatencySumNanos=" + requestsLatencySumNanos +
                     ", requestsError=" + requestsError +
                     ", requestsDisconnect=" + requestsDisconnect +
+                    ", latencyP50Nanos=" + getLatencyPercentileNanos(0.5) +
+                    ", latencyP99Nanos=" + getLatencyPercentileNanos(0.99) +
                     ", periodMills=" + periodMills +
                     '}';
         }
@@ -186,4 +306,3 @@ public class StatsSlidingWindow {
                 '}';
     }
 }
-
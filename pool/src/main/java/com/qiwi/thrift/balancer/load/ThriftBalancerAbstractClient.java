@@ -5,6 +5,7 @@ import com.qiwi.thrift.pool.ThriftClientConfig;
 
 public class ThriftBalancerAbstractClient<I, C extends ThriftClient<I>> implements ThriftClient<C> {
     protected final ThriftLoadBalancer<I, C> balancer;
+    protected final HedgingPolicy hedging = new HedgingPolicy();
 
     private volatile ThriftBalancerConfig config;
     private volatile long maxWaitMillis;
@@ -33,6 +34,7 @@ public class ThriftBalancerAbstractClient<I, C extends ThriftClient<I>> implemen
 
     public void reconfigureAsBalancer(ThriftBalancerConfig newConfig){
         balancer.reconfigure(newConfig);
+        hedging.reconfigure(newConfig);
         this.config = newConfig;
         maxWaitMillis = config.getMaxWaitForConnection().toMillis();
     }
@@ -45,6 +47,13 @@ public class ThriftBalancerAbstractClient<I, C extends ThriftClient<I>> implemen
         return maxWaitMillis;
     }
 
+    /**
+     * @return number of hedged requests sent
+     */
+    public long getHedgedRequestsCount() {
+        return hedging.getHedgedCount();
+    }
+
     @Override
     public int getUsedConnections() {
         return balancer.getUsedConnections();
@@ -23,15 +23,39 @@ public class ThriftBalancerAsyncClient<I, T extends TAsyncClient> extends Thrift
             Class<R> resultType,
             ThriftAsyncFunction<I, ?> function
     ) {
-        NodeStatus<I, ThriftPoolAsyncClient<I, T>> status = balancer.get()
-                .orElseThrow(() -> new NoSuchElementException(
-                        "No nodes available. Failed nodes: "
-                        + balancer.getFailedNodes().collect(Collectors.toList()))
-                );
+        NodeStatus<I, ThriftPoolAsyncClient<I, T>> status = getNode();
         return status.getClient().execAsync(
                 resultType,
                 function,
                 status.isWorking()? getMaxWaitMillis(): 0
         );
     }
+
+    /**
+     * Hedged variant of execAsync, only for idempotent functions.
+     * If response not received in hedge delay, request sent to other node, first successful response returned.
+     * See ThriftBalancerConfig hedge_delay_ms and hedge_budget_ratio.
+     */
+    public <R> CompletableFuture<R> execHedged(
+            Class<R> resultType,
+            ThriftAsyncFunction<I, ?> function
+    ) {
+        return hedging.execute(
+                getNode(),
+                balancer::get,
+                (node, hedged) -> node.getClient().execAsync(
+                        resultType,
+                        function,
+                        !hedged && node.isWorking()? getMaxWaitMillis(): 0
+                )
+        );
+    }
+
+    private NodeStatus<I, ThriftPoolAsyncClient<I, T>> getNode() {
+        return balancer.get()
+                .orElseThrow(() -> new NoSuchElementException(
+                        "No nodes available. Failed nodes: "
+                        + balancer.getFailedNodes().collect(Collectors.toList()))
+                );
+    }
 }
@@ -9,12 +9,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
     private static final Logger log = LoggerFactory.getLogger(ThriftBalancerConfig.class);
@@ -69,6 +72,12 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
     private final double nodeLoadPredictFactor;
     private final double nodeWeightFilterFactor;
 
+    private final Set<String> hedgedMethods;
+    private final Duration hedgeDelay;
+    private final double hedgeBudgetRatio;
+    private final double latencyPercentile;
+    private final NodeBalancerType nodeBalancer;
+
     protected ThriftBalancerConfig(
             UntypedBuilder<?> builder
     ) {
@@ -93,6 +102,14 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
         this.nodeLoadFilterFactor = builder.getNodeLoadFilterFactor();
         this.nodeLoadPredictFactor = builder.getNodeLoadPredictFactor();
         this.nodeWeightFilterFactor = builder.getNodeWeightFilterFactor();
+        this.hedgedMethods = builder.getHedgedMethods();
+        this.hedgeDelay = builder.getHedgeDelay();
+        this.hedgeBudgetRatio = builder.getHedgeBudgetRatio();
+        this.latencyPercentile = builder.getLatencyPercentile();
+        this.nodeBalancer = builder.getNodeBalancer();
+        if (latencyPercentile < 0 || latencyPercentile > 1) {
+            throw new IllegalArgumentException("latencyPercentile must be in range 0 - 1, but " + latencyPercentile);
+        }
     }
 
     public Supplier<Set<ThriftClientAddress>> getServersSupplier() {
@@ -184,6 +201,26 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
         return nodeWeightFilterFactor;
     }
 
+    public Set<String> getHedgedMethods() {
+        return hedgedMethods;
+    }
+
+    public Duration getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public double getHedgeBudgetRatio() {
+        return hedgeBudgetRatio;
+    }
+
+    public double getLatencyPercentile() {
+        return latencyPercentile;
+    }
+
+    public NodeBalancerType getNodeBalancer() {
+        return nodeBalancer;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -252,6 +289,21 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
         if (!preferredDc.equals(that.preferredDc)) {
             return false;
         }
+        if (Double.compare(that.hedgeBudgetRatio, hedgeBudgetRatio) != 0) {
+            return false;
+        }
+        if (Double.compare(that.latencyPercentile, latencyPercentile) != 0) {
+            return false;
+        }
+        if (!hedgedMethods.equals(that.hedgedMethods)) {
+            return false;
+        }
+        if (!hedgeDelay.equals(that.hedgeDelay)) {
+            return false;
+        }
+        if (nodeBalancer != that.nodeBalancer) {
+            return false;
+        }
         return failureHandling == that.failureHandling;
     }
 
@@ -276,6 +328,7 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
         result = 31 * result + nodeCloseTime.hashCode();
         result = 31 * result + preferredDc.hashCode();
         result = 31 * result + failureHandling.hashCode();
+        result = 31 * result + nodeBalancer.hashCode();
         temp = Double.doubleToLongBits(dcLoadFilterFactor);
         result = 31 * result + (int) (temp ^ (temp >>> 32));
         temp = Double.doubleToLongBits(dcLoadPredictFactor);
@@ -288,6 +341,12 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
         result = 31 * result + (int) (temp ^ (temp >>> 32));
         temp = Double.doubleToLongBits(nodeWeightFilterFactor);
         result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + hedgedMethods.hashCode();
+        result = 31 * result + hedgeDelay.hashCode();
+        temp = Double.doubleToLongBits(hedgeBudgetRatio);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(latencyPercentile);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
         return result;
     }
 
@@ -351,6 +410,12 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
         private volatile double nodeLoadPredictFactor = 0.96;
         private volatile double nodeWeightFilterFactor = 0.90;
 
+        private volatile Set<String> hedgedMethods = Collections.emptySet();
+        private volatile Duration hedgeDelay = Duration.ZERO;
+        private volatile double hedgeBudgetRatio = 0.05;
+        private volatile double latencyPercentile = 0;
+        private volatile NodeBalancerType nodeBalancer = NodeBalancerType.LOAD;
+
         /**
          private final double minNodesInRingRatio;
          private final int minAliveNodes;
@@ -686,6 +751,100 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
             return getThis();
         }
 
+        public Set<String> getHedgedMethods() {
+            String val = source.getString("hedged_methods", null);
+            if (val == null) {
+                return hedgedMethods;
+            }
+            return Collections.unmodifiableSet(Arrays.stream(val.split(","))
+                    .map(String::trim)
+                    .filter(name -> !name.isEmpty())
+                    .collect(Collectors.toSet()));
+        }
+
+        /**
+         * Name: hedged_methods
+         * @param hedgedMethods - names of idempotent methods of sync client. If response not received
+         *                      in hedge delay, request duplicated to other node and first successful response used.
+         *                      Async client use ThriftBalancerAsyncClient.execHedged instead.
+         *                      Empty by default - hedging disabled.
+         * @return
+         */
+        public B setHedgedMethods(Collection<String> hedgedMethods) {
+            this.hedgedMethods = Collections.unmodifiableSet(new HashSet<>(hedgedMethods));
+            return getThis();
+        }
+
+        public Duration getHedgeDelay() {
+            return source.getDuration("hedge_delay_ms", hedgeDelay);
+        }
+
+        /**
+         * Name: hedge_delay_ms
+         * @param hedgeDelay - delay before hedged request. By default 0 - p95 of observed service latency used,
+         *                   request not hedged until enough latency measured.
+         * @return
+         */
+        public B setHedgeDelay(Duration hedgeDelay) {
+            this.hedgeDelay = Objects.requireNonNull(hedgeDelay);
+            return getThis();
+        }
+
+        public double getHedgeBudgetRatio() {
+            return source.getDouble("hedge_budget_ratio", hedgeBudgetRatio);
+        }
+
+        /**
+         * Name: hedge_budget_ratio
+         * @param hedgeBudgetRatio - max ratio of hedged requests to requests of hedged methods.
+         *                         Limit extra load on outage. By default: 0.05
+         * @return
+         */
+        public B setHedgeBudgetRatio(double hedgeBudgetRatio) {
+            this.hedgeBudgetRatio = hedgeBudgetRatio;
+            return getThis();
+        }
+
+        public double getLatencyPercentile() {
+            return source.getDouble("latency_percentile", latencyPercentile);
+        }
+
+        /**
+         * Name: latency_percentile
+         * @param latencyPercentile - percentile of node latency used as request time in node load, 0.99 for p99.
+         *                          Load used for node weights and for circuit breaker by max_node_load_gap,
+         *                          so node with good mean latency but long tail (GC pauses, slow disk) get less requests.
+         *                          By default: 0 - mean latency
+         * @return
+         */
+        public B setLatencyPercentile(double latencyPercentile) {
+            this.latencyPercentile = latencyPercentile;
+            return getThis();
+        }
+
+        public NodeBalancerType getNodeBalancer() {
+            String val = source.getString("node_balancer", nodeBalancer.name());
+            try {
+                return NodeBalancerType.valueOf(val);
+            } catch (IllegalArgumentException ex) {
+                log.error("Unable to parse parameter {} with value {}", source.getFullPath("node_balancer"), val, ex);
+                return nodeBalancer;
+            }
+        }
+
+        /**
+         * Name: node_balancer
+         * @param nodeBalancer - selection of node inside dc
+         *                     LOAD - random node, weighted by node load, weights updated every ringReBalancePeriod
+         *                     LEAST_REQUESTS - node with fewer requests in flight from two random nodes
+         *                     By default: LOAD
+         * @return
+         */
+        public B setNodeBalancer(NodeBalancerType nodeBalancer) {
+            this.nodeBalancer = Objects.requireNonNull(nodeBalancer);
+            return getThis();
+        }
+
         @Override
         public Predicate<TException> getNeedCircuitBreakOnException() {
             return super.getNeedCircuitBreakOnException();
@@ -727,6 +886,11 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
             this.nodeLoadFilterFactor = config.getNodeLoadFilterFactor();
             this.nodeLoadPredictFactor = config.getNodeLoadPredictFactor();
             this.nodeWeightFilterFactor = config.getNodeWeightFilterFactor();
+            this.hedgedMethods = config.getHedgedMethods();
+            this.hedgeDelay = config.getHedgeDelay();
+            this.hedgeBudgetRatio = config.getHedgeBudgetRatio();
+            this.latencyPercentile = config.getLatencyPercentile();
+            this.nodeBalancer = config.getNodeBalancer();
             return getThis();
         }
     }
@@ -748,4 +912,17 @@ public class ThriftBalancerConfig extends ThriftAbstractClientConfig {
          */
         TRY_CONTINUE,
     }
+
+    public enum NodeBalancerType {
+        /**
+         * Случайная нода с весом обратно пропорциональным нагрузке.
+         * Веса пересчитываются раз в ringReBalancePeriod.
+         */
+        LOAD,
+        /**
+         * Power of two choices: из двух случайных нод выбирается нода с меньшим числом запросов в работе.
+         * Быстро реагирует на очередь на ноде. Нагрузка нод по-прежнему считается для circuit breaker.
+         */
+        LEAST_REQUESTS,
+    }
 }
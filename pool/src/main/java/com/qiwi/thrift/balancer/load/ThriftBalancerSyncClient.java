@@ -1,6 +1,8 @@
 package com.qiwi.thrift.balancer.load;
 
 import com.qiwi.thrift.pool.ThriftSyncClient;
+import com.qiwi.thrift.reflect.SyncClientDispatcher;
+import com.qiwi.thrift.reflect.SyncMethodInfo;
 import org.apache.thrift.TServiceClient;
 import org.apache.thrift.transport.TTransportException;
 
@@ -18,38 +20,30 @@ import java.util.stream.Collectors;
 public class ThriftBalancerSyncClient<I, T extends TServiceClient>
         extends ThriftBalancerAbstractClient<I, ThriftSyncClient<I, T>>
         implements InvocationHandler {
+    private final SyncClientDispatcher dispatcher;
 
     ThriftBalancerSyncClient(
             ThriftLoadBalancer<I, ThriftSyncClient<I, T>> balancer,
-            ThriftBalancerConfig config
+            ThriftBalancerConfig config,
+            SyncClientDispatcher dispatcher
     ) {
         super(balancer, config);
+        this.dispatcher = dispatcher;
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        switch (method.getName()) {
-            case "toString":
-                if (args == null || args.length == 0) {
-                    return "BalancerFor:" + balancer.getServiceName();
-                }
-                break;
-            case "close":
-                if (args == null || args.length == 0) {
-                    close();
-                    return null;
-                }
-                break;
-            case "hashCode":
-                if (args == null || args.length == 0) {
-                    return hashCode();
-                }
-                break;
-            case "equals":
-                if (args.length == 1) {
-                    return proxy == args[0];
-                }
-                break;
+        SyncMethodInfo methodInfo = dispatcher.get(method);
+        switch (methodInfo.getKind()) {
+            case TO_STRING:
+                return "BalancerFor:" + balancer.getServiceName();
+            case CLOSE:
+                close();
+                return null;
+            case HASH_CODE:
+                return hashCode();
+            case EQUALS:
+                return proxy == args[0];
         }
         Optional<NodeStatus<I, ThriftSyncClient<I, T>>> statusOpt = balancer.get();
         if (!statusOpt.isPresent()) {
@@ -59,12 +53,39 @@ public class ThriftBalancerSyncClient<I, T extends TServiceClient>
             );
         }
         NodeStatus<I, ThriftSyncClient<I, T>> status = statusOpt.get();
+        if (hedging.isHedged(methodInfo.getName())) {
+            return invokeHedged(methodInfo, args, status);
+        }
 
         return status.getClient().invoke(
-                method,
+                methodInfo,
                 args,
                 status.isWorking()? getMaxWaitMillis(): 0
         );
     }
 
+    /**
+     * Запросы выполняются в потоках HedgingPolicy, вызывающий поток ждёт первый успешный ответ
+     */
+    private Object invokeHedged(
+            SyncMethodInfo methodInfo,
+            Object[] args,
+            NodeStatus<I, ThriftSyncClient<I, T>> status
+    ) throws Throwable {
+        try {
+            return hedging.executeBlocking(
+                    status,
+                    balancer::get,
+                    (node, hedged) -> node.getClient().invoke(
+                            methodInfo,
+                            args,
+                            !hedged && node.isWorking()? getMaxWaitMillis(): 0
+                    )
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TTransportException("Interrupted while waiting for " + methodInfo.getName(), e);
+        }
+    }
+
 }
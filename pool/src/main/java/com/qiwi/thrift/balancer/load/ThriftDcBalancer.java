@@ -1,6 +1,7 @@
 package com.qiwi.thrift.balancer.load;
 
 import com.qiwi.thrift.balancer.Balancer;
+import com.qiwi.thrift.balancer.LeastRequestsBalancer;
 import com.qiwi.thrift.balancer.WeightedBalancer;
 import com.qiwi.thrift.pool.ThriftClient;
 import org.slf4j.Logger;
@@ -175,7 +176,7 @@ public class ThriftDcBalancer<I, C extends ThriftClient<I>> implements Balancer<
                         node -> 1
                 );
             case WORKING:
-                return new LoadBasedBalancer<>(
+                LoadBasedBalancer<NodeStatus<I, C>> loadBalancer = new LoadBasedBalancer<>(
                         items,
                         NodeStatus::getLoadAccumulator,
                         NodeStatus::getLoad,
@@ -183,6 +184,11 @@ public class ThriftDcBalancer<I, C extends ThriftClient<I>> implements Balancer<
                         config.getNodeLoadPredictFactor(),
                         config.getNodeWeightFilterFactor()
                 );
+                if (config.getNodeBalancer() == ThriftBalancerConfig.NodeBalancerType.LEAST_REQUESTS) {
+                    // Нагрузка нод обновляется при reBalance, она нужна circuit breaker-у и балансировке между дц
+                    return new LeastRequestsBalancer<>(items, NodeStatus::getRequestsInFlight, loadBalancer);
+                }
+                return loadBalancer;
             default:
                 throw new IllegalArgumentException("Unsupported balancer type " + type);
         }
@@ -119,7 +119,11 @@ public class ThriftLoadBalancerFactory {
                 config,
                 clientFactory
         );
-        ThriftBalancerSyncClient<I, T> client = new ThriftBalancerSyncClient<>(balancer, config);
+        ThriftBalancerSyncClient<I, T> client = new ThriftBalancerSyncClient<>(
+                balancer,
+                config,
+                reflectConfigurator.createSyncDispatcher(clientInterfaceClazz)
+        );
         balancer.scheduleConfigReload(configBuilder, client::reconfigureAsBalancer);
         return client;
     }
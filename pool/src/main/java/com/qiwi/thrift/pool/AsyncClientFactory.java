@@ -1,11 +1,13 @@
 package com.qiwi.thrift.pool;
 
 import com.qiwi.thrift.metrics.ThriftCallType;
+import com.qiwi.thrift.pool.imp.ThriftAsyncSelector;
+import com.qiwi.thrift.pool.imp.ThriftObjectPool;
+import com.qiwi.thrift.pool.imp.ThriftPipelinedClientManager;
 import com.qiwi.thrift.reflect.AsyncClientClassInfo;
 import com.qiwi.thrift.reflect.ReflectConfigurator;
 import com.qiwi.thrift.utils.ThriftClientAddress;
 import com.qiwi.thrift.utils.ThriftUtils;
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.thrift.async.TAsyncClient;
 import org.apache.thrift.async.TAsyncClientFactory;
 import org.apache.thrift.async.TAsyncClientManager;
@@ -30,10 +32,23 @@ public class AsyncClientFactory {
     private static final Logger log = LoggerFactory.getLogger(AsyncClientFactory.class);
 
     private final ReflectConfigurator reflectConfigurator;
+    private final ThriftSelectorGroup selectorGroup;
 
     @Inject
     public AsyncClientFactory(ReflectConfigurator reflectConfigurator) {
+        this(reflectConfigurator, ThriftSelectorGroup.getDefault());
+    }
+
+    /**
+     * @param selectorGroup selector threads for all pools created by factory
+     */
+    public AsyncClientFactory(ReflectConfigurator reflectConfigurator, ThriftSelectorGroup selectorGroup) {
         this.reflectConfigurator = reflectConfigurator;
+        this.selectorGroup = selectorGroup;
+    }
+
+    public ThriftSelectorGroup getSelectorGroup() {
+        return selectorGroup;
     }
 
     public <I, T extends TAsyncClient> ThriftAsyncClient<I> create(
@@ -82,11 +97,17 @@ public class AsyncClientFactory {
             BiFunction<TAsyncClientManager, TProtocolFactory, TAsyncClientFactory<T>> clientCreator,
             Optional<ThriftAsyncVerifier<I>> validator
     ){
-        TAsyncClientManager manager = null;
+        Optional<ThriftPipelinedClientManager> pipelinedManager = Optional.empty();
         try {
-            manager = new TAsyncClientManager();
-
             String thriftServiceName = ThriftUtils.getThriftServiceName(clientInterfaceClazz, clientConfig.getSubServiceName());
+            ThriftAsyncSelector selector = selectorGroup.next();
+            TAsyncClientManager manager;
+            if (clientConfig.getPipelinedConnections() > 0) {
+                pipelinedManager = Optional.of(selector.createPipelinedManager(clientConfig.getPipelinedConnections()));
+                manager = pipelinedManager.get().getClientManager();
+            } else {
+                manager = selector.getManager();
+            }
 
             ThriftAsyncVerifier<I> validatorImp = validator.orElse(client -> true);
             ThriftPoolAsyncClient.AsyncPoolObjectFactory<I, T>  clientFactory =
@@ -94,19 +115,19 @@ public class AsyncClientFactory {
                             clientConfig.getAddressSupplier(),
                             thriftServiceName,
                             manager,
+                            pipelinedManager,
                             clientCreator,
                             validatorImp,
-                            clientConfig
+                            clientConfig,
+                            selector::recordCallbackTime
             );
             ThriftClientAddress clientAddress = clientConfig.getAddressSupplier().get();
-            GenericObjectPool<ThriftClientAsyncContainer<I>> pool = new GenericObjectPool<>(
+            ThriftObjectPool<ThriftClientAsyncContainer<I>> pool = clientConfig.createPool(
                     clientFactory,
-                    clientConfig.createPoolConfig(
-                            thriftServiceName,
-                            clientAddress,
-                            clientConfig.isBalancerClient()? ThriftCallType.ASYNC_BALANCER: ThriftCallType.ASYNC_CLIENT
-                    ));
-            clientFactory.setPoolReference(pool);
+                    thriftServiceName,
+                    clientAddress,
+                    clientConfig.isBalancerClient()? ThriftCallType.ASYNC_BALANCER: ThriftCallType.ASYNC_CLIENT
+            );
             log.info("Success creating pool size: {}, address {}, class {}",
                     clientConfig.getMaxConnections(),
                     clientAddress,
@@ -120,12 +141,10 @@ public class AsyncClientFactory {
                     clientConfig,
                     validatorImp,
                     clientFactory,
-                    manager
+                    pipelinedManager
             );
         } catch (IOException | RuntimeException e) {
-            if (manager != null) {
-                manager.stop();
-            }
+            pipelinedManager.ifPresent(ThriftPipelinedClientManager::stop);
             throw new RuntimeException("Unable to create pool", e);
         }
     }
@@ -1,11 +1,11 @@
 package com.qiwi.thrift.pool;
 
 import com.qiwi.thrift.metrics.ThriftCallType;
+import com.qiwi.thrift.pool.imp.ThriftObjectPool;
 import com.qiwi.thrift.reflect.ReflectConfigurator;
 import com.qiwi.thrift.reflect.SyncClientClassInfo;
 import com.qiwi.thrift.utils.ThriftClientAddress;
 import com.qiwi.thrift.utils.ThriftUtils;
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.thrift.TServiceClient;
 import org.apache.thrift.TServiceClientFactory;
 import org.slf4j.Logger;
@@ -111,13 +111,12 @@ public class SyncClientFactory {
             );
 
             ThriftClientAddress clientAddress = clientConfig.getAddressSupplier().get();
-            GenericObjectPool<ThriftClientSyncContainer<I>> pool = new GenericObjectPool<>(
+            ThriftObjectPool<ThriftClientSyncContainer<I>> pool = clientConfig.createPool(
                     clientFactory,
-                    clientConfig.createPoolConfig(
-                            thriftServiceName,
-                            clientAddress,
-                            clientConfig.isBalancerClient()? ThriftCallType.SYNC_BALANCER: ThriftCallType.SYNC_CLIENT
-                    ));
+                    thriftServiceName,
+                    clientAddress,
+                    clientConfig.isBalancerClient()? ThriftCallType.SYNC_BALANCER: ThriftCallType.SYNC_CLIENT
+            );
             clientFactory.setPoolReference(pool);
 
             ThriftSyncClient<I, T> syncClient = new ThriftSyncClient<>(
@@ -127,7 +126,8 @@ public class SyncClientFactory {
                     clientConfig.getAddressSupplier(),
                     clientConfig,
                     validatorImp,
-                    clientFactory
+                    clientFactory,
+                    reflectConfigurator.createSyncDispatcher(clientInterfaceClazz)
             );
             log.info("Success creating pool size: {}, address {}, class {}",
                     clientConfig.getMaxConnections(),
@@ -11,6 +11,8 @@ import org.slf4j.LoggerFactory;
 import java.time.Duration;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 
 public abstract class ThriftAbstractClientConfig {
@@ -31,6 +33,10 @@ public abstract class ThriftAbstractClientConfig {
     private final int socketSendBufferSize;
     private final ThriftRequestReporter requestReporter;
     private final Optional<String> subServiceName;
+    private final ThriftConnectionPoolType connectionPoolType;
+    private final int pipelinedConnections;
+    private final Optional<Executor> completionExecutor;
+    private final int asyncWaitQueueSize;
 
     protected ThriftAbstractClientConfig(
             Builder<?> builder
@@ -51,6 +57,10 @@ public abstract class ThriftAbstractClientConfig {
         this.socketSendBufferSize = builder.getSocketSendBufferSize();
         this.requestReporter = builder.getRequestReporter();
         this.subServiceName = builder.getSubServiceName();
+        this.connectionPoolType = builder.getConnectionPoolType();
+        this.pipelinedConnections = builder.getPipelinedConnections();
+        this.completionExecutor = builder.getCompletionExecutor();
+        this.asyncWaitQueueSize = builder.getAsyncWaitQueueSize();
     }
 
     public Duration getMaxWaitForConnection() {
@@ -121,6 +131,26 @@ public abstract class ThriftAbstractClientConfig {
         return subServiceName;
     }
 
+    public ThriftConnectionPoolType getConnectionPoolType() {
+        return connectionPoolType;
+    }
+
+    public int getPipelinedConnections() {
+        return pipelinedConnections;
+    }
+
+    public boolean isPipelined() {
+        return pipelinedConnections > 0;
+    }
+
+    public Optional<Executor> getCompletionExecutor() {
+        return completionExecutor;
+    }
+
+    public int getAsyncWaitQueueSize() {
+        return asyncWaitQueueSize;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -174,6 +204,18 @@ public abstract class ThriftAbstractClientConfig {
         if (!traceMode.equals(that.traceMode)) {
             return false;
         }
+        if (connectionPoolType != that.connectionPoolType) {
+            return false;
+        }
+        if (pipelinedConnections != that.pipelinedConnections) {
+            return false;
+        }
+        if (!completionExecutor.equals(that.completionExecutor)) {
+            return false;
+        }
+        if (asyncWaitQueueSize != that.asyncWaitQueueSize) {
+            return false;
+        }
         return requestReporter.equals(that.requestReporter);
     }
 
@@ -194,6 +236,10 @@ public abstract class ThriftAbstractClientConfig {
         result = 31 * result + socketReceiveBufferSize;
         result = 31 * result + socketSendBufferSize;
         result = 31 * result + requestReporter.hashCode();
+        result = 31 * result + connectionPoolType.hashCode();
+        result = 31 * result + pipelinedConnections;
+        result = 31 * result + completionExecutor.hashCode();
+        result = 31 * result + asyncWaitQueueSize;
         return result;
     }
 
@@ -254,6 +300,20 @@ public abstract class ThriftAbstractClientConfig {
 
         private ThriftRequestReporter requestReporter = ThriftLogContext.getDefaultClientReporter();
         private Optional<String> subServiceName = Optional.empty();
+        private ThriftConnectionPoolType connectionPoolType = ThriftConnectionPoolType.GENERIC;
+        /**
+         * Число TCP соединений до одного сервера, по которым асинхронные запросы отправляются конвейером.
+         * 0 - конвейер выключен, каждый запрос в полете занимает свое соединение
+         */
+        private int pipelinedConnections = 0;
+        /**
+         * Пул, в котором обрабатываются ответы асинхронного клиента. Пусто - поток селектора
+         */
+        private Optional<Executor> completionExecutor = Optional.empty();
+        /**
+         * Размер очереди асинхронных запросов, ожидающих свободный коннект. 0 - ожидание блокирует вызывающий поток
+         */
+        private int asyncWaitQueueSize = 0;
 
         protected volatile ParameterSource source = ParameterSource.EMPTY;
 
@@ -477,6 +537,85 @@ public abstract class ThriftAbstractClientConfig {
             return getThis();
         }
 
+        public ThriftConnectionPoolType getConnectionPoolType() {
+            return ThriftConnectionPoolType.parse(source, "connection_pool_type", connectionPoolType);
+        }
+
+        /**
+         * Name: connection_pool_type
+         * @param connectionPoolType - GENERIC - fair commons-pool2 pool,
+         *                           STRIPED - lock-free pool, reduce contention with many request threads.
+         *                           Pool type of existing client not changed on reconfiguration.
+         *                           By default: GENERIC
+         */
+        public B setConnectionPoolType(ThriftConnectionPoolType connectionPoolType) {
+            this.connectionPoolType = Objects.requireNonNull(connectionPoolType);
+            return getThis();
+        }
+
+        public int getPipelinedConnections() {
+            return source.getInteger("pipelined_connections", pipelinedConnections);
+        }
+
+        /**
+         * Name: pipelined_connections
+         * @param pipelinedConnections - async client only. Number of sockets per server, every socket
+         *                             carry many requests at once, responses matched by seqid.
+         *                             max_connections became limit of requests in flight.
+         *                             Server must answer in order (TThreadedSelectorServer do it)
+         *                             or echo seqid. Not changed on reconfiguration.
+         *                             By default: 0 - disabled, one request per socket
+         */
+        public B setPipelinedConnections(int pipelinedConnections) {
+            this.pipelinedConnections = pipelinedConnections;
+            return getThis();
+        }
+
+        public Optional<Executor> getCompletionExecutor() {
+            String type = source.getString("completion_executor", ParameterSource.NOT_DEFINED);
+            if (ParameterSource.NOT_DEFINED.equals(type)) {
+                return completionExecutor;
+            } else if ("SELECTOR".equals(type)) {
+                return Optional.empty();
+            } else if ("COMMON_POOL".equals(type)) {
+                return Optional.of(ForkJoinPool.commonPool());
+            } else {
+                log.error("Unable to parse parameter {} with value {}", source.getFullPath("completion_executor"), type);
+                return completionExecutor;
+            }
+        }
+
+        /**
+         * Name: completion_executor, values SELECTOR or COMMON_POOL (ForkJoinPool.commonPool())
+         * @param completionExecutor - async client only. Executor for response deserialization, metrics
+         *                           and CompletableFuture continuations. Selector thread only read frame
+         *                           and hand it off, so slow continuation not delay other connections.
+         *                           If executor reject task, it run in selector thread.
+         *                           By default: empty - everything run in selector thread
+         */
+        public B setCompletionExecutor(Optional<Executor> completionExecutor) {
+            this.completionExecutor = Objects.requireNonNull(completionExecutor);
+            return getThis();
+        }
+
+        public int getAsyncWaitQueueSize() {
+            return source.getInteger("async_wait_queue_size", asyncWaitQueueSize);
+        }
+
+        /**
+         * Name: async_wait_queue_size
+         * @param asyncWaitQueueSize - async client only. Above 0 - execAsync never block: if no free connection,
+         *                           request wait in queue of this size up to max_wait_for_connection_millis
+         *                           and sent when connection returned to pool. If queue is full,
+         *                           returned future failed immediately. Queued requests count as waiters
+         *                           in node load.
+         *                           By default: 0 - execAsync block caller thread while waiting for connection
+         */
+        public B setAsyncWaitQueueSize(int asyncWaitQueueSize) {
+            this.asyncWaitQueueSize = asyncWaitQueueSize;
+            return getThis();
+        }
+
         public B fromParameters(ParameterSource source){
             this.source = source;
             return getThis();
@@ -499,6 +638,10 @@ public abstract class ThriftAbstractClientConfig {
             this.socketSendBufferSize = config.getSocketReceiveBufferSize();
             this.requestReporter = config.getRequestReporter();
             this.subServiceName = config.getSubServiceName();
+            this.connectionPoolType = config.getConnectionPoolType();
+            this.pipelinedConnections = config.getPipelinedConnections();
+            this.completionExecutor = config.getCompletionExecutor();
+            this.asyncWaitQueueSize = config.getAsyncWaitQueueSize();
             return getThis();
         }
 
@@ -16,6 +16,8 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ThriftCallbackFuture<R, C extends TAsyncMethodCall> extends CompletableFuture<R> implements AsyncMethodCallback<C> {
     private static final Logger log = LoggerFactory.getLogger(ThriftCallbackFuture.class);
@@ -24,16 +26,38 @@ public class ThriftCallbackFuture<R, C extends TAsyncMethodCall> extends Complet
 
     private final Class<R> resultClass;
     private final Map<String, String> diagnosticContext;
+    private final Executor completionExecutor;
 
     public ThriftCallbackFuture(
             Class<R> resultClass
+    ) {
+        this(resultClass, null);
+    }
+
+    /**
+     * @param completionExecutor executor for getResult, metrics and future continuations.
+     *                           null - run them in selector thread
+     */
+    public ThriftCallbackFuture(
+            Class<R> resultClass,
+            Executor completionExecutor
     ) {
         this.resultClass = resultClass;
+        this.completionExecutor = completionExecutor;
         diagnosticContext = MDC.getCopyOfContextMap();
     }
 
     @Override
     public void onComplete(C response) {
+        long start = System.nanoTime();
+        try {
+            execute(() -> completeWithContext(response));
+        } finally {
+            selectorCallbackEnd(System.nanoTime() - start);
+        }
+    }
+
+    private void completeWithContext(C response) {
         if (diagnosticContext != null) {
             MDC.setContextMap(diagnosticContext);
         }
@@ -44,6 +68,19 @@ public class ThriftCallbackFuture<R, C extends TAsyncMethodCall> extends Complet
         }
     }
 
+    private void execute(Runnable task) {
+        if (completionExecutor == null) {
+            task.run();
+            return;
+        }
+        try {
+            completionExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("Completion executor rejected task, run it in selector thread", e);
+            task.run();
+        }
+    }
+
     private void complete(C response) {
         String methodName = ThriftMonitoring.getMethodName(response);
         Optional<Throwable> exception = Optional.empty();
@@ -109,6 +146,15 @@ public class ThriftCallbackFuture<R, C extends TAsyncMethodCall> extends Complet
 
     @Override
     public void onError(Exception exception) {
+        long start = System.nanoTime();
+        try {
+            execute(() -> errorWithContext(exception));
+        } finally {
+            selectorCallbackEnd(System.nanoTime() - start);
+        }
+    }
+
+    private void errorWithContext(Exception exception) {
         if (diagnosticContext != null) {
             MDC.setContextMap(diagnosticContext);
         }
@@ -132,6 +178,12 @@ public class ThriftCallbackFuture<R, C extends TAsyncMethodCall> extends Complet
     }
 
 
+    /**
+     * @param nanos time spent by onComplete/onError in calling (selector) thread
+     */
+    protected void selectorCallbackEnd(long nanos) {
+    }
+
     protected void returnToPool() {
     }
 
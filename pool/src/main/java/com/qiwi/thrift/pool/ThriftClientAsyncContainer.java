@@ -18,6 +18,8 @@ import org.slf4j.LoggerFactory;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
 import java.util.function.Predicate;
 
 class ThriftClientAsyncContainer<I>
@@ -26,6 +28,8 @@ class ThriftClientAsyncContainer<I>
 
     private final I client;
     private final ThriftCallType callType;
+    private final Executor completionExecutor;
+    private final LongConsumer selectorCallbackTime;
 
     private volatile boolean connected = false;
     private volatile CompletableFuture<?> currentFuture;
@@ -38,10 +42,30 @@ class ThriftClientAsyncContainer<I>
             String serviceName,
             I client,
             ThriftCallType callType
+    ) {
+        this(transport, pool, circuitBreakerChecker, address, serviceName, client, callType, null, nanos -> {});
+    }
+
+    /**
+     * @param completionExecutor executor for response processing, null - selector thread
+     * @param selectorCallbackTime receive time spent by callback in selector thread
+     */
+    public ThriftClientAsyncContainer(
+            TNonblockingTransport transport,
+            ObjectPool<ThriftClientAsyncContainer<I>> pool,
+            Predicate<TException> circuitBreakerChecker,
+            ThriftClientAddress address,
+            String serviceName,
+            I client,
+            ThriftCallType callType,
+            Executor completionExecutor,
+            LongConsumer selectorCallbackTime
     ) {
         super(transport, pool, circuitBreakerChecker, address, serviceName);
         this.client = Objects.requireNonNull(client, "client");
         this.callType = callType;
+        this.completionExecutor = completionExecutor;
+        this.selectorCallbackTime = selectorCallbackTime;
     }
 
     public boolean validate() {
@@ -113,7 +137,7 @@ class ThriftClientAsyncContainer<I>
                 Class<?> functorClass,
                 ThriftRequestReporter timeReporter
         ) {
-            super(resultClass);
+            super(resultClass, completionExecutor);
             this.functorClass = functorClass;
             this.timeReporter = timeReporter;
             this.callStartNanosecond = System.nanoTime();
@@ -162,6 +186,11 @@ class ThriftClientAsyncContainer<I>
 
         }
 
+        @Override
+        protected void selectorCallbackEnd(long nanos) {
+            selectorCallbackTime.accept(nanos);
+        }
+
         @Override
         protected void returnToPool() {
             close();
@@ -3,8 +3,10 @@ package com.qiwi.thrift.pool;
 import com.qiwi.thrift.metrics.ThriftCallType;
 import com.qiwi.thrift.metrics.ThriftMonitoring;
 import com.qiwi.thrift.pool.imp.IdleTimeEvictionPolicy;
+import com.qiwi.thrift.pool.imp.ThriftObjectPool;
 import com.qiwi.thrift.utils.ThriftClientAddress;
 import com.qiwi.thrift.utils.ThriftRuntimeException;
+import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -96,6 +98,18 @@ public class ThriftClientConfig extends ThriftAbstractClientConfig {
     }
 
 
+    public <C> ThriftObjectPool<C> createPool(
+            PooledObjectFactory<C> factory,
+            String thriftServiceName,
+            ThriftClientAddress clientAddress,
+            ThriftCallType callType
+    ) {
+        return getConnectionPoolType().createPool(
+                factory,
+                createPoolConfig(thriftServiceName, clientAddress, callType)
+        );
+    }
+
     public GenericObjectPoolConfig createPoolConfig(
             String thriftServiceName,
             ThriftClientAddress clientAddress,
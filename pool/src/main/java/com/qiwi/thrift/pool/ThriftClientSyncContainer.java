@@ -2,20 +2,18 @@ package com.qiwi.thrift.pool;
 
 import com.qiwi.thrift.metrics.ThriftCallType;
 import com.qiwi.thrift.metrics.ThriftMonitoring;
+import com.qiwi.thrift.reflect.SyncMethodInfo;
 import com.qiwi.thrift.tracing.ThriftRequestReporter;
-import com.qiwi.thrift.utils.LambdaUtils;
 import com.qiwi.thrift.utils.ThriftClientAddress;
 import com.qiwi.thrift.utils.ThriftRequestStatus;
 import com.qiwi.thrift.utils.ThriftUtils;
-import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.ObjectPool;
 import org.apache.thrift.TException;
 import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
@@ -30,7 +28,7 @@ class ThriftClientSyncContainer<I>
 
     public ThriftClientSyncContainer(
             TTransport transport,
-            GenericObjectPool<ThriftClientSyncContainer<I>> pool,
+            ObjectPool<ThriftClientSyncContainer<I>> pool,
             Predicate<TException> circuitBreakerChecker,
             ThriftClientAddress address,
             String serviceName,
@@ -56,7 +54,7 @@ class ThriftClientSyncContainer<I>
         return log;
     }
 
-    public Object invoke(Method method, Object[] args, ThriftRequestReporter timeReporter) throws TException {
+    public Object invoke(SyncMethodInfo method, Object[] args, ThriftRequestReporter timeReporter) throws TException {
         long startNanos = System.nanoTime();
         ThriftRequestStatus status = ThriftRequestStatus.SUCCESS;
         Optional<Throwable> exception = Optional.empty();
@@ -64,13 +62,7 @@ class ThriftClientSyncContainer<I>
         try {
             response = method.invoke(client, args);
             return response;
-        } catch (IllegalAccessException | IllegalArgumentException ex) {
-            exception = Optional.of(ex);
-            status = ThriftRequestStatus.INTERNAL_ERROR;
-            log.error("Internal error when call {} at {}", method, this, ex);
-            throw new TTransportException("Unable to invoke method " + method, ex);
-        } catch (InvocationTargetException e) {
-            Throwable cause = e.getCause();
+        } catch (Throwable cause) {
             exception = Optional.of(cause);
             if (ThriftUtils.isApplicationLevelException(cause)) {
                 if (cause instanceof TException && !getNeedCircuitBreakOnException().test((TException) cause)) {
@@ -87,15 +79,11 @@ class ThriftClientSyncContainer<I>
             }
             if (cause instanceof TException) {
                 throw (TException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
             } else {
                 throw new TTransportException("Error when call " + method + " at " + this, cause);
             }
-        } catch (Throwable ex) {
-            exception = Optional.of(ex);
-            invalidateConnection();
-            status = ThriftRequestStatus.INTERNAL_ERROR;
-            log.error("Internal error when call {} at {}", method, this, ex);
-            throw LambdaUtils.propagate(ex);
         } finally {
             long duration = System.nanoTime() - startNanos;
             String methodName = method.getName();
@@ -103,6 +91,7 @@ class ThriftClientSyncContainer<I>
                     callType,
                     clientAddress,
                     serviceName,
+                    method.getId(),
                     methodName,
                     duration,
                     status
@@ -0,0 +1,53 @@
+package com.qiwi.thrift.pool;
+
+import com.qiwi.thrift.pool.imp.GenericThriftObjectPool;
+import com.qiwi.thrift.pool.imp.StripedObjectPool;
+import com.qiwi.thrift.pool.imp.ThriftObjectPool;
+import com.qiwi.thrift.utils.ParameterSource;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public enum ThriftConnectionPoolType {
+    /**
+     * commons-pool2 GenericObjectPool. Fair, but every borrow and return take pool lock
+     */
+    GENERIC {
+        @Override
+        public <T> ThriftObjectPool<T> createPool(PooledObjectFactory<T> factory, GenericObjectPoolConfig config) {
+            return new GenericThriftObjectPool<>(factory, config);
+        }
+    },
+    /**
+     * Lock-free pool with per-thread affinity. Recommended when more than 64 threads use one client
+     */
+    STRIPED {
+        @Override
+        public <T> ThriftObjectPool<T> createPool(PooledObjectFactory<T> factory, GenericObjectPoolConfig config) {
+            return new StripedObjectPool<>(factory, config);
+        }
+    },
+    ;
+
+    private static final Logger log = LoggerFactory.getLogger(ThriftConnectionPoolType.class);
+
+    public abstract <T> ThriftObjectPool<T> createPool(PooledObjectFactory<T> factory, GenericObjectPoolConfig config);
+
+    public static ThriftConnectionPoolType parse(
+            ParameterSource source,
+            String name,
+            ThriftConnectionPoolType defaultValue
+    ) {
+        String val = source.getString(name, ParameterSource.NOT_DEFINED);
+        if (ParameterSource.NOT_DEFINED.equals(val)) {
+            return defaultValue;
+        }
+        try {
+            return valueOf(val);
+        } catch (IllegalArgumentException ex) {
+            log.error("Unable to parse parameter {} with value {}", source.getFullPath(name), val, ex);
+            return defaultValue;
+        }
+    }
+}
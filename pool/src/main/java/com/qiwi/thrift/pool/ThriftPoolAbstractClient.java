@@ -1,7 +1,7 @@
 package com.qiwi.thrift.pool;
 
+import com.qiwi.thrift.pool.imp.ThriftObjectPool;
 import com.qiwi.thrift.utils.ThriftClientAddress;
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,7 +14,7 @@ public abstract class ThriftPoolAbstractClient<I, C extends ThriftClientAbstract
 
     private final Class<I> interfaceClass;
     protected final String serviceName;
-    protected final GenericObjectPool<C> pool;
+    protected final ThriftObjectPool<C> pool;
     protected final Supplier<ThriftClientAddress> addressSupplier;
     protected final ThriftClientConfig config;
     private final Predicate<I> validator;
@@ -22,7 +22,7 @@ public abstract class ThriftPoolAbstractClient<I, C extends ThriftClientAbstract
     ThriftPoolAbstractClient(
             Class<I> interfaceClass,
             String serviceName,
-            GenericObjectPool<C> pool,
+            ThriftObjectPool<C> pool,
             Supplier<ThriftClientAddress> addressSupplier,
             ThriftClientConfig config,
             Predicate<I> validator
@@ -2,6 +2,8 @@ package com.qiwi.thrift.pool;
 
 import com.qiwi.thrift.metrics.ThriftCallType;
 import com.qiwi.thrift.pool.imp.MultiplexProtocolFactory;
+import com.qiwi.thrift.pool.imp.ThriftObjectPool;
+import com.qiwi.thrift.pool.imp.ThriftPipelinedClientManager;
 import com.qiwi.thrift.tracing.TCompactTracedProtocol;
 import com.qiwi.thrift.tracing.ThriftTraceMode;
 import com.qiwi.thrift.utils.ThriftClientAddress;
@@ -9,20 +11,32 @@ import com.qiwi.thrift.utils.ThriftConnectionException;
 import com.qiwi.thrift.utils.ThriftRequestStatus;
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.thrift.async.TAsyncClient;
 import org.apache.thrift.async.TAsyncClientFactory;
 import org.apache.thrift.async.TAsyncClientManager;
 import org.apache.thrift.protocol.TProtocolFactory;
 import org.apache.thrift.transport.TNonblockingSocket;
+import org.apache.thrift.transport.TNonblockingTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
+import java.util.function.LongConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -36,24 +50,37 @@ public class ThriftPoolAsyncClient<I, T extends TAsyncClient>
         implements ThriftAsyncClient<I> {
     private static final Logger log = LoggerFactory.getLogger(ThriftPoolAsyncClient.class);
 
+    private static final ScheduledThreadPoolExecutor waitTimeoutScheduler = createWaitTimeoutScheduler();
+    /**
+     * Connections for queued requests created here: create and validate block,
+     * and must not be done in selector or completion thread
+     */
+    private static final ThreadPoolExecutor dispatchExecutor = createDispatchExecutor();
+
     private final AsyncPoolObjectFactory<I, T> factory;
-    private final TAsyncClientManager manager;
+    private final Optional<ThriftPipelinedClientManager> pipelinedManager;
     private final ThriftCallType callType;
+    private final ConcurrentLinkedQueue<PendingRequest<?>> waitQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waitQueueSize = new AtomicInteger();
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+    private volatile int maxWaitQueueSize;
 
     ThriftPoolAsyncClient(
             Class<I> interfaceClazz,
             String serviceName,
-            GenericObjectPool<ThriftClientAsyncContainer<I>> pool,
+            ThriftObjectPool<ThriftClientAsyncContainer<I>> pool,
             Supplier<ThriftClientAddress> addressSupplier,
             ThriftClientConfig config,
             ThriftAsyncVerifier<I> validator,
             AsyncPoolObjectFactory<I, T> factory,
-            TAsyncClientManager manager
+            Optional<ThriftPipelinedClientManager> pipelinedManager
     ) {
         super(interfaceClazz, serviceName, pool, addressSupplier, config, validator);
         this.factory = factory;
-        this.manager = manager;
+        this.pipelinedManager = pipelinedManager;
         this.callType = config.isBalancerClient()? ThriftCallType.ASYNC_BALANCER: ThriftCallType.ASYNC_CLIENT;
+        this.maxWaitQueueSize = config.getAsyncWaitQueueSize();
+        factory.setPoolReference(new ReleaseListeningPool());
     }
 
     @Override
@@ -69,46 +96,234 @@ public class ThriftPoolAsyncClient<I, T extends TAsyncClient>
             ThriftAsyncFunction<I, ?> function,
             long timeoutMillis
     ) {
+        if (maxWaitQueueSize > 0) {
+            return execNonBlocking(resultType, function, timeoutMillis);
+        }
         config.getRequestReporter().requestBegin(serviceName, "async", callType);
         ThriftClientAsyncContainer<I> client;
         try {
             client = pool.borrowObject(timeoutMillis);
         } catch (RuntimeException e) {
-            config.getRequestReporter().requestEnd(
-                    serviceName,
-                    function.getClass().getSimpleName(),
-                    callType,
-                    ThriftRequestStatus.CONNECTION_ERROR,
-                    TimeUnit.MILLISECONDS.toNanos(pool.getMaxWaitMillis()),
-                    Optional.of(e)
-            );
+            reportConnectionError(function, TimeUnit.MILLISECONDS.toNanos(pool.getMaxWaitMillis()), e);
             throw e;
         } catch (Exception e) {
-            config.getRequestReporter().requestEnd(
-                    serviceName,
-                    function.getClass().getSimpleName(),
-                    callType,
-                    ThriftRequestStatus.CONNECTION_ERROR,
-                    TimeUnit.MILLISECONDS.toNanos(pool.getMaxWaitMillis()),
-                    Optional.of(e)
-            );
+            reportConnectionError(function, TimeUnit.MILLISECONDS.toNanos(pool.getMaxWaitMillis()), e);
+            throw new ThriftConnectionException("Unable to connect to server " + addressSupplier.get(), e);
+        }
+        return send(client, resultType, function);
+    }
+
+    /**
+     * Never wait for connection and never connect in caller thread: only idle connection used here.
+     * Otherwise request queued, and sent with connection released by other request,
+     * or with new connection created and validated in dispatchExecutor
+     */
+    private <R> CompletableFuture<R> execNonBlocking(
+            Class<R> resultType,
+            ThriftAsyncFunction<I, ?> function,
+            long timeoutMillis
+    ) {
+        config.getRequestReporter().requestBegin(serviceName, "async", callType);
+        ThriftClientAsyncContainer<I> client;
+        try {
+            client = pool.borrowIdleObject();
+        } catch (RuntimeException e) {
+            reportConnectionError(function, 0, e);
+            throw e;
+        } catch (Exception e) {
+            reportConnectionError(function, 0, e);
             throw new ThriftConnectionException("Unable to connect to server " + addressSupplier.get(), e);
         }
+        if (client != null) {
+            return send(client, resultType, function);
+        }
+
+        if (waitQueueSize.incrementAndGet() > maxWaitQueueSize) {
+            waitQueueSize.decrementAndGet();
+            ThriftConnectionException exception = new ThriftConnectionException(
+                    "Wait queue is full, server " + addressSupplier.get()
+            );
+            reportConnectionError(function, 0, exception);
+            CompletableFuture<R> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(exception);
+            return rejected;
+        }
+        PendingRequest<R> request = new PendingRequest<>(resultType, function);
+        if (timeoutMillis >= 0) {
+            request.timeout = waitTimeoutScheduler.schedule(
+                    () -> expire(request),
+                    timeoutMillis,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+        waitQueue.add(request);
+        // Коннект мог вернуться в пул до того как запрос попал в очередь
+        dispatchWaiting(false);
+        if (waitQueueSize.get() > 0) {
+            scheduleDispatch();
+        }
+        return request.future;
+    }
+
+    private <R> CompletableFuture<R> send(
+            ThriftClientAsyncContainer<I> client,
+            Class<R> resultType,
+            ThriftAsyncFunction<I, ?> function
+    ) {
+        long startNanos = System.nanoTime();
         try {
             return client.execAsync(resultType, function, config.getRequestReporter());
         } catch (Exception e) {
+            // Запрос не отправлен, callback не вызовется: requestBegin закрывается здесь
+            reportConnectionError(function, System.nanoTime() - startNanos, e);
             client.close();
             throw new ThriftConnectionException("Unable to connect to server " + client, e);
         } catch (Error e) {
+            reportConnectionError(function, System.nanoTime() - startNanos, e);
             client.close();
             throw e;
         }
     }
 
+    /**
+     * @param create create and validate connection if pool has no idle, only in dispatchExecutor
+     * @return null if pool exhausted
+     */
+    private ThriftClientAsyncContainer<I> tryBorrow(boolean create) throws Exception {
+        if (!create) {
+            return pool.borrowIdleObject();
+        }
+        try {
+            return pool.borrowObject(0);
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Called in thread, which finished request: selector or completion executor.
+     * Connection handed to queued request or returned to pool, new connections never created here
+     */
+    private void onReturn(ThriftClientAsyncContainer<I> client) throws Exception {
+        if (waitQueueSize.get() > 0) {
+            PendingRequest<?> request = pollWaiting();
+            if (request != null) {
+                request.send(client);
+                return;
+            }
+        }
+        pool.returnObject(client);
+        // Запрос мог попасть в очередь, пока коннект возвращался в пул
+        if (waitQueueSize.get() > 0) {
+            scheduleDispatch();
+        }
+    }
+
+    private void onInvalidate(ThriftClientAsyncContainer<I> client) throws Exception {
+        try {
+            pool.invalidateObject(client);
+        } finally {
+            // Место в пуле освободилось, новый коннект создаётся в dispatchExecutor
+            if (waitQueueSize.get() > 0) {
+                scheduleDispatch();
+            }
+        }
+    }
+
+    private void scheduleDispatch() {
+        if (!dispatchScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        dispatchExecutor.execute(() -> {
+            dispatchScheduled.set(false);
+            try {
+                dispatchWaiting(true);
+            } catch (RuntimeException e) {
+                log.error("Unable to send queued requests to {}", this, e);
+            }
+        });
+    }
+
+    private void dispatchWaiting(boolean create) {
+        while (waitQueueSize.get() > 0) {
+            ThriftClientAsyncContainer<I> client;
+            try {
+                client = tryBorrow(create);
+            } catch (Exception e) {
+                PendingRequest<?> request = pollWaiting();
+                if (request != null) {
+                    request.fail(new ThriftConnectionException("Unable to connect to server " + addressSupplier.get(), e));
+                }
+                continue;
+            }
+            if (client == null) {
+                return;
+            }
+            PendingRequest<?> request = pollWaiting();
+            if (request == null) {
+                // Возврат в обход ReleaseListeningPool, иначе повторный вызов dispatchWaiting
+                try {
+                    pool.returnObject(client);
+                } catch (Exception e) {
+                    log.warn("Unable to return connection {}", client, e);
+                }
+                // Запрос, добавленный пока коннект был взят, проверяется на следующей итерации
+                continue;
+            }
+            request.send(client);
+        }
+    }
+
+    private PendingRequest<?> pollWaiting() {
+        PendingRequest<?> request;
+        while ((request = waitQueue.poll()) != null) {
+            waitQueueSize.decrementAndGet();
+            if (request.take()) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    private void expire(PendingRequest<?> request) {
+        if (request.take()) {
+            if (waitQueue.remove(request)) {
+                waitQueueSize.decrementAndGet();
+            }
+            request.fail(new ThriftConnectionException(
+                    "Timeout waiting for connection to server " + addressSupplier.get()
+            ));
+        }
+    }
+
+    private void reportConnectionError(ThriftAsyncFunction<I, ?> function, long nanos, Throwable exception) {
+        config.getRequestReporter().requestEnd(
+                serviceName,
+                function.getClass().getSimpleName(),
+                callType,
+                ThriftRequestStatus.CONNECTION_ERROR,
+                nanos,
+                Optional.of(exception)
+        );
+    }
+
+    /**
+     * @return waiters of pool and requests in async wait queue
+     */
+    @Override
+    public int getNumWaiters() {
+        return super.getNumWaiters() + waitQueueSize.get();
+    }
+
+    public int getWaitQueueSize() {
+        return waitQueueSize.get();
+    }
+
 
     @Override
     public void reconfigure(ThriftClientConfig clientConfig) {
         factory.reconfigure(clientConfig);
+        maxWaitQueueSize = clientConfig.getAsyncWaitQueueSize();
         pool.setConfig(clientConfig.createPoolConfig(
                 getServiceName(),
                 getAddress(),
@@ -118,8 +333,149 @@ public class ThriftPoolAsyncClient<I, T extends TAsyncClient>
 
     @Override
     public void close() {
-        manager.stop();
+        pipelinedManager.ifPresent(ThriftPipelinedClientManager::stop);
         super.close();
+        PendingRequest<?> request;
+        while ((request = pollWaiting()) != null) {
+            request.fail(new ThriftConnectionException("Client closed " + this));
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createWaitTimeoutScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "{\"async pool\":\"wait timeout\"}");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static ThreadPoolExecutor createDispatchExecutor() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                1,
+                TimeUnit.MINUTES,
+                // Не больше одной задачи на клиент, см. dispatchScheduled
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "{\"async pool\":\"dispatch\"}");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Request waiting in queue for free connection
+     */
+    private class PendingRequest<R> {
+        private final Class<R> resultType;
+        private final ThriftAsyncFunction<I, ?> function;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+        private final Map<String, String> diagnosticContext = MDC.getCopyOfContextMap();
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean taken = new AtomicBoolean();
+        private volatile ScheduledFuture<?> timeout;
+
+        private PendingRequest(Class<R> resultType, ThriftAsyncFunction<I, ?> function) {
+            this.resultType = resultType;
+            this.function = function;
+        }
+
+        /**
+         * @return true only once - for sending or for timeout
+         */
+        private boolean take() {
+            if (!taken.compareAndSet(false, true)) {
+                return false;
+            }
+            ScheduledFuture<?> timeoutCopy = timeout;
+            if (timeoutCopy != null) {
+                timeoutCopy.cancel(false);
+            }
+            return true;
+        }
+
+        private void send(ThriftClientAsyncContainer<I> client) {
+            Map<String, String> callerContext = MDC.getCopyOfContextMap();
+            if (diagnosticContext != null) {
+                MDC.setContextMap(diagnosticContext);
+            } else {
+                MDC.clear();
+            }
+            try {
+                ThriftPoolAsyncClient.this.send(client, resultType, function).whenComplete((result, error) -> {
+                    if (error == null) {
+                        future.complete(result);
+                    } else {
+                        future.completeExceptionally(error);
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            } finally {
+                if (callerContext != null) {
+                    MDC.setContextMap(callerContext);
+                } else {
+                    MDC.clear();
+                }
+            }
+        }
+
+        private void fail(Exception exception) {
+            reportConnectionError(function, System.nanoTime() - startNanos, exception);
+            future.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Hand returned connection to queued request, notify client when connection invalidated
+     */
+    private class ReleaseListeningPool implements ObjectPool<ThriftClientAsyncContainer<I>> {
+        @Override
+        public ThriftClientAsyncContainer<I> borrowObject() throws Exception {
+            return pool.borrowObject();
+        }
+
+        @Override
+        public void returnObject(ThriftClientAsyncContainer<I> obj) throws Exception {
+            onReturn(obj);
+        }
+
+        @Override
+        public void invalidateObject(ThriftClientAsyncContainer<I> obj) throws Exception {
+            onInvalidate(obj);
+        }
+
+        @Override
+        public void addObject() throws Exception {
+            pool.addObject();
+        }
+
+        @Override
+        public int getNumIdle() {
+            return pool.getNumIdle();
+        }
+
+        @Override
+        public int getNumActive() {
+            return pool.getNumActive();
+        }
+
+        @Override
+        public void clear() throws Exception {
+            pool.clear();
+        }
+
+        @Override
+        public void close() {
+            pool.close();
+        }
     }
 
     static class AsyncPoolObjectFactory<I, T extends TAsyncClient> extends BasePooledObjectFactory<ThriftClientAsyncContainer<I>> {
@@ -128,28 +484,34 @@ public class ThriftPoolAsyncClient<I, T extends TAsyncClient>
         private final Supplier<ThriftClientAddress> clientAddress;
         private final String serviceName;// только для логирования
         private final TAsyncClientManager manager;
+        private final Optional<ThriftPipelinedClientManager> pipelinedManager;
         private final BiFunction<TAsyncClientManager, TProtocolFactory, TAsyncClientFactory<T>> clientCreator;
         private final Predicate<I> validator;
+        private final LongConsumer selectorCallbackTime;
         private volatile ThriftClientConfig config;
-        private volatile GenericObjectPool<ThriftClientAsyncContainer<I>> poolReference;
+        private volatile ObjectPool<ThriftClientAsyncContainer<I>> poolReference;
 
         public AsyncPoolObjectFactory(
                 Supplier<ThriftClientAddress> clientAddress,
                 String serviceName,
                 TAsyncClientManager manager,
+                Optional<ThriftPipelinedClientManager> pipelinedManager,
                 BiFunction<TAsyncClientManager, TProtocolFactory, TAsyncClientFactory<T>> clientCreator,
                 ThriftAsyncVerifier<I> validator,
-                ThriftClientConfig config
+                ThriftClientConfig config,
+                LongConsumer selectorCallbackTime
         ) {
             this.clientAddress = clientAddress;
             this.serviceName = serviceName;
             this.manager = manager;
+            this.pipelinedManager = pipelinedManager;
             this.clientCreator = clientCreator;
             this.validator = validator;
             this.config = config;
+            this.selectorCallbackTime = selectorCallbackTime;
         }
 
-        public void setPoolReference(GenericObjectPool<ThriftClientAsyncContainer<I>> poolReference) {
+        public void setPoolReference(ObjectPool<ThriftClientAsyncContainer<I>> poolReference) {
             this.poolReference = poolReference;
         }
 
@@ -160,8 +522,16 @@ public class ThriftPoolAsyncClient<I, T extends TAsyncClient>
         @Override
         public ThriftClientAsyncContainer<I> create() throws Exception {
             ThriftClientAddress address = clientAddress.get();
-            TNonblockingSocket socket = new TNonblockingSocket(address.getHost(), address.getPort());
-
+            TNonblockingTransport socket;
+            if (pipelinedManager.isPresent()) {
+                socket = pipelinedManager.get().openChannel(
+                        address,
+                        (int) config.getConnectTimeout().toMillis(),
+                        config.getMaxFrameSizeBytes()
+                );
+            } else {
+                socket = new TNonblockingSocket(address.getHost(), address.getPort());
+            }
 
             TProtocolFactory protocolFactory = new MultiplexProtocolFactory(
                     // Ддя асинхронного клиента применяется только ограничение на самый большой блоб/массив
@@ -169,7 +539,8 @@ public class ThriftPoolAsyncClient<I, T extends TAsyncClient>
                             config.getMaxFrameSizeBytes(),
                             config.getMaxCollectionItemCount(),
                             config.getTraceMode()
-                                    .orElseGet(() -> address.getTraceMode().orElse(ThriftTraceMode.DISABLED))
+                                    .orElseGet(() -> address.getTraceMode().orElse(ThriftTraceMode.DISABLED)),
+                            config.getRequestTimeout().toMillis()
                     ),
                     serviceName
             );
@@ -185,7 +556,9 @@ public class ThriftPoolAsyncClient<I, T extends TAsyncClient>
                     address,
                     serviceName,
                     client,
-                    config.isBalancerClient()? ThriftCallType.ASYNC_BALANCER: ThriftCallType.ASYNC_CLIENT
+                    config.isBalancerClient()? ThriftCallType.ASYNC_BALANCER: ThriftCallType.ASYNC_CLIENT,
+                    config.getCompletionExecutor().orElse(null),
+                    selectorCallbackTime
             );
         }
 
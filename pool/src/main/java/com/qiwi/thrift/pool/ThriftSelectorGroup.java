@@ -0,0 +1,109 @@
+package com.qiwi.thrift.pool;
+
+import com.qiwi.thrift.metrics.ThriftMonitoring;
+import com.qiwi.thrift.pool.imp.ThriftAsyncSelector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed set of selector threads shared by async pools.
+ * Without group every async pool start own selector thread, and with load balancer
+ * number of threads equals number of services multiplied by number of nodes.
+ *
+ * Pools assigned to selectors round-robin. Process-wide group returned by getDefault,
+ * own group can be passed to AsyncClientFactory, in this case it must be closed after all clients.
+ */
+public class ThriftSelectorGroup implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ThriftSelectorGroup.class);
+
+    private static final String DEFAULT_NAME = "default";
+    private static volatile ThriftSelectorGroup defaultGroup;
+
+    private final String name;
+    private final ThriftAsyncSelector[] selectors;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param name group name, used in thread names and metrics
+     * @param size number of selectors
+     */
+    public ThriftSelectorGroup(String name, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Selector group size must be positive");
+        }
+        this.name = name;
+        this.selectors = new ThriftAsyncSelector[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                selectors[i] = new ThriftAsyncSelector(name + '-' + i);
+            }
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Unable to start selector group " + name, e);
+        }
+        for (int i = 0; i < size; i++) {
+            ThriftAsyncSelector selector = selectors[i];
+            ThriftMonitoring.getMonitor().registerSelector(
+                    name,
+                    i,
+                    selector::getQueueDepth,
+                    () -> TimeUnit.NANOSECONDS.toMillis(selector.getBusyTimeNanos()),
+                    () -> TimeUnit.NANOSECONDS.toMillis(selector.getCallbackTimeNanos()),
+                    selector::getCalls
+            );
+        }
+        log.info("Selector group {} started with {} selectors", name, size);
+    }
+
+    /**
+     * Process-wide group with one selector per core. Started on first use, never closed
+     */
+    public static ThriftSelectorGroup getDefault() {
+        ThriftSelectorGroup group = defaultGroup;
+        if (group == null) {
+            synchronized (ThriftSelectorGroup.class) {
+                group = defaultGroup;
+                if (group == null) {
+                    group = new ThriftSelectorGroup(DEFAULT_NAME, Runtime.getRuntime().availableProcessors());
+                    defaultGroup = group;
+                }
+            }
+        }
+        return group;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return selectors.length;
+    }
+
+    public ThriftAsyncSelector getSelector(int index) {
+        return selectors[index];
+    }
+
+    /**
+     * @return selector for new pool
+     */
+    public ThriftAsyncSelector next() {
+        return selectors[Math.floorMod(next.getAndIncrement(), selectors.length)];
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < selectors.length; i++) {
+            if (selectors[i] != null) {
+                ThriftMonitoring.getMonitor().unRegisterSelector(name, i);
+                selectors[i].close();
+            }
+        }
+        log.info("Selector group {} stopped", name);
+    }
+}
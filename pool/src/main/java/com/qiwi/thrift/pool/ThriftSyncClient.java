@@ -1,6 +1,9 @@
 package com.qiwi.thrift.pool;
 
 import com.qiwi.thrift.metrics.ThriftCallType;
+import com.qiwi.thrift.pool.imp.ThriftObjectPool;
+import com.qiwi.thrift.reflect.SyncClientDispatcher;
+import com.qiwi.thrift.reflect.SyncMethodInfo;
 import com.qiwi.thrift.tracing.TCompactTracedProtocol;
 import com.qiwi.thrift.tracing.ThriftTraceMode;
 import com.qiwi.thrift.utils.TTimeoutException;
@@ -8,8 +11,8 @@ import com.qiwi.thrift.utils.ThriftClientAddress;
 import com.qiwi.thrift.utils.ThriftRequestStatus;
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.ObjectPool;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.thrift.TServiceClient;
 import org.apache.thrift.TServiceClientFactory;
 import org.apache.thrift.protocol.TMultiplexedProtocol;
@@ -42,50 +45,47 @@ public class ThriftSyncClient<I, T extends TServiceClient>
 
     private final PoolObjectFactory<I, T> poolObjectFactory;
     private final ThriftCallType callType;
+    private final SyncClientDispatcher dispatcher;
 
     ThriftSyncClient(
             Class<I> interfaceClass,
             String serviceName,
-            GenericObjectPool<ThriftClientSyncContainer<I>> pool,
+            ThriftObjectPool<ThriftClientSyncContainer<I>> pool,
             Supplier<ThriftClientAddress> addressSupplier,
             ThriftClientConfig config,
             Predicate<I> validator,
-            PoolObjectFactory<I, T> poolObjectFactory
+            PoolObjectFactory<I, T> poolObjectFactory,
+            SyncClientDispatcher dispatcher
     ) {
         super(interfaceClass, serviceName, pool, addressSupplier, config, validator);
         this.poolObjectFactory = poolObjectFactory;
+        this.dispatcher = dispatcher;
         this.callType = config.isBalancerClient()? ThriftCallType.SYNC_BALANCER: ThriftCallType.SYNC_CLIENT;
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        switch (method.getName()) {
-            case "toString":
-                if (args == null || args.length == 0) {
-                    return toString();
-                }
-                break;
-            case "close":
-                if (args == null || args.length == 0) {
-                    close();
-                    return null;
-                }
-                break;
-            case "hashCode":
-                if (args == null || args.length == 0) {
-                    return hashCode();
-                }
-                break;
-            case "equals":
-                if (args.length == 1) {
-                    return proxy == args[0];
-                }
-                break;
+        SyncMethodInfo methodInfo = dispatcher.get(method);
+        switch (methodInfo.getKind()) {
+            case TO_STRING:
+                return toString();
+            case CLOSE:
+                close();
+                return null;
+            case HASH_CODE:
+                return hashCode();
+            case EQUALS:
+                return proxy == args[0];
+            default:
+                return invoke(methodInfo, args, pool.getMaxWaitMillis());
         }
-        return invoke(method, args, pool.getMaxWaitMillis());
     }
 
     public Object invoke(Method method, Object[] args, long timeoutMillis) throws Throwable {
+        return invoke(dispatcher.get(method), args, timeoutMillis);
+    }
+
+    public Object invoke(SyncMethodInfo method, Object[] args, long timeoutMillis) throws Throwable {
         String methodName = method.getName();
         config.getRequestReporter().requestBegin(serviceName, methodName, callType);
         ThriftClientSyncContainer<I> container;
@@ -153,7 +153,7 @@ public class ThriftSyncClient<I, T extends TServiceClient>
         private final Predicate<I> validator;
         private final String thriftServiceName;
         private volatile ThriftClientConfig thriftClientConfig;
-        private GenericObjectPool<ThriftClientSyncContainer<I>> poolReference = null;
+        private ObjectPool<ThriftClientSyncContainer<I>> poolReference = null;
 
         public PoolObjectFactory(
                 Class<?> clientInterfaceClazz,
@@ -172,7 +172,7 @@ public class ThriftSyncClient<I, T extends TServiceClient>
         }
 
 
-        public void setPoolReference(GenericObjectPool<ThriftClientSyncContainer<I>> poolReference) {
+        public void setPoolReference(ObjectPool<ThriftClientSyncContainer<I>> poolReference) {
             this.poolReference = poolReference;
         }
 
@@ -203,7 +203,8 @@ public class ThriftSyncClient<I, T extends TServiceClient>
                                 thriftClientConfig.getMaxFrameSizeBytes(),
                                 thriftClientConfig.getMaxCollectionItemCount(),
                                 thriftClientConfig.getTraceMode()
-                                        .orElseGet(() -> address.getTraceMode().orElse(ThriftTraceMode.DISABLED))
+                                        .orElseGet(() -> address.getTraceMode().orElse(ThriftTraceMode.DISABLED)),
+                                thriftClientConfig.getRequestTimeout().toMillis()
                         ),
                         thriftServiceName
                 );
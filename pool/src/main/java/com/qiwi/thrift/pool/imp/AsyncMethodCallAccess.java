@@ -0,0 +1,116 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClient;
+import org.apache.thrift.async.TAsyncMethodCall;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TNonblockingTransport;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Доступ к внутренностям TAsyncMethodCall, нужен чтобы выполнить вызов в обход TAsyncClientManager.
+ * Проверено на libthrift 0.9.3
+ */
+final class AsyncMethodCallAccess {
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private static final MethodType WRITE_ARGS_TYPE = MethodType.methodType(void.class, TProtocol.class);
+
+    private static final MethodHandle transportGetter;
+    private static final MethodHandle callbackGetter;
+    private static final MethodHandle frameBufferSetter;
+    private static final MethodHandle stateSetter;
+    private static final MethodHandle clientOnComplete;
+    private static final MethodHandle clientOnError;
+
+    private static final ClassValue<MethodHandle> writeArgs = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.publicLookup().findVirtual(type, "write_args", WRITE_ARGS_TYPE);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalArgumentException("Class " + type.getName() + " is not generated thrift method call", e);
+            }
+        }
+    };
+
+    static {
+        try {
+            transportGetter = lookup.unreflectGetter(field("transport"));
+            callbackGetter = lookup.unreflectGetter(field("callback"));
+            frameBufferSetter = lookup.unreflectSetter(field("frameBuffer"));
+            stateSetter = lookup.unreflectSetter(field("state"));
+
+            Method onComplete = TAsyncClient.class.getDeclaredMethod("onComplete");
+            onComplete.setAccessible(true);
+            clientOnComplete = lookup.unreflect(onComplete);
+            Method onError = TAsyncClient.class.getDeclaredMethod("onError", Exception.class);
+            onError.setAccessible(true);
+            clientOnError = lookup.unreflect(onError);
+        } catch (NoSuchFieldException | NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private AsyncMethodCallAccess() {
+    }
+
+    private static Field field(String name) throws NoSuchFieldException {
+        Field field = TAsyncMethodCall.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    static TNonblockingTransport getTransport(TAsyncMethodCall<?> call) {
+        try {
+            return (TNonblockingTransport) transportGetter.invoke(call);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to get transport of " + call, e);
+        }
+    }
+
+    /**
+     * @return serialized request message, without frame size
+     */
+    static byte[] writeRequest(TAsyncMethodCall<?> call) throws TException {
+        TMemoryBuffer buffer = new TMemoryBuffer(128);
+        TProtocol protocol = call.getClient().getProtocolFactory().getProtocol(buffer);
+        try {
+            writeArgs.get(call.getClass()).invoke(call, protocol);
+        } catch (TException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new TException("Unable to write request " + call, e);
+        }
+        return Arrays.copyOf(buffer.getArray(), buffer.length());
+    }
+
+    /**
+     * Аналог TAsyncMethodCall.cleanUpAndFireCallback
+     * @param response response message, without frame size. getResult() read whole array
+     */
+    @SuppressWarnings("unchecked")
+    static void complete(TAsyncMethodCall<?> call, byte[] response) throws Throwable {
+        frameBufferSetter.invoke(call, ByteBuffer.wrap(response));
+        stateSetter.invoke(call, TAsyncMethodCall.State.RESPONSE_READ);
+        clientOnComplete.invoke(call.getClient());
+        ((AsyncMethodCallback<Object>) callbackGetter.invoke(call)).onComplete(call);
+    }
+
+    /**
+     * Аналог TAsyncMethodCall.onError
+     */
+    static void fail(TAsyncMethodCall<?> call, Exception error) throws Throwable {
+        clientOnError.invoke(call.getClient(), error);
+        ((AsyncMethodCallback<?>) callbackGetter.invoke(call)).onError(error);
+        stateSetter.invoke(call, TAsyncMethodCall.State.ERROR);
+    }
+}
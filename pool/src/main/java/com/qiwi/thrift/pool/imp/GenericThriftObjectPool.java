@@ -0,0 +1,74 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Default pool implementation, fair and registered in JMX.
+ */
+public class GenericThriftObjectPool<T> extends GenericObjectPool<T> implements ThriftObjectPool<T> {
+    /**
+     * GenericObjectPool create object in borrow if no idle, borrowIdleObject forbid it through factory
+     */
+    private static final ThreadLocal<boolean[]> idleOnly = ThreadLocal.withInitial(() -> new boolean[1]);
+
+    public GenericThriftObjectPool(PooledObjectFactory<T> factory, GenericObjectPoolConfig config) {
+        super(new IdleOnlyFactory<>(factory), config);
+    }
+
+    @Override
+    public T borrowIdleObject() throws Exception {
+        if (getNumIdle() == 0) {
+            return null;
+        }
+        boolean[] flag = idleOnly.get();
+        flag[0] = true;
+        try {
+            return borrowObject(0);
+        } catch (NoSuchElementException e) {
+            return null;
+        } finally {
+            flag[0] = false;
+        }
+    }
+
+    private static class IdleOnlyFactory<T> implements PooledObjectFactory<T> {
+        private final PooledObjectFactory<T> delegate;
+
+        private IdleOnlyFactory(PooledObjectFactory<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public PooledObject<T> makeObject() throws Exception {
+            if (idleOnly.get()[0]) {
+                throw new NoSuchElementException("Pool has no idle objects");
+            }
+            return delegate.makeObject();
+        }
+
+        @Override
+        public void destroyObject(PooledObject<T> p) throws Exception {
+            delegate.destroyObject(p);
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<T> p) {
+            return delegate.validateObject(p);
+        }
+
+        @Override
+        public void activateObject(PooledObject<T> p) throws Exception {
+            delegate.activateObject(p);
+        }
+
+        @Override
+        public void passivateObject(PooledObject<T> p) throws Exception {
+            delegate.passivateObject(p);
+        }
+    }
+}
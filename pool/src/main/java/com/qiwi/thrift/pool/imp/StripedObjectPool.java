@@ -0,0 +1,582 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.EvictionConfig;
+import org.apache.commons.pool2.impl.EvictionPolicy;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pool without global lock on borrow and return.
+ *
+ * Every thread remember last returned object and try to take it first. If it busy, object taken from shared
+ * lock-free stack of idle objects. If pool exhausted, waiting thread receive object directly from returning thread
+ * through SynchronousQueue. Object never created or validated in returning thread: when object destroyed,
+ * waiting thread is woken up and creates replacement itself.
+ *
+ * Pool is not fair, and not registered in JMX. Pooled objects must use identity equals/hashCode.
+ * Supports same GenericObjectPoolConfig settings as GenericObjectPool, except fairness and JMX.
+ * @param <T> pooled object type
+ */
+public class StripedObjectPool<T> implements ThriftObjectPool<T> {
+    private static final Logger log = LoggerFactory.getLogger(StripedObjectPool.class);
+
+    private static final int IDLE = 0;
+    private static final int IN_USE = 1;
+    private static final int EVICTION_TEST = 2;
+    private static final int INVALID = 3;
+
+    private static final ScheduledThreadPoolExecutor evictionScheduler = createEvictionScheduler();
+
+    private final PooledObjectFactory<T> factory;
+    private final ConcurrentHashMap<T, Entry<T>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<Entry<T>> idleStack = new ConcurrentLinkedDeque<>();
+    private final SynchronousQueue<Entry<T>> handoffQueue = new SynchronousQueue<>();
+    /**
+     * Weak reference, so destroyed objects not leaked through threads, which don't use pool anymore
+     */
+    private final ThreadLocal<WeakReference<Entry<T>>> lastReturned = new ThreadLocal<>();
+    /**
+     * Never IDLE, so never taken by waiter. Makes waiter check pool capacity again
+     */
+    private final Entry<T> wakeUp = new Entry<>(null, INVALID);
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    private volatile GenericObjectPoolConfig config;
+    private volatile EvictionPolicy<T> evictionPolicy;
+    private volatile boolean closed = false;
+    private ScheduledFuture<?> evictionTask;
+
+    public StripedObjectPool(PooledObjectFactory<T> factory, GenericObjectPoolConfig config) {
+        this.factory = factory;
+        setConfig(config);
+    }
+
+    @Override
+    public T borrowObject() throws Exception {
+        return borrowObject(getMaxWaitMillis());
+    }
+
+    @Override
+    public T borrowObject(long borrowMaxWaitMillis) throws Exception {
+        assertOpen();
+        WeakReference<Entry<T>> lastRef = lastReturned.get();
+        Entry<T> entry = lastRef == null ? null : lastRef.get();
+        if (entry == null || !transition(entry, IDLE, IN_USE)) {
+            entry = pollIdle();
+        }
+        if (entry == null) {
+            entry = tryCreate();
+        }
+        if (entry == null) {
+            if (!config.getBlockWhenExhausted()) {
+                throw new NoSuchElementException("Pool exhausted");
+            }
+            entry = awaitIdle(borrowMaxWaitMillis);
+        }
+        return activate(entry);
+    }
+
+    @Override
+    public T borrowIdleObject() throws Exception {
+        assertOpen();
+        WeakReference<Entry<T>> lastRef = lastReturned.get();
+        Entry<T> entry = lastRef == null ? null : lastRef.get();
+        if (entry == null || !transition(entry, IDLE, IN_USE)) {
+            entry = pollIdle();
+        }
+        return entry == null ? null : activate(entry);
+    }
+
+    @Override
+    public void returnObject(T obj) throws Exception {
+        Entry<T> entry = entries.get(obj);
+        if (entry == null) {
+            throw new IllegalStateException("Returned object not currently part of this pool");
+        }
+        if (config.getTestOnReturn() && !factory.validateObject(entry.pooled)) {
+            destroy(entry);
+            wakeUpWaiters();
+            return;
+        }
+        try {
+            factory.passivateObject(entry.pooled);
+        } catch (Exception e) {
+            log.warn("Unable to passivate object {}", obj, e);
+            destroy(entry);
+            wakeUpWaiters();
+            return;
+        }
+        entry.pooled.deallocate();
+        if (closed || isIdleLimitReached()) {
+            destroy(entry);
+            return;
+        }
+        lastReturned.set(entry.ref);
+        release(entry);
+    }
+
+    @Override
+    public void invalidateObject(T obj) throws Exception {
+        Entry<T> entry = entries.get(obj);
+        if (entry == null) {
+            throw new IllegalStateException("Invalidated object not currently part of this pool");
+        }
+        destroy(entry);
+        wakeUpWaiters();
+    }
+
+    @Override
+    public void addObject() throws Exception {
+        assertOpen();
+        Entry<T> entry = tryCreate();
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    @Override
+    public int getNumIdle() {
+        return idleCount.get();
+    }
+
+    @Override
+    public int getNumActive() {
+        return activeCount.get();
+    }
+
+    @Override
+    public int getNumWaiters() {
+        return waiters.get();
+    }
+
+    @Override
+    public long getMaxWaitMillis() {
+        return config.getMaxWaitMillis();
+    }
+
+    @Override
+    public int getMaxTotal() {
+        return config.getMaxTotal();
+    }
+
+    @Override
+    public void setMaxTotal(int maxTotal) {
+        GenericObjectPoolConfig copy = config.clone();
+        copy.setMaxTotal(maxTotal);
+        config = copy;
+    }
+
+    @Override
+    public void setMaxIdle(int maxIdle) {
+        GenericObjectPoolConfig copy = config.clone();
+        copy.setMaxIdle(maxIdle);
+        config = copy;
+    }
+
+    @Override
+    public void setConfig(GenericObjectPoolConfig config) {
+        GenericObjectPoolConfig copy = config.clone();
+        this.evictionPolicy = createEvictionPolicy(copy.getEvictionPolicyClassName());
+        this.config = copy;
+        startEvictor(copy.getTimeBetweenEvictionRunsMillis());
+    }
+
+    @Override
+    public void evict() throws Exception {
+        assertOpen();
+        GenericObjectPoolConfig config = this.config;
+        EvictionConfig evictionConfig = new EvictionConfig(
+                config.getMinEvictableIdleTimeMillis(),
+                config.getSoftMinEvictableIdleTimeMillis(),
+                config.getMinIdle()
+        );
+        int testsLeft = getNumTests(config);
+        for (Entry<T> entry : entries.values()) {
+            if (testsLeft <= 0) {
+                break;
+            }
+            if (!transition(entry, IDLE, EVICTION_TEST)) {
+                continue;
+            }
+            testsLeft--;
+            boolean evict;
+            try {
+                evict = evictionPolicy.evict(evictionConfig, entry.pooled, getNumIdle());
+            } catch (Exception e) {
+                log.warn("Eviction policy failed on {}", entry.pooled.getObject(), e);
+                evict = false;
+            }
+            if (!evict && config.getTestWhileIdle()) {
+                evict = !testIdle(entry);
+            }
+            if (evict) {
+                destroy(entry);
+            } else {
+                release(entry);
+            }
+        }
+    }
+
+    @Override
+    public void preparePool() throws Exception {
+        if (config.getMinIdle() < 1) {
+            return;
+        }
+        ensureMinIdle();
+    }
+
+    @Override
+    public void clear() {
+        Entry<T> entry;
+        while ((entry = idleStack.pollFirst()) != null) {
+            entry.inStack = 0;
+            if (transition(entry, IDLE, INVALID)) {
+                destroy(entry);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        startEvictor(-1);
+        clear();
+        lastReturned.remove();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private T activate(Entry<T> entry) throws Exception {
+        try {
+            factory.activateObject(entry.pooled);
+        } catch (Exception e) {
+            destroy(entry);
+            wakeUpWaiters();
+            throw e;
+        }
+        // Monitor of DefaultPooledObject is not contended: entry owned by single thread here
+        entry.pooled.allocate();
+        return entry.pooled.getObject();
+    }
+
+    private Entry<T> pollIdle() {
+        Entry<T> entry;
+        while ((entry = idleStack.pollFirst()) != null) {
+            entry.inStack = 0;
+            if (transition(entry, IDLE, IN_USE)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Make object available to other threads. Object must be owned by current thread
+     */
+    private void release(Entry<T> entry) {
+        setState(entry, IDLE);
+        if (Entry.IN_STACK.compareAndSet(entry, 0, 1)) {
+            if (config.getLifo()) {
+                idleStack.offerFirst(entry);
+            } else {
+                idleStack.offerLast(entry);
+            }
+        }
+        for (int i = 0; waiters.get() > 0; i++) {
+            if (entry.get() != IDLE || handoffQueue.offer(entry)) {
+                return;
+            }
+            if ((i & 0xff) == 0xff) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private Entry<T> awaitIdle(long maxWaitMillis) throws Exception {
+        long deadline = maxWaitMillis < 0
+                ? Long.MAX_VALUE
+                : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        waiters.incrementAndGet();
+        try {
+            while (true) {
+                // Object may be returned or invalidated before we start waiting
+                Entry<T> entry = pollIdle();
+                if (entry == null) {
+                    entry = tryCreate();
+                }
+                if (entry != null) {
+                    return entry;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new NoSuchElementException("Timeout waiting for idle object");
+                }
+                // Returned object or wakeUp, if object destroyed and pool has capacity
+                entry = handoffQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (entry != null && transition(entry, IDLE, IN_USE)) {
+                    return entry;
+                }
+                assertOpen();
+            }
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return new object in IN_USE state, or null if pool is full
+     */
+    private Entry<T> tryCreate() throws Exception {
+        while (true) {
+            int total = totalCount.get();
+            int maxTotal = config.getMaxTotal();
+            if (maxTotal >= 0 && total >= maxTotal) {
+                return null;
+            }
+            if (totalCount.compareAndSet(total, total + 1)) {
+                break;
+            }
+        }
+        PooledObject<T> pooled;
+        try {
+            pooled = factory.makeObject();
+        } catch (Exception e) {
+            totalCount.decrementAndGet();
+            throw e;
+        }
+        if (config.getTestOnCreate() && !factory.validateObject(pooled)) {
+            totalCount.decrementAndGet();
+            try {
+                factory.destroyObject(pooled);
+            } catch (Exception e) {
+                log.warn("Unable to destroy object {}", pooled.getObject(), e);
+            }
+            throw new NoSuchElementException("Unable to validate object");
+        }
+        Entry<T> entry = new Entry<>(pooled, IN_USE);
+        activeCount.incrementAndGet();
+        entries.put(pooled.getObject(), entry);
+        return entry;
+    }
+
+    private void destroy(Entry<T> entry) {
+        setState(entry, INVALID);
+        WeakReference<Entry<T>> lastRef = lastReturned.get();
+        if (lastRef != null && lastRef.get() == entry) {
+            lastReturned.remove();
+        }
+        if (!entries.remove(entry.pooled.getObject(), entry)) {
+            return;
+        }
+        totalCount.decrementAndGet();
+        try {
+            factory.destroyObject(entry.pooled);
+        } catch (Exception e) {
+            log.warn("Unable to destroy object {}", entry.pooled.getObject(), e);
+        }
+    }
+
+    /**
+     * Waiting threads not notified when object destroyed, so wake up one of them to create replacement.
+     * Object created in waiting thread: returning thread may be selector or completion thread, which must not block
+     */
+    private void wakeUpWaiters() {
+        for (int i = 0; waiters.get() > 0 && !closed; i++) {
+            int maxTotal = config.getMaxTotal();
+            if (maxTotal >= 0 && totalCount.get() >= maxTotal) {
+                // Capacity taken by other thread, waiters receive object from it
+                return;
+            }
+            if (handoffQueue.offer(wakeUp)) {
+                return;
+            }
+            if ((i & 0xff) == 0xff) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private boolean transition(Entry<T> entry, int expect, int update) {
+        if (!entry.compareAndSet(expect, update)) {
+            return false;
+        }
+        updateCounters(expect, update);
+        return true;
+    }
+
+    private void setState(Entry<T> entry, int update) {
+        updateCounters(entry.getAndSet(update), update);
+    }
+
+    private void updateCounters(int previous, int update) {
+        AtomicInteger previousCounter = counter(previous);
+        AtomicInteger updateCounter = counter(update);
+        if (previousCounter != updateCounter) {
+            if (previousCounter != null) {
+                previousCounter.decrementAndGet();
+            }
+            if (updateCounter != null) {
+                updateCounter.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return counter of objects in state, null for INVALID
+     */
+    private AtomicInteger counter(int state) {
+        switch (state) {
+            case IDLE:
+            case EVICTION_TEST:
+                return idleCount;
+            case IN_USE:
+                return activeCount;
+            default:
+                return null;
+        }
+    }
+
+    private void ensureMinIdle() throws Exception {
+        while (!closed && getNumIdle() < config.getMinIdle()) {
+            Entry<T> entry = tryCreate();
+            if (entry == null) {
+                return;
+            }
+            release(entry);
+        }
+    }
+
+    private boolean testIdle(Entry<T> entry) {
+        try {
+            factory.activateObject(entry.pooled);
+            if (!factory.validateObject(entry.pooled)) {
+                return false;
+            }
+            factory.passivateObject(entry.pooled);
+            return true;
+        } catch (Exception e) {
+            log.warn("Idle object test failed {}", entry.pooled.getObject(), e);
+            return false;
+        }
+    }
+
+    private boolean isIdleLimitReached() {
+        GenericObjectPoolConfig config = this.config;
+        int maxIdle = config.getMaxIdle();
+        if (maxIdle < 0 || (config.getMaxTotal() >= 0 && maxIdle >= config.getMaxTotal())) {
+            return false;
+        }
+        return getNumIdle() >= maxIdle;
+    }
+
+    private int getNumTests(GenericObjectPoolConfig config) {
+        int numTests = config.getNumTestsPerEvictionRun();
+        int idle = getNumIdle();
+        if (numTests >= 0) {
+            return Math.min(numTests, idle);
+        } else {
+            return (int) Math.ceil(idle / Math.abs((double) numTests));
+        }
+    }
+
+    private void runEviction() {
+        if (closed) {
+            return;
+        }
+        try {
+            evict();
+        } catch (Exception | LinkageError e) {
+            log.error("Eviction failed", e);
+        }
+        try {
+            ensureMinIdle();
+        } catch (Exception e) {
+            log.warn("Unable to create idle objects", e);
+        }
+    }
+
+    private synchronized void startEvictor(long periodMillis) {
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+            evictionTask = null;
+        }
+        if (periodMillis > 0 && !closed) {
+            evictionTask = evictionScheduler.scheduleWithFixedDelay(
+                    this::runEviction,
+                    periodMillis,
+                    periodMillis,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    private void assertOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pool not open");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> EvictionPolicy<T> createEvictionPolicy(String className) {
+        try {
+            return (EvictionPolicy<T>) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Unable to create EvictionPolicy instance of type " + className, e);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createEvictionScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "{\"striped pool\":\"evictor\"}");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static final class Entry<T> extends AtomicInteger {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Entry> IN_STACK =
+                AtomicIntegerFieldUpdater.newUpdater(Entry.class, "inStack");
+
+        private final PooledObject<T> pooled;
+        private final WeakReference<Entry<T>> ref = new WeakReference<>(this);
+        /**
+         * 1 if entry present in idleStack. Protects stack from duplicates
+         */
+        private volatile int inStack = 0;
+
+        private Entry(PooledObject<T> pooled, int state) {
+            super(state);
+            this.pooled = pooled;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.async.TAsyncMethodCall;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One selector of ThriftSelectorGroup. Contains TAsyncClientManager shared by all ordinary async pools
+ * assigned to selector and lazily started selector of pipelined pools.
+ */
+public class ThriftAsyncSelector implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ThriftAsyncSelector.class);
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private static final Field selectThreadField;
+    private static final Field pendingCallsField;
+
+    static {
+        Field selectThread = null;
+        Field pendingCalls = null;
+        try {
+            selectThread = TAsyncClientManager.class.getDeclaredField("selectThread");
+            selectThread.setAccessible(true);
+            pendingCalls = TAsyncClientManager.class.getDeclaredField("pendingCalls");
+            pendingCalls.setAccessible(true);
+        } catch (NoSuchFieldException | RuntimeException e) {
+            log.warn("Unsupported libthrift version, selector metrics not available", e);
+            selectThread = null;
+            pendingCalls = null;
+        }
+        selectThreadField = selectThread;
+        pendingCallsField = pendingCalls;
+    }
+
+    private final String name;
+    private final SharedClientManager manager;
+    private final Thread managerThread;
+    private final Collection<?> pendingCalls;
+    private final LongAdder callbackTimeNanos = new LongAdder();
+    private volatile ThriftPipelinedSelector pipelinedSelector;
+
+    public ThriftAsyncSelector(String name) throws IOException {
+        this.name = name;
+        this.manager = new SharedClientManager();
+        Thread thread = null;
+        Collection<?> calls = null;
+        if (selectThreadField != null) {
+            try {
+                thread = (Thread) selectThreadField.get(manager);
+                thread.setName("{\"async selector\":\"" + name + "\"}");
+                calls = (Collection<?>) pendingCallsField.get(manager);
+            } catch (IllegalAccessException | RuntimeException e) {
+                log.warn("Unable to access selector thread {}", name, e);
+            }
+        }
+        this.managerThread = thread;
+        this.pendingCalls = calls;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return manager shared by ordinary pools, every request use own connection.
+     *         Stop of returned manager not stop selector thread
+     */
+    public TAsyncClientManager getManager() {
+        return manager;
+    }
+
+    /**
+     * @param connectionsPerServer number of TCP connections to one server
+     * @return connections of one pipelined pool on shared pipelined selector
+     */
+    public ThriftPipelinedClientManager createPipelinedManager(int connectionsPerServer) throws IOException {
+        return new ThriftPipelinedClientManager(getPipelinedSelector(), connectionsPerServer);
+    }
+
+    private ThriftPipelinedSelector getPipelinedSelector() throws IOException {
+        ThriftPipelinedSelector selector = pipelinedSelector;
+        if (selector == null) {
+            synchronized (this) {
+                selector = pipelinedSelector;
+                if (selector == null) {
+                    selector = new ThriftPipelinedSelector(name);
+                    pipelinedSelector = selector;
+                }
+            }
+        }
+        return selector;
+    }
+
+    public boolean isRunning() {
+        return manager.isRunning();
+    }
+
+    /**
+     * @return requests submitted to selector, but not yet written to socket
+     */
+    public long getQueueDepth() {
+        long result = pendingCalls == null ? 0 : pendingCalls.size();
+        ThriftPipelinedSelector selector = pipelinedSelector;
+        if (selector != null) {
+            result += selector.getQueueDepth();
+        }
+        return result;
+    }
+
+    /**
+     * @return CPU time consumed by selector threads, -1 if JVM not support thread CPU time
+     */
+    public long getBusyTimeNanos() {
+        if (!threadMXBean.isThreadCpuTimeSupported() || managerThread == null) {
+            return -1;
+        }
+        long result = Math.max(threadMXBean.getThreadCpuTime(managerThread.getId()), 0);
+        ThriftPipelinedSelector selector = pipelinedSelector;
+        if (selector != null) {
+            result += Math.max(threadMXBean.getThreadCpuTime(selector.getThread().getId()), 0);
+        }
+        return result;
+    }
+
+    /**
+     * @return total number of requests submitted to selector
+     */
+    public long getCalls() {
+        long result = manager.calls.get();
+        ThriftPipelinedSelector selector = pipelinedSelector;
+        if (selector != null) {
+            result += selector.getCalls();
+        }
+        return result;
+    }
+
+    /**
+     * @param nanos time spent by response callback in selector thread
+     */
+    public void recordCallbackTime(long nanos) {
+        callbackTimeNanos.add(nanos);
+    }
+
+    /**
+     * @return total time spent by response callbacks in selector threads.
+     *         With completion executor it is time of hand off only
+     */
+    public long getCallbackTimeNanos() {
+        return callbackTimeNanos.sum();
+    }
+
+    @Override
+    public void close() {
+        manager.shutdown();
+        synchronized (this) {
+            if (pipelinedSelector != null) {
+                pipelinedSelector.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static class SharedClientManager extends TAsyncClientManager {
+        private final AtomicLong calls = new AtomicLong();
+
+        SharedClientManager() throws IOException {
+            super();
+        }
+
+        @Override
+        public void call(TAsyncMethodCall method) throws TException {
+            calls.incrementAndGet();
+            super.call(method);
+        }
+
+        /**
+         * Пул не может остановить общий селектор, только ThriftAsyncSelector.close
+         */
+        @Override
+        public void stop() {
+        }
+
+        void shutdown() {
+            super.stop();
+        }
+    }
+}
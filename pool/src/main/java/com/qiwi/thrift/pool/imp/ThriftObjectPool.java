@@ -0,0 +1,41 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.commons.pool2.ObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+/**
+ * Connection pool used by thrift clients.
+ * Contains subset of GenericObjectPool methods, used by ThriftPoolAbstractClient and NodeStatus load accounting
+ * @param <T> pooled object type
+ */
+public interface ThriftObjectPool<T> extends ObjectPool<T> {
+    T borrowObject(long borrowMaxWaitMillis) throws Exception;
+
+    /**
+     * Never create new object and never wait, so can be called in thread what must not block
+     * @return idle object or null if pool has no idle objects
+     */
+    T borrowIdleObject() throws Exception;
+
+    long getMaxWaitMillis();
+
+    int getNumWaiters();
+
+    int getMaxTotal();
+
+    void setMaxTotal(int maxTotal);
+
+    void setMaxIdle(int maxIdle);
+
+    /**
+     * Remove idle objects according to eviction policy and test it if testWhileIdle enabled
+     */
+    void evict() throws Exception;
+
+    /**
+     * Create objects up to minIdle
+     */
+    void preparePool() throws Exception;
+
+    void setConfig(GenericObjectPoolConfig config);
+}
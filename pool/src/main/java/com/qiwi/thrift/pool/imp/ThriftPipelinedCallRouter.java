@@ -0,0 +1,55 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.async.TAsyncMethodCall;
+import org.apache.thrift.transport.TNonblockingTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.io.IOException;
+
+/**
+ * TAsyncClientManager of generated async clients of all pipelined pools on one ThriftPipelinedSelector.
+ * Send call to connection of its ThriftPipelinedChannel.
+ *
+ * Generated clients accept only TAsyncClientManager, and its constructor always starts own select thread.
+ * So router created once per pipelined selector and the thread stopped at once.
+ */
+class ThriftPipelinedCallRouter extends TAsyncClientManager {
+    private final ThriftPipelinedSelector selector;
+
+    ThriftPipelinedCallRouter(ThriftPipelinedSelector selector) throws IOException {
+        super();
+        // Поток селектора thrift не нужен, запросы идут через общий селектор
+        super.stop();
+        this.selector = selector;
+    }
+
+    @Override
+    public void call(TAsyncMethodCall method) throws TException {
+        if (!selector.isRunning()) {
+            throw new TException("Pipelined selector is not running");
+        }
+        TNonblockingTransport transport = AsyncMethodCallAccess.getTransport(method);
+        if (!(transport instanceof ThriftPipelinedChannel)) {
+            throw new TException("Transport " + transport + " not created by ThriftPipelinedClientManager");
+        }
+        ThriftPipelinedChannel channel = (ThriftPipelinedChannel) transport;
+        if (!channel.isOpen()) {
+            throw new TTransportException(TTransportException.NOT_OPEN, "Channel closed " + channel);
+        }
+        channel.getConnection().send(method);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return selector.isRunning();
+    }
+
+    /**
+     * Selector stopped only by ThriftAsyncSelector.close
+     */
+    @Override
+    public void stop() {
+    }
+}
@@ -0,0 +1,86 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.thrift.transport.TNonblockingTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Virtual transport of one pooled async client on top of shared ThriftPipelinedConnection.
+ * Never read or write itself, ThriftPipelinedClientManager send calls directly to connection.
+ * Close only detach client from connection.
+ */
+class ThriftPipelinedChannel extends TNonblockingTransport {
+    private final ThriftPipelinedConnection connection;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    ThriftPipelinedChannel(ThriftPipelinedConnection connection) {
+        this.connection = connection;
+        connection.acquireChannel();
+    }
+
+    ThriftPipelinedConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed.get() && connection.isOpen();
+    }
+
+    @Override
+    public void open() throws TTransportException {
+        throw new TTransportException(TTransportException.NOT_OPEN, "Pipelined channel opened by manager");
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            connection.releaseChannel();
+        }
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+        throw new UnsupportedOperationException("Pipelined channel can't be used directly");
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws TTransportException {
+        throw new UnsupportedOperationException("Pipelined channel can't be used directly");
+    }
+
+    @Override
+    public boolean startConnect() throws IOException {
+        throw new UnsupportedOperationException("Pipelined channel can't be used directly");
+    }
+
+    @Override
+    public boolean finishConnect() throws IOException {
+        throw new UnsupportedOperationException("Pipelined channel can't be used directly");
+    }
+
+    @Override
+    public SelectionKey registerSelector(Selector selector, int interests) throws IOException {
+        throw new UnsupportedOperationException("Pipelined channel can't be used directly");
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        throw new UnsupportedOperationException("Pipelined channel can't be used directly");
+    }
+
+    @Override
+    public int write(ByteBuffer buffer) throws IOException {
+        throw new UnsupportedOperationException("Pipelined channel can't be used directly");
+    }
+
+    @Override
+    public String toString() {
+        return connection.toString();
+    }
+}
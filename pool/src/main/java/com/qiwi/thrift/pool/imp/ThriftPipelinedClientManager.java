@@ -0,0 +1,96 @@
+package com.qiwi.thrift.pool.imp;
+
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.transport.TNonblockingTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Connections of one pipelined pool: requests of many async clients sent through few pipelined connections.
+ * Generated async clients work as usual, but must be created with getClientManager and transport from openChannel.
+ * Created per pool by ThriftAsyncSelector, selector thread shared with other pools.
+ * Connect is non-blocking, so openChannel can be called from any thread.
+ *
+ * Server must answer requests of one connection in order or echo seqid.
+ * Slow request delay all responses after it on same connection.
+ */
+public class ThriftPipelinedClientManager {
+    private final ThriftPipelinedSelector selector;
+    private final int connectionsPerServer;
+    private final List<ThriftPipelinedConnection> connections = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param connectionsPerServer number of TCP connections to one server
+     */
+    ThriftPipelinedClientManager(ThriftPipelinedSelector selector, int connectionsPerServer) {
+        if (connectionsPerServer <= 0) {
+            throw new IllegalArgumentException("connectionsPerServer must be positive");
+        }
+        this.connectionsPerServer = connectionsPerServer;
+        this.selector = selector;
+    }
+
+    /**
+     * Create transport for new async client. Transport share connection with other clients,
+     * new connection opened only if less than connectionsPerServer connections exists
+     */
+    public synchronized TNonblockingTransport openChannel(
+            ThriftClientAddress address,
+            int connectTimeoutMillis,
+            int maxFrameSizeBytes
+    ) throws IOException {
+        ThriftPipelinedConnection best = null;
+        int count = 0;
+        for (ThriftPipelinedConnection connection : connections) {
+            if (!connection.isOpen()) {
+                connections.remove(connection);
+            } else if (!connection.getAddress().equals(address)) {
+                // Адрес сервера поменялся, старые соединения закрываются когда их перестают использовать
+                if (connection.getChannelCount() == 0) {
+                    connection.close(new TTransportException("Server address changed to " + address));
+                    connections.remove(connection);
+                }
+            } else {
+                count++;
+                if (best == null || connection.getChannelCount() < best.getChannelCount()) {
+                    best = connection;
+                }
+            }
+        }
+        if (best == null || (count < connectionsPerServer && best.getChannelCount() > 0)) {
+            best = ThriftPipelinedConnection.connect(address, selector, connectTimeoutMillis, maxFrameSizeBytes);
+            connections.add(best);
+        }
+        return new ThriftPipelinedChannel(best);
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @return manager for generated async clients, shared by all pipelined pools of selector
+     */
+    public TAsyncClientManager getClientManager() {
+        return selector.getCallRouter();
+    }
+
+    public boolean isRunning() {
+        return selector.isRunning();
+    }
+
+    /**
+     * Close connections of this manager, shared selector continue to work
+     */
+    public synchronized void stop() {
+        TTransportException error = new TTransportException(TTransportException.NOT_OPEN, "Client closed");
+        for (ThriftPipelinedConnection connection : connections) {
+            connection.close(error);
+        }
+        connections.clear();
+    }
+}
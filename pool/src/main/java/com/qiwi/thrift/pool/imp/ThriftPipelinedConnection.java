@@ -0,0 +1,436 @@
+package com.qiwi.thrift.pool.imp;
+
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.TAsyncMethodCall;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One TCP connection carrying many framed requests at once.
+ * Requests get connection-local seqid, responses matched to requests by seqid.
+ * Generated async clients always send seqid 0, so seqid rewritten in TCompactProtocol message header:
+ * 0x82, version and type byte, varint seqid.
+ *
+ * Connect, read and write done in ThriftPipelinedSelector thread, requests serialized in caller thread.
+ * Requests sent before connect finished queued and written after it.
+ */
+class ThriftPipelinedConnection {
+    private static final Logger log = LoggerFactory.getLogger(ThriftPipelinedConnection.class);
+
+    private static final byte COMPACT_PROTOCOL_ID = (byte) 0x82;
+    private static final int TYPE_SHIFT_AMOUNT = 5;
+    private static final int ONEWAY = 4;
+    private static final int TRACED_ONEWAY = 7;
+    private static final int SEQID_OFFSET = 2;
+
+    private final ThriftClientAddress address;
+    private final SocketChannel channel;
+    private final ThriftPipelinedSelector selector;
+    private final int maxFrameSizeBytes;
+    private final long connectDeadline;
+
+    private final Map<Integer, PendingCall> pending = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<OutgoingFrame> writeQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicInteger channelCount = new AtomicInteger();
+    private final AtomicBoolean open = new AtomicBoolean(true);
+
+    // Доступны только из потока селектора
+    private SelectionKey key;
+    private boolean connected;
+    private OutgoingFrame currentWrite;
+    private final ByteBuffer sizeBuffer = ByteBuffer.allocate(4);
+    private ByteBuffer bodyBuffer;
+
+    private ThriftPipelinedConnection(
+            ThriftClientAddress address,
+            SocketChannel channel,
+            ThriftPipelinedSelector selector,
+            int maxFrameSizeBytes,
+            boolean connected,
+            long connectDeadline
+    ) {
+        this.address = address;
+        this.channel = channel;
+        this.selector = selector;
+        this.maxFrameSizeBytes = maxFrameSizeBytes;
+        this.connected = connected;
+        this.connectDeadline = connectDeadline;
+    }
+
+    /**
+     * Start non-blocking connect, it finished in selector thread.
+     * @param connectTimeoutMillis 0 - no timeout
+     */
+    static ThriftPipelinedConnection connect(
+            ThriftClientAddress address,
+            ThriftPipelinedSelector selector,
+            int connectTimeoutMillis,
+            int maxFrameSizeBytes
+    ) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            boolean connected = channel.connect(new InetSocketAddress(address.getHost(), address.getPort()));
+            ThriftPipelinedConnection connection = new ThriftPipelinedConnection(
+                    address,
+                    channel,
+                    selector,
+                    maxFrameSizeBytes,
+                    connected,
+                    connectTimeoutMillis > 0 ? System.currentTimeMillis() + connectTimeoutMillis : Long.MAX_VALUE
+            );
+            selector.register(connection);
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public ThriftClientAddress getAddress() {
+        return address;
+    }
+
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    public int getChannelCount() {
+        return channelCount.get();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    void acquireChannel() {
+        channelCount.incrementAndGet();
+    }
+
+    void releaseChannel() {
+        channelCount.decrementAndGet();
+    }
+
+    SocketChannel getSocketChannel() {
+        return channel;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Called in selector thread, when socket is connectable
+     * @return true if connection established
+     */
+    boolean finishConnect() throws IOException {
+        if (!connected && channel.finishConnect()) {
+            connected = true;
+        }
+        return connected;
+    }
+
+    AtomicBoolean getWriteScheduled() {
+        return writeScheduled;
+    }
+
+    /**
+     * Called by TAsyncClientManager.call in caller thread
+     */
+    void send(TAsyncMethodCall<?> call) throws TException {
+        if (!open.get()) {
+            throw new TTransportException(TTransportException.NOT_OPEN, "Connection to " + address + " closed");
+        }
+        byte[] request = AsyncMethodCallAccess.writeRequest(call);
+        int seqid = sequence.incrementAndGet();
+        long timeout = call.getClient().getTimeout();
+        PendingCall pendingCall = new PendingCall(
+                seqid,
+                call,
+                timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE
+        );
+        boolean oneway = isOneway(request);
+        if (!oneway) {
+            pending.put(seqid, pendingCall);
+        }
+        writeQueue.add(new OutgoingFrame(encodeFrame(request, seqid), oneway ? pendingCall : null));
+        selector.onQueued();
+        if (!open.get() && pending.remove(seqid) != null) {
+            throw new TTransportException(TTransportException.NOT_OPEN, "Connection to " + address + " closed");
+        }
+        selector.scheduleWrite(this);
+    }
+
+    /**
+     * @return false if all queued frames written
+     */
+    boolean handleWrite() throws IOException {
+        while (true) {
+            if (currentWrite == null) {
+                currentWrite = writeQueue.poll();
+                if (currentWrite == null) {
+                    return false;
+                }
+                selector.onDequeued();
+            }
+            channel.write(currentWrite.buffer);
+            if (currentWrite.buffer.hasRemaining()) {
+                return true;
+            }
+            if (currentWrite.oneway != null) {
+                currentWrite.oneway.complete(new byte[0]);
+            }
+            currentWrite = null;
+        }
+    }
+
+    boolean hasQueuedWrites() {
+        return currentWrite != null || !writeQueue.isEmpty();
+    }
+
+    void handleRead() throws IOException, TException {
+        while (true) {
+            if (bodyBuffer == null) {
+                if (channel.read(sizeBuffer) < 0) {
+                    throw new EOFException("Connection to " + address + " closed by server");
+                }
+                if (sizeBuffer.hasRemaining()) {
+                    return;
+                }
+                int size = sizeBuffer.getInt(0);
+                sizeBuffer.clear();
+                if (size < 0 || size > maxFrameSizeBytes) {
+                    throw new TTransportException(
+                            TTransportException.CORRUPTED_DATA,
+                            "Frame size " + size + " from " + address + " is out of range"
+                    );
+                }
+                bodyBuffer = ByteBuffer.allocate(size);
+            }
+            if (channel.read(bodyBuffer) < 0) {
+                throw new EOFException("Connection to " + address + " closed by server");
+            }
+            if (bodyBuffer.hasRemaining()) {
+                return;
+            }
+            byte[] body = bodyBuffer.array();
+            bodyBuffer = null;
+            onResponse(body);
+        }
+    }
+
+    private void onResponse(byte[] body) throws TException {
+        int seqid = readSeqid(body);
+        PendingCall call = pending.remove(seqid);
+        if (call == null) {
+            log.debug("Response with seqid {} from {} received after timeout, ignored", seqid, address);
+            return;
+        }
+        call.complete(replaceSeqid(body, 0));
+    }
+
+    void checkTimeouts(long now) {
+        if (!connected && connectDeadline < now) {
+            close(new SocketTimeoutException("Connect to " + address + " timed out"));
+            return;
+        }
+        for (Iterator<PendingCall> iterator = pending.values().iterator(); iterator.hasNext(); ) {
+            PendingCall call = iterator.next();
+            if (call.deadline < now) {
+                iterator.remove();
+                call.fail(new TimeoutException(
+                        "Operation " + call.call.getClass() + " timed out after "
+                                + (now - call.deadline + call.call.getClient().getTimeout()) + " ms"
+                ));
+            }
+        }
+    }
+
+    /**
+     * Close socket and fail all requests in flight
+     */
+    void close(Exception cause) {
+        if (!open.compareAndSet(true, false)) {
+            return;
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Unable to close connection to {}", address, e);
+        }
+        TTransportException error = new TTransportException(
+                TTransportException.NOT_OPEN,
+                "Connection to " + address + " closed",
+                cause
+        );
+        for (Iterator<PendingCall> iterator = pending.values().iterator(); iterator.hasNext(); ) {
+            PendingCall call = iterator.next();
+            iterator.remove();
+            call.fail(error);
+        }
+        OutgoingFrame frame;
+        while ((frame = writeQueue.poll()) != null) {
+            selector.onDequeued();
+            if (frame.oneway != null) {
+                frame.oneway.fail(error);
+            }
+        }
+    }
+
+    static boolean isOneway(byte[] message) throws TProtocolException {
+        checkHeader(message);
+        int type = (message[1] >> TYPE_SHIFT_AMOUNT) & 0x07;
+        return type == ONEWAY || type == TRACED_ONEWAY;
+    }
+
+    static int readSeqid(byte[] message) throws TProtocolException {
+        checkHeader(message);
+        int result = 0;
+        int shift = 0;
+        for (int i = SEQID_OFFSET; i < message.length && shift < 35; i++) {
+            byte b = message[i];
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+        throw new TProtocolException(TProtocolException.INVALID_DATA, "Invalid seqid varint");
+    }
+
+    /**
+     * @return message with seqid replaced, original array not modified
+     */
+    static byte[] replaceSeqid(byte[] message, int seqid) throws TProtocolException {
+        return writeMessage(message, seqid, 0);
+    }
+
+    /**
+     * @return frame size and message with seqid replaced
+     */
+    static ByteBuffer encodeFrame(byte[] message, int seqid) throws TProtocolException {
+        byte[] frame = writeMessage(message, seqid, 4);
+        int size = frame.length - 4;
+        frame[0] = (byte) (size >>> 24);
+        frame[1] = (byte) (size >>> 16);
+        frame[2] = (byte) (size >>> 8);
+        frame[3] = (byte) size;
+        return ByteBuffer.wrap(frame);
+    }
+
+    private static byte[] writeMessage(byte[] message, int seqid, int offset) throws TProtocolException {
+        checkHeader(message);
+        int oldSeqidEnd = SEQID_OFFSET;
+        while (oldSeqidEnd < message.length && (message[oldSeqidEnd] & 0x80) != 0) {
+            oldSeqidEnd++;
+        }
+        oldSeqidEnd++;
+        if (oldSeqidEnd > message.length) {
+            throw new TProtocolException(TProtocolException.INVALID_DATA, "Invalid seqid varint");
+        }
+        byte[] varint = new byte[5];
+        int varintSize = 0;
+        int n = seqid;
+        while ((n & ~0x7F) != 0) {
+            varint[varintSize++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        varint[varintSize++] = (byte) n;
+
+        byte[] result = new byte[offset + SEQID_OFFSET + varintSize + message.length - oldSeqidEnd];
+        System.arraycopy(message, 0, result, offset, SEQID_OFFSET);
+        System.arraycopy(varint, 0, result, offset + SEQID_OFFSET, varintSize);
+        System.arraycopy(
+                message,
+                oldSeqidEnd,
+                result,
+                offset + SEQID_OFFSET + varintSize,
+                message.length - oldSeqidEnd
+        );
+        return result;
+    }
+
+    private static void checkHeader(byte[] message) throws TProtocolException {
+        if (message.length <= SEQID_OFFSET || message[0] != COMPACT_PROTOCOL_ID) {
+            throw new TProtocolException(
+                    TProtocolException.BAD_VERSION,
+                    "Pipelining supported only with TCompactProtocol"
+            );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{\"pipelined connection\":\"" + address + "\", \"pending\":" + pending.size() + "}";
+    }
+
+    private static class PendingCall {
+        private final int seqid;
+        private final TAsyncMethodCall<?> call;
+        private final long deadline;
+
+        PendingCall(int seqid, TAsyncMethodCall<?> call, long deadline) {
+            this.seqid = seqid;
+            this.call = call;
+            this.deadline = deadline;
+        }
+
+        void complete(byte[] response) {
+            try {
+                AsyncMethodCallAccess.complete(call, response);
+            } catch (Throwable e) {
+                log.error("Callback of request {} failed", seqid, e);
+            }
+        }
+
+        void fail(Exception error) {
+            try {
+                AsyncMethodCallAccess.fail(call, error);
+            } catch (Throwable e) {
+                log.error("Error callback of request {} failed", seqid, e);
+            }
+        }
+    }
+
+    private static class OutgoingFrame {
+        private final ByteBuffer buffer;
+        private final PendingCall oneway;
+
+        OutgoingFrame(ByteBuffer buffer, PendingCall oneway) {
+            this.buffer = buffer;
+            this.oneway = oneway;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Selector thread of pipelined connections. Shared by pipelined managers of many pools.
+ */
+class ThriftPipelinedSelector implements Runnable, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ThriftPipelinedSelector.class);
+
+    private static final long TIMEOUT_CHECK_PERIOD_MILLIS = 10;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final ThriftPipelinedCallRouter callRouter;
+    private final ConcurrentLinkedQueue<ThriftPipelinedConnection> registrations = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ThriftPipelinedConnection> writes = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private volatile boolean running = true;
+
+    ThriftPipelinedSelector(String name) throws IOException {
+        selector = Selector.open();
+        callRouter = new ThriftPipelinedCallRouter(this);
+        thread = new Thread(this, "{\"pipelined selector\":\"" + name + "\"}");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isRunning() {
+        return running && thread.isAlive();
+    }
+
+    Thread getThread() {
+        return thread;
+    }
+
+    TAsyncClientManager getCallRouter() {
+        return callRouter;
+    }
+
+    /**
+     * @return number of requests waiting to be written to socket
+     */
+    long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    long getCalls() {
+        return calls.get();
+    }
+
+    void onQueued() {
+        calls.incrementAndGet();
+        queueDepth.incrementAndGet();
+    }
+
+    void onDequeued() {
+        queueDepth.decrementAndGet();
+    }
+
+    void register(ThriftPipelinedConnection connection) throws IOException {
+        if (!running) {
+            throw new ClosedChannelException();
+        }
+        registrations.add(connection);
+        selector.wakeup();
+    }
+
+    void scheduleWrite(ThriftPipelinedConnection connection) {
+        if (connection.getWriteScheduled().compareAndSet(false, true)) {
+            writes.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextTimeoutCheck = System.currentTimeMillis() + TIMEOUT_CHECK_PERIOD_MILLIS;
+        try {
+            while (running) {
+                selector.select(TIMEOUT_CHECK_PERIOD_MILLIS);
+                processRegistrations();
+                processWrites();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ThriftPipelinedConnection connection = (ThriftPipelinedConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable()) {
+                            finishConnect(connection);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.handleRead();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    } catch (Exception e) {
+                        log.warn("Pipelined connection to {} failed", connection.getAddress(), e);
+                        connection.close(e);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextTimeoutCheck) {
+                    nextTimeoutCheck = now + TIMEOUT_CHECK_PERIOD_MILLIS;
+                    for (SelectionKey key : selector.keys()) {
+                        ((ThriftPipelinedConnection) key.attachment()).checkTimeouts(now);
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            log.error("Pipelined selector stopped unexpectedly", e);
+        } finally {
+            running = false;
+            closeAll();
+        }
+    }
+
+    private void processRegistrations() {
+        ThriftPipelinedConnection connection;
+        while ((connection = registrations.poll()) != null) {
+            try {
+                int ops = connection.isConnected() ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT;
+                connection.setKey(connection.getSocketChannel().register(selector, ops, connection));
+            } catch (IOException e) {
+                connection.close(e);
+            }
+        }
+    }
+
+    private void processWrites() {
+        ThriftPipelinedConnection connection;
+        while ((connection = writes.poll()) != null) {
+            if (!connection.isOpen()) {
+                continue;
+            }
+            if (connection.getKey() != null && !connection.isConnected()) {
+                // Очередь будет записана в finishConnect
+                continue;
+            }
+            if (connection.getKey() == null) {
+                // Ещё не зарегистрирован, попробуем на следующей итерации
+                writes.add(connection);
+                return;
+            }
+            try {
+                write(connection);
+            } catch (Exception e) {
+                log.warn("Pipelined connection to {} failed", connection.getAddress(), e);
+                connection.close(e);
+            }
+        }
+    }
+
+    private void finishConnect(ThriftPipelinedConnection connection) throws IOException {
+        if (!connection.finishConnect()) {
+            return;
+        }
+        connection.getKey().interestOps(SelectionKey.OP_READ);
+        if (connection.hasQueuedWrites()) {
+            write(connection);
+        }
+    }
+
+    private void write(ThriftPipelinedConnection connection) throws IOException {
+        SelectionKey key = connection.getKey();
+        if (!key.isValid()) {
+            return;
+        }
+        while (true) {
+            if (connection.handleWrite()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            connection.getWriteScheduled().set(false);
+            // Запрос мог быть добавлен после опустошения очереди, но до сброса флага
+            if (!connection.hasQueuedWrites() || !connection.getWriteScheduled().compareAndSet(false, true)) {
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+        }
+    }
+
+    private void closeAll() {
+        TTransportException error = new TTransportException(TTransportException.NOT_OPEN, "Client closed");
+        ThriftPipelinedConnection connection;
+        while ((connection = registrations.poll()) != null) {
+            connection.close(error);
+        }
+        for (SelectionKey key : selector.keys()) {
+            ((ThriftPipelinedConnection) key.attachment()).close(error);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Unable to close selector", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+}
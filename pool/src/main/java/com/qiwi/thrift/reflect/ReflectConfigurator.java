@@ -102,6 +102,13 @@ public class ReflectConfigurator {
         return new SyncClientClassInfo<I, T>(thriftInterface, clientFactory, validator);
     }
 
+    /**
+     * @return dispatcher for sync proxies of thriftInterface. Created once per interface
+     */
+    public <I> SyncClientDispatcher createSyncDispatcher(Class<I> thriftInterface) {
+        return SyncClientDispatcher.of(thriftInterface);
+    }
+
     public <I, T extends TAsyncClient> AsyncClientClassInfo<I, T> createAsync(Class<I> thriftInterface){
         Class<?> root = thriftInterface.getDeclaringClass();
         if (!"AsyncIface".equals(thriftInterface.getSimpleName()) || root == null){
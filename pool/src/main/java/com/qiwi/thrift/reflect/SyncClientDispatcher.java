@@ -0,0 +1,133 @@
+package com.qiwi.thrift.reflect;
+
+import com.qiwi.thrift.utils.ThriftUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Map methods of sync interface proxy to precomputed method handles of generated thrift Client.
+ * Created once per interface, so proxy invocation handlers do not use Method.invoke and string switch.
+ */
+public class SyncClientDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(SyncClientDispatcher.class);
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private static final ClassValue<SyncClientDispatcher> dispatchers = new ClassValue<SyncClientDispatcher>() {
+        @Override
+        protected SyncClientDispatcher computeValue(Class<?> type) {
+            return new SyncClientDispatcher(type);
+        }
+    };
+
+    private final Class<?> interfaceClass;
+    private final Class<?> clientClass;
+    private final ConcurrentMap<Method, SyncMethodInfo> methods = new ConcurrentHashMap<>();
+    private final AtomicInteger methodCount = new AtomicInteger();
+
+    private SyncClientDispatcher(Class<?> interfaceClass) {
+        this.interfaceClass = interfaceClass;
+        this.clientClass = findClientClass(interfaceClass);
+        Method[] interfaceMethods = interfaceClass.getMethods();
+        Arrays.sort(interfaceMethods, Comparator.comparing(Method::getName));
+        for (Method method : interfaceMethods) {
+            methods.computeIfAbsent(method, this::resolve);
+        }
+        try {
+            methods.computeIfAbsent(Closeable.class.getMethod("close"), this::resolve);
+            methods.computeIfAbsent(Object.class.getMethod("toString"), this::resolve);
+            methods.computeIfAbsent(Object.class.getMethod("hashCode"), this::resolve);
+            methods.computeIfAbsent(Object.class.getMethod("equals", Object.class), this::resolve);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Object methods not found, JVM error?", e);
+        }
+    }
+
+    public static SyncClientDispatcher of(Class<?> interfaceClass) {
+        return dispatchers.get(interfaceClass);
+    }
+
+    public Class<?> getInterfaceClass() {
+        return interfaceClass;
+    }
+
+    /**
+     * @param method method received by proxy InvocationHandler
+     */
+    public SyncMethodInfo get(Method method) {
+        SyncMethodInfo info = methods.get(method);
+        if (info == null) {
+            info = methods.computeIfAbsent(method, this::resolve);
+        }
+        return info;
+    }
+
+    private SyncMethodInfo resolve(Method method) {
+        int id = methodCount.getAndIncrement();
+        String name = method.getName();
+        int parameterCount = method.getParameterCount();
+        if (parameterCount == 0) {
+            switch (name) {
+                case "toString":
+                    return new SyncMethodInfo(id, name, SyncMethodInfo.Kind.TO_STRING, null);
+                case "close":
+                    return new SyncMethodInfo(id, name, SyncMethodInfo.Kind.CLOSE, null);
+                case "hashCode":
+                    return new SyncMethodInfo(id, name, SyncMethodInfo.Kind.HASH_CODE, null);
+            }
+        } else if (parameterCount == 1 && "equals".equals(name)) {
+            return new SyncMethodInfo(id, name, SyncMethodInfo.Kind.EQUALS, null);
+        }
+        return new SyncMethodInfo(id, name, SyncMethodInfo.Kind.THRIFT_CALL, createInvoker(method));
+    }
+
+    private MethodHandle createInvoker(Method method) {
+        MethodHandle handle = null;
+        if (clientClass != null) {
+            try {
+                handle = ReflectConfigurator.lookup.findVirtual(
+                        clientClass,
+                        method.getName(),
+                        MethodType.methodType(method.getReturnType(), method.getParameterTypes())
+                );
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                log.debug("Method {} not found in {}, use interface method", method, clientClass.getName(), e);
+            }
+        }
+        try {
+            if (handle == null) {
+                handle = ReflectConfigurator.lookup.unreflect(method);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Method " + method + " is not accessible", e);
+        }
+        return handle
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(INVOKER_TYPE);
+    }
+
+    private static Class<?> findClientClass(Class<?> interfaceClass) {
+        Class<?> root = interfaceClass.getDeclaringClass();
+        if (root == null) {
+            return null;
+        }
+        try {
+            Class<?> clientClass = ThriftUtils.getClassByName(root, "Client");
+            return interfaceClass.isAssignableFrom(clientClass) ? clientClass : null;
+        } catch (IllegalArgumentException e) {
+            log.debug("Class {} has no generated Client", interfaceClass.getName(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.qiwi.thrift.reflect;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Method of sync thrift interface, resolved once per interface by SyncClientDispatcher
+ */
+public class SyncMethodInfo {
+    public enum Kind {
+        THRIFT_CALL,
+        TO_STRING,
+        HASH_CODE,
+        EQUALS,
+        CLOSE,
+    }
+
+    private final int id;
+    private final String name;
+    private final Kind kind;
+    /**
+     * (Object client, Object[] args)Object
+     */
+    private final MethodHandle invoker;
+
+    SyncMethodInfo(int id, String name, Kind kind, MethodHandle invoker) {
+        this.id = id;
+        this.name = name;
+        this.kind = kind;
+        this.invoker = invoker;
+    }
+
+    /**
+     * @return method number, unique inside interface
+     */
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Call method on thrift client without reflection.
+     * Exceptions thrown by client rethrown as is, without InvocationTargetException wrapping
+     * @param client generated thrift Client
+     * @param args method arguments, null if method has no arguments
+     */
+    public Object invoke(Object client, Object[] args) throws Throwable {
+        if (invoker == null) {
+            throw new UnsupportedOperationException("Method " + name + " can't be called on thrift client");
+        }
+        return (Object) invoker.invokeExact(client, args);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
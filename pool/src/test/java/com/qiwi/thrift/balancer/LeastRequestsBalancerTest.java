@@ -0,0 +1,78 @@
+package com.qiwi.thrift.balancer;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@SuppressWarnings("MagicNumber")
+public class LeastRequestsBalancerTest {
+    @Test(groups = "unit")
+    public void get() throws Exception {
+        Map<String, Long> requests = new HashMap<>();
+        requests.put("Node-0000", 0L);
+        requests.put("Node-0001", 5L);
+        requests.put("Node-0002", 1L);
+        List<String> nodes = Arrays.asList("Node-0000", "Node-0001", "Node-0002");
+        Random random = new Random(72049230523L);
+        LeastRequestsBalancer<String> balancer = new LeastRequestsBalancer<>(
+                nodes,
+                requests::get,
+                Balancer.empty(),
+                random::nextInt
+        );
+
+        Map<String, Integer> selected = new HashMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            selected.merge(balancer.get().get(), 1, Integer::sum);
+        }
+        // Нода с наибольшим числом запросов проигрывает любой другой
+        assertFalse(selected.containsKey("Node-0001"));
+        // Node-0000 выигрывает в двух парах из трех, Node-0002 в одной
+        assertEquals(selected.get("Node-0000"), 20_000, 600);
+        assertEquals(selected.get("Node-0002"), 10_000, 600);
+    }
+
+    @Test(groups = "unit")
+    public void getFromSmallRing() throws Exception {
+        LeastRequestsBalancer<String> empty = new LeastRequestsBalancer<>(
+                Collections.emptyList(),
+                node -> 0,
+                Balancer.empty()
+        );
+        assertFalse(empty.get().isPresent());
+        LeastRequestsBalancer<String> single = new LeastRequestsBalancer<>(
+                Collections.singletonList("Node-0000"),
+                node -> 0,
+                Balancer.empty()
+        );
+        assertEquals(single.get().get(), "Node-0000");
+    }
+
+    @Test(groups = "unit")
+    @SuppressWarnings("unchecked")
+    public void delegate() throws Exception {
+        Balancer<String> delegate = mock(Balancer.class);
+        when(delegate.nodes()).thenAnswer(invocation -> Arrays.asList("Node-0000", "Node-0001").stream());
+        LeastRequestsBalancer<String> balancer = new LeastRequestsBalancer<>(
+                Arrays.asList("Node-0000", "Node-0001"),
+                node -> 0,
+                delegate
+        );
+        balancer.reBalance();
+        verify(delegate).reBalance();
+        assertTrue(balancer.nodes().collect(Collectors.toList()).contains("Node-0001"));
+    }
+}
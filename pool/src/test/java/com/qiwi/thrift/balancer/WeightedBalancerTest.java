@@ -145,4 +145,29 @@ public class WeightedBalancerTest {
         );
     }
 
+    @Test(groups = "unit")
+    public void samplingDistribution() throws Exception {
+        int nodesCount = 5;
+        int requestCount = 1_000_000;
+        List<String> nodesNames = ConsistentHashTest.genNodesName(nodesCount);
+        for (WeightedBalancer.Sampling sampling : WeightedBalancer.Sampling.values()) {
+            random = new Random(72049230523L);
+            // Вес ноды Node-000i равен i + 1
+            WeightedBalancer<String> balancer = new WeightedBalancer<>(
+                    nodesNames,
+                    name -> nodesNames.indexOf(name) + 1,
+                    () -> random.nextDouble(),
+                    sampling
+            );
+            Map<String, AtomicLong> map = new HashMap<>(nodesCount);
+            for (int i = 0; i < requestCount; i++) {
+                map.computeIfAbsent(balancer.get().get(), t -> new AtomicLong()).incrementAndGet();
+            }
+            for (int i = 0; i < nodesCount; i++) {
+                double expected = requestCount * (i + 1) / 15.0;
+                long actual = map.get(nodesNames.get(i)).get();
+                assertEquals(actual, expected, expected * 0.02, sampling + " " + nodesNames.get(i));
+            }
+        }
+    }
 }
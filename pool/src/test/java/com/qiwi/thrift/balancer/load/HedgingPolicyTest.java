@@ -0,0 +1,135 @@
+package com.qiwi.thrift.balancer.load;
+
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@SuppressWarnings("MagicNumber")
+public class HedgingPolicyTest {
+
+    private static HedgingPolicy createPolicy(Duration delay, double budgetRatio) {
+        HedgingPolicy policy = new HedgingPolicy();
+        policy.reconfigure(new ThriftBalancerConfig.Builder(ThriftBalancerConfig.MethodOfFailureHandling.CIRCUIT_BREAK)
+                .setServers(new ArrayList<>())
+                .setHedgedMethods(Collections.singleton("request"))
+                .setHedgeDelay(delay)
+                .setHedgeBudgetRatio(budgetRatio)
+                .build());
+        return policy;
+    }
+
+    @Test(groups = "unit")
+    public void hedgedResponseUsed() throws Exception {
+        HedgingPolicy policy = createPolicy(Duration.ofMillis(10), 1.0);
+        assertTrue(policy.isHedged("request"));
+        assertFalse(policy.isHedged("other"));
+
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        List<String> nodes = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<String> result = policy.execute(
+                "first",
+                () -> Optional.of("second"),
+                (node, hedged) -> {
+                    nodes.add(node);
+                    return hedged ? CompletableFuture.completedFuture(node) : primary;
+                }
+        );
+
+        assertEquals(result.get(5, TimeUnit.SECONDS), "second");
+        assertEquals(nodes, Arrays.asList("first", "second"));
+        assertEquals(policy.getHedgedCount(), 1);
+        primary.complete("first");
+        assertEquals(result.get(), "second");
+    }
+
+    @Test(groups = "unit")
+    public void budgetLimitHedging() throws Exception {
+        HedgingPolicy policy = createPolicy(Duration.ofMillis(1), 0.05);
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<String> result = policy.execute(
+                    "first",
+                    () -> Optional.of("second"),
+                    (node, hedged) -> hedged
+                            ? CompletableFuture.completedFuture(node)
+                            : CompletableFuture.supplyAsync(() -> {
+                                sleep(20);
+                                return node;
+                            })
+            );
+            assertEquals(result.get(5, TimeUnit.SECONDS), "first");
+        }
+        assertEquals(policy.getHedgedCount(), 0);
+    }
+
+    @Test(groups = "unit")
+    public void errorWaitOtherResponse() throws Exception {
+        HedgingPolicy policy = createPolicy(Duration.ofMillis(5), 1.0);
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        CompletableFuture<String> result = policy.execute(
+                "first",
+                () -> Optional.of("second"),
+                (node, hedged) -> hedged ? second : primary
+        );
+        while (policy.getHedgedCount() == 0) {
+            Thread.sleep(1);
+        }
+        primary.completeExceptionally(new IllegalStateException("Node failed"));
+        assertFalse(result.isDone());
+        second.complete("second");
+        assertEquals(result.get(), "second");
+    }
+
+    @Test(groups = "unit")
+    public void blockingFirstSuccessUsed() throws Throwable {
+        HedgingPolicy policy = createPolicy(Duration.ofMillis(5), 1.0);
+        CountDownLatch primaryRelease = new CountDownLatch(1);
+        try {
+            String result = policy.executeBlocking(
+                    "first",
+                    () -> Optional.of("second"),
+                    (node, hedged) -> {
+                        if (!hedged) {
+                            // Медленный основной запрос не задерживает ответ
+                            primaryRelease.await(5, TimeUnit.SECONDS);
+                        }
+                        return node;
+                    }
+            );
+            assertEquals(result, "second");
+            assertEquals(policy.getHedgedCount(), 1);
+        } finally {
+            primaryRelease.countDown();
+        }
+    }
+
+    @Test(groups = "unit")
+    public void delayFromPercentile() throws Exception {
+        HedgingPolicy policy = createPolicy(Duration.ZERO, 0.05);
+        assertEquals(policy.getDelayNanos(), -1);
+        for (int i = 1; i <= 128; i++) {
+            policy.recordLatency(i);
+        }
+        assertEquals(policy.getDelayNanos(), 122);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -26,7 +26,7 @@ public class StatsSlidingWindowTest {
         slidingWindow.getCurrent()
                 .requestEnd(ThriftRequestStatus.SUCCESS, 40);
 
-        StatsSlidingWindow.Bucket stat = slidingWindow.getStat();
+        StatsSlidingWindow.Stat stat = slidingWindow.getStat();
         assertEquals(stat.getRequestEndCount(1), 2);
         assertEquals(stat.getRequestLatencyNanos(1), 30.0, 0.001);
         assertEquals(stat.getErrorRatio(1), 0.0, 0.001);
@@ -93,13 +93,39 @@ public class StatsSlidingWindowTest {
     }
 
 
+    @Test(groups = "unit")
+    public void latencyPercentiles() throws Exception {
+        Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        TestClock clock = new TestClock();
+        clock.setCurrentTime(start);
+        StatsSlidingWindow slidingWindow = new StatsSlidingWindow(Duration.ofSeconds(1), 10, clock);
+
+        for (int i = 0; i < 98; i++) {
+            slidingWindow.getCurrent().requestBegin();
+            slidingWindow.getCurrent().requestEnd(ThriftRequestStatus.SUCCESS, TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        clock.setCurrentTime(start.plusSeconds(1));
+        // Редкие паузы почти не меняют среднее, но видны в p99
+        for (int i = 0; i < 2; i++) {
+            slidingWindow.getCurrent().requestBegin();
+            slidingWindow.getCurrent().requestEnd(ThriftRequestStatus.SUCCESS, TimeUnit.MILLISECONDS.toNanos(1000));
+        }
+        clock.setCurrentTime(start.plusSeconds(2));
+
+        StatsSlidingWindow.Stat stat = slidingWindow.getStat(2);
+        assertEquals(stat.getLatencyPercentileNanos(0.5), TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(10) / 8);
+        assertEquals(stat.getLatencyPercentileNanos(0.99), TimeUnit.MILLISECONDS.toNanos(1000), TimeUnit.MILLISECONDS.toNanos(1000) / 8);
+        assertEquals(stat.getLoad(10, 0), 0.1515, 0.001);
+        assertEquals(stat.getLoad(10, 0, 0.99), 5.0, 0.7);
+    }
+
     @Test(groups = "unit")
     public void reset() throws Exception {
         StatsSlidingWindow slidingWindow = new StatsSlidingWindow(Duration.ofSeconds(1), 10);
         slidingWindow.getCurrent().requestEnd(ThriftRequestStatus.SUCCESS, 20);
         slidingWindow.getCurrent().requestEnd(ThriftRequestStatus.SUCCESS, 40);
         slidingWindow.reset();
-        StatsSlidingWindow.Bucket bucket = slidingWindow.getStat();
+        StatsSlidingWindow.Stat bucket = slidingWindow.getStat();
         assertEquals(bucket.getRequestEndCount(0), 0);
     }
 }
@@ -0,0 +1,129 @@
+package com.qiwi.thrift.pool;
+
+import com.qiwi.thrift.demo.DemoThriftServer;
+import com.qiwi.thrift.demo.ServerImp;
+import com.qiwi.thrift.pool.server.DemoServer;
+import com.qiwi.thrift.pool.types.MapResult;
+import com.qiwi.thrift.pool.types.Status;
+import com.qiwi.thrift.reflect.ReflectConfigurator;
+import com.qiwi.thrift.server.ThriftEndpointConfig;
+import com.qiwi.thrift.test.TestUtils;
+import com.qiwi.thrift.tracing.ThriftRequestReporter;
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import org.apache.thrift.TException;
+import org.testng.annotations.Test;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@SuppressWarnings("MagicNumber")
+public class ServerDrainTest {
+    @Test(groups = "unit")
+    public void requestInFlightCompleted() throws Exception {
+        int thriftPort = TestUtils.genThriftPort();
+        CountDownLatch started = new CountDownLatch(1);
+        DemoThriftServer server = createServer(thriftPort, started);
+        DemoServer.Iface client = createClient(thriftPort);
+        try {
+            CompletableFuture<MapResult> response = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return client.request("test", 1);
+                } catch (TException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(server.getInFlightRequests(), Collections.singletonMap("DemoServer", 1));
+
+            server.stopServer();
+
+            assertEquals(response.get(5, TimeUnit.SECONDS).getStatus(), Status.OK);
+            assertEquals(server.getInFlightRequests(), Collections.emptyMap());
+        } finally {
+            ((Closeable) client).close();
+            server.stopServer();
+        }
+    }
+
+    @Test(groups = "unit")
+    public void idleConnectionClosed() throws Exception {
+        int thriftPort = TestUtils.genThriftPort();
+        CountDownLatch started = new CountDownLatch(1);
+        DemoThriftServer server = createServer(thriftPort, started);
+        DemoServer.Iface idleClient = createClient(thriftPort);
+        DemoServer.Iface client = createClient(thriftPort);
+        try {
+            // Соединение остаётся в пуле клиента
+            idleClient.healthCheck();
+            CompletableFuture<MapResult> response = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return client.request("test", 1);
+                } catch (TException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Void> stop = CompletableFuture.runAsync(server::stopServer);
+            Thread.sleep(100);
+
+            // Запрос по открытому соединению не продлевает drain
+            try {
+                idleClient.healthCheck();
+                fail("Idle connection must be closed on drain");
+            } catch (TException | RuntimeException expected) {
+            }
+            assertEquals(response.get(5, TimeUnit.SECONDS).getStatus(), Status.OK);
+            stop.get(5, TimeUnit.SECONDS);
+        } finally {
+            ((Closeable) idleClient).close();
+            ((Closeable) client).close();
+            server.stopServer();
+        }
+    }
+
+    private static DemoThriftServer createServer(int thriftPort, CountDownLatch started) throws Exception {
+        Properties serverConfig = new Properties();
+        serverConfig.put("thrift.test.server.port", "" + thriftPort);
+        serverConfig.put("thrift.test.server.drain_timeout_ms", "5000");
+        DemoThriftServer server = new DemoThriftServer(serverConfig, mock(ThriftRequestReporter.class)) {
+            @Override
+            public ThriftEndpointConfig createEndpointConfig() {
+                return new ThriftEndpointConfig.Builder()
+                        .addEndpoint(DemoServer.Iface.class, new ServerImp() {
+                            @Override
+                            public MapResult request(String text, long id) throws TException {
+                                started.countDown();
+                                try {
+                                    Thread.sleep(300);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                                return super.request(text, id);
+                            }
+                        })
+                        .build();
+            }
+        };
+        server.startServer();
+        server.awaitStart();
+        return server;
+    }
+
+    private static DemoServer.Iface createClient(int thriftPort) {
+        return new SyncClientFactory(new ReflectConfigurator()).create(
+                DemoServer.Iface.class,
+                new ThriftClientConfig.Builder()
+                        .setAddress(ThriftClientAddress.parse("127.0.0.1:" + thriftPort))
+                        .build()
+        );
+    }
+}
@@ -0,0 +1,81 @@
+package com.qiwi.thrift.pool;
+
+import com.qiwi.thrift.demo.DemoThriftServer;
+import com.qiwi.thrift.demo.ServerImp;
+import com.qiwi.thrift.metrics.ThriftCallType;
+import com.qiwi.thrift.pool.server.DemoServer;
+import com.qiwi.thrift.pool.types.Status;
+import com.qiwi.thrift.reflect.ReflectConfigurator;
+import com.qiwi.thrift.server.ThriftClientStatistic;
+import com.qiwi.thrift.server.ThriftEndpointConfig;
+import com.qiwi.thrift.test.TestUtils;
+import com.qiwi.thrift.tracing.ThriftRequestReporter;
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import com.qiwi.thrift.utils.ThriftRequestStatus;
+import org.testng.annotations.Test;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@SuppressWarnings("MagicNumber")
+public class ThreadPerConnectionServerTest {
+    @Test(groups = "unit")
+    public void request() throws Exception {
+        int thriftPort = TestUtils.genThriftPort();
+        Properties serverConfig = new Properties();
+        serverConfig.put("thrift.test.server.port", "" + thriftPort);
+        serverConfig.put("thrift.test.server.pool_size", "4");
+        serverConfig.put("thrift.test.server.server_engine", "THREAD_PER_CONNECTION");
+        ThriftRequestReporter serverReporter = mock(ThriftRequestReporter.class);
+        DemoThriftServer server = new DemoThriftServer(serverConfig, serverReporter) {
+            @Override
+            public ThriftEndpointConfig createEndpointConfig() {
+                return new ThriftEndpointConfig.Builder()
+                        .addEndpoint(DemoServer.Iface.class, new ServerImp())
+                        .build();
+            }
+        };
+        server.startServer();
+        try {
+            server.awaitStart();
+            DemoServer.Iface client = new SyncClientFactory(new ReflectConfigurator()).create(
+                    DemoServer.Iface.class,
+                    new ThriftClientConfig.Builder()
+                            .setAddress(ThriftClientAddress.parse("127.0.0.1:" + thriftPort))
+                            .build()
+            );
+            try {
+                assertEquals(client.request("test", 1).getStatus(), Status.OK);
+                assertEquals(client.request("test", 2).getStatus(), Status.OK);
+            } finally {
+                ((Closeable) client).close();
+            }
+            verify(serverReporter, times(2)).requestEnd(
+                    eq("DemoServer"),
+                    eq("request"),
+                    eq(ThriftCallType.SERVER),
+                    eq(ThriftRequestStatus.SUCCESS),
+                    anyLong(),
+                    eq(Optional.empty())
+            );
+            List<ThriftClientStatistic> clients = new ArrayList<>(server.getClientStatistics());
+            assertEquals(clients.size(), 1);
+            assertEquals(clients.get(0).getClientAddress(), "/127.0.0.1");
+            // Запросы проверки соединения пулом тоже учитываются
+            assertTrue(clients.get(0).getRequests() >= 2);
+        } finally {
+            server.stopServer();
+        }
+    }
+}
@@ -24,8 +24,10 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
@@ -198,4 +200,65 @@ public class ThriftAsyncClientIntegrationTest extends AbstractThriftServerTest {
         assertEquals(result.data, Collections.singletonMap("test", 24L));
         assertEquals(result.getStatus(), Status.OK);
     }
+
+    @Test(groups = "unit")
+    public void pipelinedRequests() throws Exception {
+        AsyncClientFactory poolFactory = new AsyncClientFactory(new ReflectConfigurator());
+        ThriftAsyncClient<DemoServer.AsyncIface> pipelined = poolFactory.create(
+                DemoServer.AsyncIface.class,
+                new ThriftClientConfig.Builder()
+                        .fromParameters(parameterSource)
+                        .setPipelinedConnections(1)
+                        .setMaxConnections(32)
+                        .setConnectTimeout(Duration.ofSeconds(5))
+                        .build()
+        );
+        try {
+            List<CompletableFuture<MapResult>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                long id = i;
+                futures.add(pipelined.execAsync(
+                        MapResult.class,
+                        (client, callback) -> client.requestWithMap(Collections.singletonMap("test", id), id, callback)
+                ));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                MapResult result = futures.get(i).get();
+                assertEquals(result.getStatus(), Status.OK);
+                assertEquals(result.data, Collections.singletonMap("test", (long) i));
+            }
+        } finally {
+            pipelined.close();
+        }
+    }
+
+    @Test(groups = "unit")
+    public void waitQueue() throws Exception {
+        AsyncClientFactory poolFactory = new AsyncClientFactory(new ReflectConfigurator());
+        ThriftAsyncClient<DemoServer.AsyncIface> queued = poolFactory.create(
+                DemoServer.AsyncIface.class,
+                new ThriftClientConfig.Builder()
+                        .fromParameters(parameterSource)
+                        .setMaxConnections(1)
+                        .setAsyncWaitQueueSize(2)
+                        .setConnectTimeout(Duration.ofSeconds(5))
+                        .build()
+        );
+        try {
+            // loadTest отвечает через 50 мс, первый запрос занимает единственный коннект
+            List<CompletableFuture<Status>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(queued.execAsync(Status.class, (client, callback) -> client.loadTest(callback)));
+            }
+            assertEquals(queued.getNumWaiters(), 2);
+            CompletableFuture<Status> rejected = futures.remove(3);
+            assertTrue(rejected.isCompletedExceptionally());
+            for (CompletableFuture<Status> future : futures) {
+                assertEquals(future.get(), Status.OK);
+            }
+            assertEquals(queued.getNumWaiters(), 0);
+        } finally {
+            queued.close();
+        }
+    }
 }
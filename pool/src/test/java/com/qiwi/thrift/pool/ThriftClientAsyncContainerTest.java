@@ -16,8 +16,11 @@ import org.apache.thrift.transport.TNonblockingTransport;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.mockito.Mockito.*;
@@ -135,6 +138,40 @@ public class ThriftClientAsyncContainerTest {
         );
     }
 
+    @Test(groups = "unit")
+    public void completionExecutor() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        AtomicLong selectorTime = new AtomicLong(-1);
+        ThriftClientAsyncContainer<DemoServer.AsyncClient> offloaded = new ThriftClientAsyncContainer<>(
+                transport,
+                objectPool,
+                (ex) -> true,
+                new ThriftClientAddress("lh", 42),
+                "testSrv",
+                asyncClient,
+                ThriftCallType.ASYNC_CLIENT,
+                tasks::add,
+                selectorTime::set
+        );
+        CompletableFuture<MapResult> future = offloaded.execAsync(
+                MapResult.class,
+                (client, callback) -> callbackRes.set(callback),
+                ThriftRequestReporter.NULL_REPORTER
+        );
+        DemoServer.AsyncClient.responseFullAsync_call call = mock(DemoServer.AsyncClient.responseFullAsync_call.class);
+        MapResult mapResult = new MapResult();
+        when(call.getResult()).thenReturn(mapResult);
+
+        callbackRes.get().onComplete(call);
+        assertFalse(future.isDone());
+        assertTrue(selectorTime.get() >= 0);
+        assertEquals(tasks.size(), 1);
+
+        tasks.get(0).run();
+        assertSame(future.getNow(null), mapResult);
+        verify(objectPool).returnObject(offloaded);
+    }
+
     @Test(groups = "unit")
     public void close() throws Exception {
         AtomicReference<AsyncMethodCallback> callbackRes = new AtomicReference<>();
@@ -0,0 +1,103 @@
+package com.qiwi.thrift.pool;
+
+import com.qiwi.thrift.metrics.ThriftCallType;
+import com.qiwi.thrift.pool.imp.ThriftObjectPool;
+import com.qiwi.thrift.pool.server.DemoServer;
+import com.qiwi.thrift.pool.types.Status;
+import com.qiwi.thrift.tracing.ThriftRequestReporter;
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import com.qiwi.thrift.utils.ThriftConnectionException;
+import com.qiwi.thrift.utils.ThriftRequestStatus;
+import com.qiwi.thrift.utils.ThriftRuntimeException;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.fail;
+
+public class ThriftPoolAsyncClientTest {
+    @Test(groups = "unit")
+    public void failedSendEndRequest() throws Exception {
+        ThriftClientAddress address = new ThriftClientAddress("test", 123);
+        ThriftObjectPool<ThriftClientAsyncContainer<DemoServer.AsyncIface>> pool = mock(ThriftObjectPool.class);
+        ThriftClientAsyncContainer<DemoServer.AsyncIface> container = mock(ThriftClientAsyncContainer.class);
+        when(pool.borrowObject(anyLong())).thenReturn(container);
+        when(container.execAsync(any(), any(), any())).thenThrow(new ThriftRuntimeException("Connection reset"));
+        ThriftRequestReporter reporter = mock(ThriftRequestReporter.class);
+
+        ThriftPoolAsyncClient<DemoServer.AsyncIface, DemoServer.AsyncClient> client = new ThriftPoolAsyncClient<>(
+                DemoServer.AsyncIface.class,
+                "DemoServer",
+                pool,
+                () -> address,
+                new ThriftClientConfig.Builder()
+                        .setAddress(address)
+                        .setRequestReporter(reporter)
+                        .build(),
+                asyncClient -> true,
+                mock(ThriftPoolAsyncClient.AsyncPoolObjectFactory.class),
+                Optional.empty()
+        );
+        try {
+            client.execAsync(Status.class, (asyncClient, callback) -> asyncClient.loadTest(callback));
+            fail("Send must fail");
+        } catch (ThriftConnectionException expected) {
+        }
+
+        // Каждый requestBegin закрыт requestEnd, иначе в NodeStatus растёт число запросов в полёте
+        verify(reporter).requestBegin(eq("DemoServer"), anyString(), eq(ThriftCallType.ASYNC_CLIENT));
+        verify(reporter).requestEnd(
+                eq("DemoServer"),
+                anyString(),
+                eq(ThriftCallType.ASYNC_CLIENT),
+                eq(ThriftRequestStatus.CONNECTION_ERROR),
+                anyLong(),
+                any()
+        );
+        verify(container).close();
+    }
+
+    @Test(groups = "unit")
+    public void connectionCreatedOutsideCallerThread() throws Exception {
+        ThriftClientAddress address = new ThriftClientAddress("test", 123);
+        ThriftObjectPool<ThriftClientAsyncContainer<DemoServer.AsyncIface>> pool = mock(ThriftObjectPool.class);
+        ThriftClientAsyncContainer<DemoServer.AsyncIface> container = mock(ThriftClientAsyncContainer.class);
+        CompletableFuture<Thread> connectThread = new CompletableFuture<>();
+        when(pool.borrowIdleObject()).thenReturn(null);
+        when(pool.borrowObject(anyLong())).thenAnswer(invocation -> {
+            connectThread.complete(Thread.currentThread());
+            return container;
+        });
+        when(container.execAsync(any(), any(), any())).thenReturn(new CompletableFuture<>());
+
+        ThriftPoolAsyncClient<DemoServer.AsyncIface, DemoServer.AsyncClient> client = new ThriftPoolAsyncClient<>(
+                DemoServer.AsyncIface.class,
+                "DemoServer",
+                pool,
+                () -> address,
+                new ThriftClientConfig.Builder()
+                        .setAddress(address)
+                        .setAsyncWaitQueueSize(10)
+                        .build(),
+                asyncClient -> true,
+                mock(ThriftPoolAsyncClient.AsyncPoolObjectFactory.class),
+                Optional.empty()
+        );
+        client.execAsync(Status.class, (asyncClient, callback) -> asyncClient.loadTest(callback));
+
+        // Коннект с проверкой блокирует, вызывающий поток берёт только свободный
+        assertNotSame(connectThread.get(5, TimeUnit.SECONDS), Thread.currentThread());
+        verify(container, timeout(5000)).execAsync(any(), any(), any());
+    }
+}
@@ -0,0 +1,43 @@
+package com.qiwi.thrift.pool;
+
+import com.qiwi.thrift.pool.imp.ThriftAsyncSelector;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ThriftSelectorGroupTest {
+    @Test(groups = "unit")
+    public void roundRobin() throws Exception {
+        try (ThriftSelectorGroup group = new ThriftSelectorGroup("test", 2)) {
+            ThriftAsyncSelector first = group.next();
+            ThriftAsyncSelector second = group.next();
+            assertNotSame(first, second);
+            assertSame(group.next(), first);
+            assertSame(group.next(), second);
+            assertEquals(first.getQueueDepth(), 0);
+            assertEquals(first.getCalls(), 0);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void poolNotStopSharedSelector() throws Exception {
+        ThriftSelectorGroup group = new ThriftSelectorGroup("test", 1);
+        ThriftAsyncSelector selector = group.next();
+        TAsyncClientManager manager = selector.getManager();
+        assertSame(selector.getManager(), manager);
+
+        manager.stop();
+        assertTrue(selector.isRunning());
+
+        group.close();
+        for (int i = 0; i < 100 && selector.isRunning(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(selector.isRunning());
+    }
+}
@@ -1,8 +1,9 @@
 package com.qiwi.thrift.pool;
 
+import com.qiwi.thrift.pool.imp.ThriftObjectPool;
 import com.qiwi.thrift.pool.server.DemoServer;
+import com.qiwi.thrift.reflect.SyncClientDispatcher;
 import com.qiwi.thrift.utils.ThriftClientAddress;
-import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -18,7 +19,7 @@ public class ThriftSyncClientTest {
 
     @BeforeMethod(groups = "unit")
     public void setUp() throws Exception {
-        GenericObjectPool<ThriftClientSyncContainer<DemoServer.Iface>> pool = mock(GenericObjectPool.class);
+        ThriftObjectPool<ThriftClientSyncContainer<DemoServer.Iface>> pool = mock(ThriftObjectPool.class);
         Supplier<ThriftClientAddress> addressSupplier = () -> new ThriftClientAddress("test", 123);
 
         ThriftSyncClient<DemoServer.Iface, DemoServer.Client> handler = new ThriftSyncClient<>(
@@ -28,7 +29,8 @@ public class ThriftSyncClientTest {
                 addressSupplier,
                 new ThriftClientConfig.Builder().setAddress(new ThriftClientAddress("test", 1243)).build(),
                 client -> true,
-                mock(ThriftSyncClient.PoolObjectFactory.class)
+                mock(ThriftSyncClient.PoolObjectFactory.class),
+                SyncClientDispatcher.of(DemoServer.Iface.class)
         );
         iface = ThriftSyncClient.makeProxy(DemoServer.Iface.class, handler);
     }
@@ -0,0 +1,152 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class StripedObjectPoolTest {
+    private AtomicInteger created;
+    private AtomicInteger destroyed;
+    private volatile Thread createdBy;
+    private StripedObjectPool<Object> pool;
+
+    @BeforeMethod(groups = "unit")
+    public void setUp() throws Exception {
+        created = new AtomicInteger();
+        destroyed = new AtomicInteger();
+        GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+        config.setMaxTotal(2);
+        config.setMaxIdle(2);
+        config.setMaxWaitMillis(100);
+        config.setEvictionPolicyClassName(IdleTimeEvictionPolicy.class.getName());
+        config.setMinEvictableIdleTimeMillis(1);
+        config.setSoftMinEvictableIdleTimeMillis(TimeUnit.MINUTES.toMillis(5));
+        config.setTimeBetweenEvictionRunsMillis(-1);
+        pool = new StripedObjectPool<>(new BasePooledObjectFactory<Object>() {
+            @Override
+            public Object create() throws Exception {
+                created.incrementAndGet();
+                createdBy = Thread.currentThread();
+                return new Object();
+            }
+
+            @Override
+            public PooledObject<Object> wrap(Object obj) {
+                return new DefaultPooledObject<>(obj);
+            }
+
+            @Override
+            public void destroyObject(PooledObject<Object> p) throws Exception {
+                destroyed.incrementAndGet();
+            }
+        }, config);
+    }
+
+    @AfterMethod(groups = "unit")
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test(groups = "unit")
+    public void reuseReturnedObject() throws Exception {
+        Object first = pool.borrowObject();
+        assertEquals(pool.getNumActive(), 1);
+        pool.returnObject(first);
+        assertEquals(pool.getNumActive(), 0);
+        assertEquals(pool.getNumIdle(), 1);
+
+        assertSame(pool.borrowObject(), first);
+        assertEquals(created.get(), 1);
+    }
+
+    @Test(groups = "unit")
+    public void borrowIdleNeverCreate() throws Exception {
+        assertNull(pool.borrowIdleObject());
+        assertEquals(created.get(), 0);
+        Object first = pool.borrowObject();
+        pool.returnObject(first);
+        assertSame(pool.borrowIdleObject(), first);
+        assertNull(pool.borrowIdleObject());
+        assertEquals(created.get(), 1);
+    }
+
+    @Test(groups = "unit", expectedExceptions = NoSuchElementException.class, expectedExceptionsMessageRegExp = "Timeout.*")
+    public void timeoutWhenExhausted() throws Exception {
+        pool.borrowObject();
+        pool.borrowObject();
+        pool.borrowObject(10);
+    }
+
+    @Test(groups = "unit")
+    public void waiterReceiveReturnedObject() throws Exception {
+        Object first = pool.borrowObject();
+        pool.borrowObject();
+        CompletableFuture<Object> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrowObject(TimeUnit.SECONDS.toMillis(5));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (pool.getNumWaiters() == 0 && !waiter.isDone()) {
+            Thread.sleep(1);
+        }
+        pool.returnObject(first);
+        assertSame(waiter.get(5, TimeUnit.SECONDS), first);
+        assertEquals(pool.getNumWaiters(), 0);
+    }
+
+    @Test(groups = "unit")
+    public void invalidateCreateNewObjectForWaiter() throws Exception {
+        Object first = pool.borrowObject();
+        pool.borrowObject();
+        CompletableFuture<Object> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrowObject(TimeUnit.SECONDS.toMillis(5));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (pool.getNumWaiters() == 0 && !waiter.isDone()) {
+            Thread.sleep(1);
+        }
+        pool.invalidateObject(first);
+        assertNotSame(waiter.get(5, TimeUnit.SECONDS), first);
+        assertEquals(destroyed.get(), 1);
+        assertEquals(created.get(), 3);
+        // Замена создаётся ожидающим потоком, а не тем, кто инвалидировал
+        assertNotSame(createdBy, Thread.currentThread());
+        assertEquals(pool.getNumActive(), 2);
+        assertEquals(pool.getNumIdle(), 0);
+    }
+
+    @Test(groups = "unit")
+    public void evictIdle() throws Exception {
+        Object first = pool.borrowObject();
+        Object second = pool.borrowObject();
+        pool.returnObject(first);
+        pool.returnObject(second);
+        Thread.sleep(5);
+
+        pool.evict();
+
+        assertEquals(pool.getNumIdle(), 0);
+        assertEquals(destroyed.get(), 2);
+        assertTrue(pool.borrowObject() != null);
+    }
+}
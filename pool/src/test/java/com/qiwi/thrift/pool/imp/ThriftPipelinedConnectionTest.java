@@ -0,0 +1,53 @@
+package com.qiwi.thrift.pool.imp;
+
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ThriftPipelinedConnectionTest {
+    private static byte[] message(byte type, int seqid) throws Exception {
+        TMemoryBuffer buffer = new TMemoryBuffer(64);
+        TProtocol protocol = new TCompactProtocol(buffer);
+        protocol.writeMessageBegin(new TMessage("request", type, seqid));
+        protocol.writeString("body");
+        protocol.writeMessageEnd();
+        return Arrays.copyOf(buffer.getArray(), buffer.length());
+    }
+
+    @Test(groups = "unit")
+    public void replaceSeqid() throws Exception {
+        byte[] request = message(TMessageType.CALL, 0);
+        for (int seqid : new int[]{1, 127, 128, 300_000, Integer.MAX_VALUE, -1}) {
+            byte[] replaced = ThriftPipelinedConnection.replaceSeqid(request, seqid);
+            assertEquals(ThriftPipelinedConnection.readSeqid(replaced), seqid);
+            assertEquals(replaced, message(TMessageType.CALL, seqid));
+            assertEquals(ThriftPipelinedConnection.replaceSeqid(replaced, 0), request);
+        }
+    }
+
+    @Test(groups = "unit")
+    public void encodeFrame() throws Exception {
+        byte[] request = message(TMessageType.CALL, 0);
+        ByteBuffer frame = ThriftPipelinedConnection.encodeFrame(request, 1000);
+        byte[] expected = message(TMessageType.CALL, 1000);
+        assertEquals(frame.getInt(0), expected.length);
+        assertEquals(Arrays.copyOfRange(frame.array(), 4, frame.limit()), expected);
+    }
+
+    @Test(groups = "unit")
+    public void oneway() throws Exception {
+        assertTrue(ThriftPipelinedConnection.isOneway(message(TMessageType.ONEWAY, 0)));
+        assertFalse(ThriftPipelinedConnection.isOneway(message(TMessageType.CALL, 0)));
+        assertFalse(ThriftPipelinedConnection.isOneway(message(TMessageType.REPLY, 0)));
+    }
+}
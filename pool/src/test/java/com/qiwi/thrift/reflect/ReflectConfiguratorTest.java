@@ -2,6 +2,7 @@ package com.qiwi.thrift.reflect;
 
 import com.qiwi.thrift.pool.server.DemoServer;
 import com.qiwi.thrift.pool.server.SecondServer;
+import com.qiwi.thrift.pool.types.MapResult;
 import com.qiwi.thrift.utils.LambdaUtils;
 import org.apache.thrift.TException;
 import org.apache.thrift.async.AsyncMethodCallback;
@@ -13,8 +14,11 @@ import org.slf4j.LoggerFactory;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.Closeable;
+
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 @SuppressWarnings("MagicNumber")
@@ -47,6 +51,30 @@ public class ReflectConfiguratorTest {
         verify(mock2, times(1)).test();
     }
 
+    @Test(groups = "unit")
+    public void createSyncDispatcher() throws Throwable {
+        SyncClientDispatcher dispatcher = configurator.createSyncDispatcher(DemoServer.Iface.class);
+        assertSame(configurator.createSyncDispatcher(DemoServer.Iface.class), dispatcher);
+
+        SyncMethodInfo request = dispatcher.get(
+                DemoServer.Iface.class.getMethod("request", String.class, long.class)
+        );
+        assertEquals(request.getKind(), SyncMethodInfo.Kind.THRIFT_CALL);
+        assertEquals(request.getName(), "request");
+
+        DemoServer.Client client = mock(DemoServer.Client.class);
+        MapResult result = new MapResult();
+        when(client.request("test", 42)).thenReturn(result);
+        assertSame(request.invoke(client, new Object[]{"test", 42L}), result);
+
+        when(client.healthCheck()).thenReturn(true);
+        assertEquals(dispatcher.get(DemoServer.Iface.class.getMethod("healthCheck")).invoke(client, null), true);
+
+        assertEquals(dispatcher.get(Object.class.getMethod("toString")).getKind(), SyncMethodInfo.Kind.TO_STRING);
+        assertEquals(dispatcher.get(Closeable.class.getMethod("close")).getKind(), SyncMethodInfo.Kind.CLOSE);
+        assertTrue(request.getId() != dispatcher.get(DemoServer.Iface.class.getMethod("healthCheck")).getId());
+    }
+
     @Test(groups = "unit")
     public void createAsync() throws Exception {
         TProtocolFactory protocolFactory = mock(TProtocolFactory.class);
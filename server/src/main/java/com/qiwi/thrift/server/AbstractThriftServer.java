@@ -9,15 +9,23 @@ import com.qiwi.thrift.utils.ThriftClientAddress;
 import com.qiwi.thrift.utils.ThriftConnectionException;
 import com.qiwi.thrift.utils.ThriftRequestStatus;
 import com.qiwi.thrift.utils.ThriftRuntimeException;
+import org.apache.thrift.TApplicationException;
 import org.apache.thrift.TException;
 import org.apache.thrift.TMultiplexedProcessor;
 import org.apache.thrift.TProcessor;
 import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
 import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
 import org.apache.thrift.server.TThreadedSelectorServer;
 import org.apache.thrift.transport.TFramedTransport;
 import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.apache.thrift.transport.TServerSocket;
+import org.apache.thrift.transport.TServerTransport;
 import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,17 +39,20 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 // Конфигурация на TThreadedSelectorServer имеет низкую латентность в случае длительных запросов, завязанных
 // на внешние сервисы (база, и т.п.).
 // И нормальную на больших запросах порядка мегабайт, особенно если подтормаживает сеть.
 //
-// Для очень больших запросов жрёт много памяти.
+// Для очень больших запросов жрёт много памяти, общий объём ограничен read_buffer_budget_bytes.
 // Если нужно обрабатывать очень много маленьких запросов (от небольшого числа клиентов), лучше работает конфигурация
-// на основе TThreadPoolServer
+// на основе TThreadPoolServer (server_engine = THREAD_PER_CONNECTION)
 // Ожидаемая производительность для маленьких запросов:
 // TThreadedSelectorServer 30 000 rps / latency 0.3 ms
 // TThreadPoolServer 70 000 rps / latency 0.1 ms
@@ -57,13 +68,26 @@ import java.util.concurrent.Executors;
 public abstract class AbstractThriftServer implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(AbstractThriftServer.class);
     public static final Duration DEFAULT_START_TIMEOUT = Duration.ofSeconds(5);
+    private static final int THREAD_POOL_STOP_TIMEOUT_SECONDS = 5;
+    private static final long DRAIN_POLL_INTERVAL_MILLIS = 10;
 
     private final List<StatStopListener> listeners = new CopyOnWriteArrayList<>();
 
     private ThriftServerConfig serverConfig;
     private ThriftEndpointConfig endpointConfig;
-    private TNonblockingServerSocket serverSocket;
-    private TThreadedSelectorServer server;
+    private TServerTransport serverSocket;
+    private int port;
+    private TServer server;
+    private Supplier<Collection<ThriftClientStatistic>> clientStatistics = Collections::emptyList;
+    private Runnable stopAccepting;
+    /**
+     * Null for thread per connection server: connection thread stops reading after current request
+     */
+    private Runnable closeIdleConnections;
+    private final Map<String, TLogProcessor> logProcessors = new ConcurrentHashMap<>();
+    private InstrumentedExecutorService serverExecutor;
+    private String executorName;
+    private boolean readBufferRegistered;
     private Thread serverThread;
     private ThriftClientAddress address;
 
@@ -77,34 +101,24 @@ public abstract class AbstractThriftServer implements Closeable {
         }
         serverConfig = createConfig();
         endpointConfig = createEndpointConfig();
-        int clusterPoolSize = serverConfig.getThriftPoolSize();
-        int selectorThreads = serverConfig.getThriftSelectorThreads();
-
         Map<String, String> tags = new HashMap<>();
         tags.put(ThriftClientAddress.TRACE_TYPE_PARAMETER, serverConfig.getTraceMode().name());
         address = new ThriftClientAddress("localhost", serverConfig.getServerThriftPort(), tags);
         TMultiplexedProcessor muxProcessor = new TMultiplexedProcessor();
         Map<String, Class<?>>  services = new HashMap<>();
+        ThriftBulkhead serverBulkhead = new ThriftBulkhead(getServerConcurrencyLimit(), null);
         for (ThriftEndpoint<?> endpoint : endpointConfig.getEndpoints()) {
+            EndpointLimits limits = new EndpointLimits(endpoint, serverBulkhead);
             for (String name : endpoint.getEndpointNames()) {
                 Class<?> oldImplementation = services.put(name, endpoint.getImplementation().getClass());
                 if (oldImplementation != null) {
                     throw new IllegalArgumentException("Two service with same name " + name + " registered on server! Implementations " + oldImplementation + " and " + endpoint.getImplementation().getClass());
                 }
-                TProcessor processor = createProcessor(name, address, endpoint);
+                TProcessor processor = createProcessor(name, address, endpoint, limits);
                 muxProcessor.registerProcessor(name, processor);
             }
         }
 
-        try {
-            serverSocket = new TNonblockingServerSocket(serverConfig.getServerThriftPort());
-        } catch (TTransportException e) {
-            throw new ThriftConnectionException("Unable to open port", e);
-        }
-        if (selectorThreads <= 0){
-            selectorThreads = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
-        }
-        ExecutorService serverExecutor = Executors.newFixedThreadPool(clusterPoolSize);
         TProtocolFactory factory;
         switch (serverConfig.getTraceMode()) {
             case BASIC:
@@ -118,26 +132,126 @@ public abstract class AbstractThriftServer implements Closeable {
             default:
                 throw new IllegalStateException("Mode " + serverConfig.getTraceMode() + " not implemented");
         }
-        TThreadedSelectorServer.Args args = new TThreadedSelectorServer.Args(serverSocket)
-                .processor(muxProcessor)
+        ThriftServerEngine engine = serverConfig.getServerEngine();
+        switch (engine) {
+            case SELECTOR:
+                server = createSelectorServer(muxProcessor, factory);
+                break;
+            case THREAD_PER_CONNECTION:
+                if (serverConfig.getAdmissionController() != ThriftAdmissionController.UNLIMITED) {
+                    log.warn("Admission control not supported by {} engine, requests never shed", engine);
+                }
+                server = createThreadPoolServer(muxProcessor, factory);
+                break;
+            default:
+                throw new IllegalStateException("Engine " + engine + " not implemented");
+        }
+        log.info("Thrift server use {} engine with {} executor", engine, serverExecutor.getType());
+
+        // Thrift block server running thread, until server stopped
+        serverThread = new Thread(() -> server.serve(), "Thrift server");
+        serverThread.start();
+        log.info("Thrift server starting on port {}", port);
+        address = new ThriftClientAddress("localhost", port, tags);// actualize server port
+        for (StatStopListener listener : listeners) {
+            listener.onStart(this);
+        }
+    }
+
+    /**
+     * Часть потоков executor оставляем только для health check, чтобы медленные endpoint
+     * не приводили к исключению сервера из балансировки у клиентов
+     */
+    private int getServerConcurrencyLimit() {
+        int reserved = serverConfig.getHealthCheckReservedThreads();
+        if (reserved < 0) {
+            boolean hasHealthCheck = endpointConfig.getEndpoints().stream()
+                    .anyMatch(endpoint -> !endpoint.getHealthCheckMethods().isEmpty());
+            reserved = hasHealthCheck ? 1 : 0;
+        }
+        int threads = ThriftServerExecutors.getThreadLimit(serverConfig);
+        // У THREAD_PER_CONNECTION поток на соединение, запросы разных соединений не конкурируют
+        if (reserved <= 0 || threads <= 0 || serverConfig.getServerEngine() != ThriftServerEngine.SELECTOR) {
+            return 0;
+        }
+        return Math.max(threads - reserved, 1);
+    }
+
+    private TServer createSelectorServer(TProcessor processor, TProtocolFactory factory) {
+        TNonblockingServerSocket socket;
+        try {
+            socket = new TNonblockingServerSocket(serverConfig.getServerThriftPort());
+        } catch (TTransportException e) {
+            throw new ThriftConnectionException("Unable to open port", e);
+        }
+        serverSocket = socket;
+        port = socket.getPort();
+        int clusterPoolSize = serverConfig.getThriftPoolSize();
+        int selectorThreads = serverConfig.getThriftSelectorThreads();
+        if (selectorThreads <= 0){
+            selectorThreads = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+        }
+        registerExecutor(ThriftServerExecutors.create(serverConfig));
+        TThreadedSelectorServer.Args args = new TThreadedSelectorServer.Args(socket)
+                .processor(processor)
                 .protocolFactory(factory)
                 // TThreadedSelectorServer в текущей версии поддерживает только TFramedTransport
                 .transportFactory(new TFramedTransport.Factory(serverConfig.getMaxFrameSizeBytes()))
                 .executorService(serverExecutor)
                 .acceptQueueSizePerThread(clusterPoolSize * 4 / selectorThreads)
                 .selectorThreads(selectorThreads);
-        args.maxReadBufferBytes = serverConfig.getMaxFrameSizeBytes();
+        // В thrift 0.9.3 это общий лимит памяти всех прочитанных, но не обработанных запросов.
+        // При его исчерпании селекторы не читают новые запросы, пока память не освободится.
+        // Размер одного запроса ограничивает TFramedTransport
+        args.maxReadBufferBytes = serverConfig.getReadBufferBudgetBytes();
 
-        server = new TThreadedSelectorServerWithIpLogging(args);
+        TThreadedSelectorServerWithIpLogging selectorServer = new TThreadedSelectorServerWithIpLogging(args, executorName);
+        clientStatistics = selectorServer::getClientStatistics;
+        stopAccepting = selectorServer::stopAccepting;
+        closeIdleConnections = selectorServer::closeIdleConnections;
+        ThriftMonitoring.getMonitor().registerServerReadBuffer(
+                executorName,
+                selectorServer::getReadBufferBytes,
+                selectorServer::getReadBufferBudget
+        );
+        readBufferRegistered = true;
+        return selectorServer;
+    }
 
-        // Thrift block server running thread, until server stopped
-        serverThread = new Thread(() -> server.serve(), "Thrift server");
-        serverThread.start();
-        log.info("Thrift server starting on port {}", serverSocket.getPort());
-        address = new ThriftClientAddress("localhost", serverSocket.getPort(), tags);// actualize server port
-        for (StatStopListener listener : listeners) {
-            listener.onStart(this);
+    private TServer createThreadPoolServer(TProcessor processor, TProtocolFactory factory) {
+        TServerSocket socket;
+        try {
+            socket = new TServerSocket(serverConfig.getServerThriftPort());
+        } catch (TTransportException e) {
+            throw new ThriftConnectionException("Unable to open port", e);
         }
+        serverSocket = socket;
+        port = socket.getServerSocket().getLocalPort();
+        registerExecutor(ThriftServerExecutors.createConnectionExecutor(serverConfig));
+        TThreadPoolServer.Args args = new TThreadPoolServer.Args(socket)
+                .protocolFactory(factory)
+                // Клиенты используют TFramedTransport
+                .transportFactory(new TFramedTransport.Factory(serverConfig.getMaxFrameSizeBytes()))
+                .executorService(serverExecutor)
+                // Потоки соединений без запросов заблокированы на чтении, не ждём их при остановке
+                .stopTimeoutVal(THREAD_POOL_STOP_TIMEOUT_SECONDS);
+
+        TThreadPoolServerWithIpLogging threadPoolServer = new TThreadPoolServerWithIpLogging(args, processor, executorName);
+        clientStatistics = threadPoolServer::getClientStatistics;
+        stopAccepting = threadPoolServer::stopAccepting;
+        return threadPoolServer;
+    }
+
+    private void registerExecutor(InstrumentedExecutorService executor) {
+        serverExecutor = executor;
+        executorName = Integer.toString(port);
+        ThriftMonitoring.getMonitor().registerServerExecutor(
+                executorName,
+                executor::getActive,
+                executor::getQueued,
+                executor::getCompleted,
+                executor::getRejected
+        );
     }
 
     public void awaitStart() {
@@ -147,7 +261,7 @@ public abstract class AbstractThriftServer implements Closeable {
     public void awaitStart(Duration awaitTime) {
         for (int i = 0; i < awaitTime.toMillis() / 100; i++) {
             if (server.isServing()) {
-                log.info("Thrift server starting successful on port {}", serverSocket.getPort());
+                log.info("Thrift server starting successful on port {}", port);
                 return;
             } else {
                 try {
@@ -158,9 +272,9 @@ public abstract class AbstractThriftServer implements Closeable {
                 }
             }
         }
-        log.info("Thrift server on port {} failed to start", serverSocket.getPort());
+        log.info("Thrift server on port {} failed to start", port);
         server.stop();
-        throw new ThriftRuntimeException("Unable to start server on port: " + serverSocket.getPort());
+        throw new ThriftRuntimeException("Unable to start server on port: " + port);
     }
 
     public synchronized void stopServer(){
@@ -168,9 +282,13 @@ public abstract class AbstractThriftServer implements Closeable {
             for (StatStopListener listener : listeners) {
                 listener.onStop(this);
             }
+            drain();
             server.stop();
             server = null;
         }
+        for (String name : logProcessors.keySet()) {
+            ThriftMonitoring.getMonitor().unRegisterServerEndpoint(name);
+        }
         if (serverThread != null) {
             try {
                 serverThread.join();
@@ -179,16 +297,103 @@ public abstract class AbstractThriftServer implements Closeable {
             }
             serverThread = null;
         }
+        if (serverExecutor != null) {
+            // Сервер уже остановил executor при завершении serve
+            ThriftMonitoring.getMonitor().unRegisterServerExecutor(executorName);
+            if (readBufferRegistered) {
+                ThriftMonitoring.getMonitor().unRegisterServerReadBuffer(executorName);
+                readBufferRegistered = false;
+            }
+            serverExecutor = null;
+            executorName = null;
+        }
         if (serverSocket != null) {
-            log.info("Thrift server on port {} stopped", serverSocket.getPort());
+            log.info("Thrift server on port {} stopped", port);
             serverSocket.close();
             this.serverSocket = null;
         }
+        clientStatistics = Collections::emptyList;
+        stopAccepting = null;
+        closeIdleConnections = null;
+        logProcessors.clear();
         address = null;
         serverConfig = null;
         endpointConfig = null;
     }
 
+    /**
+     * Сервер уже снят с регистрации. Клиенты, не успевшие перечитать список нод,
+     * обслуживаются grace period, потом новые соединения не принимаются,
+     * соединения без запросов закрываются, и ожидается завершение начатых запросов.
+     */
+    private void drain() {
+        Duration gracePeriod = serverConfig.getDrainGracePeriod();
+        if (!gracePeriod.isZero() && !gracePeriod.isNegative()) {
+            log.info("Thrift server on port {} deregistered, serving {} ms before stop", port, gracePeriod.toMillis());
+            if (!sleep(gracePeriod.toMillis())) {
+                return;
+            }
+        }
+        if (stopAccepting != null) {
+            stopAccepting.run();
+        }
+        long deadline = System.nanoTime() + serverConfig.getDrainTimeout().toNanos();
+        // Иначе клиенты с постоянными соединениями продолжают слать запросы, и сервер не освобождается
+        closeIdleConnections();
+        while (getPendingRequestCount() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                log.warn(
+                        "Thrift server on port {} stopped with requests in flight {}, queued {}",
+                        port,
+                        getInFlightRequests(),
+                        serverExecutor == null ? 0 : serverExecutor.getQueued()
+                );
+                return;
+            }
+            if (!sleep(DRAIN_POLL_INTERVAL_MILLIS)) {
+                return;
+            }
+            closeIdleConnections();
+        }
+        log.info("Thrift server on port {} drained", port);
+    }
+
+    private void closeIdleConnections() {
+        if (closeIdleConnections != null) {
+            closeIdleConnections.run();
+        }
+    }
+
+    private long getPendingRequestCount() {
+        long result = serverExecutor == null ? 0 : serverExecutor.getQueued();
+        for (TLogProcessor processor : logProcessors.values()) {
+            result += processor.getInFlight();
+        }
+        return result;
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            log.warn("Thrift server drain interrupted");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return number of requests processed now per endpoint name, empty if server not running
+     */
+    public Map<String, Integer> getInFlightRequests() {
+        Map<String, Integer> result = new TreeMap<>();
+        for (Map.Entry<String, TLogProcessor> entry : logProcessors.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getInFlight());
+        }
+        return result;
+    }
+
     public void addListener(StatStopListener listener){
         listeners.add(listener);
         if (server != null) {
@@ -204,6 +409,13 @@ public abstract class AbstractThriftServer implements Closeable {
         }
     }
 
+    /**
+     * @return connections and requests per client ip, empty if server not running
+     */
+    public Collection<ThriftClientStatistic> getClientStatistics() {
+        return clientStatistics.get();
+    }
+
     public int getPort() {
         return getAddress().getPort();
     }
@@ -222,7 +434,23 @@ public abstract class AbstractThriftServer implements Closeable {
         stopServer();
     }
 
-    private <I> TProcessor createProcessor(String name, ThriftClientAddress address, ThriftEndpoint<I> endpoint){
+    private <I> TProcessor createProcessor(
+            String name,
+            ThriftClientAddress address,
+            ThriftEndpoint<I> endpoint,
+            EndpointLimits limits
+    ){
+        Optional<TProcessor> instrumented = ThriftInstrumentedProcessor.wrap(
+                endpoint.getEndpointProcessorFactory().apply(endpoint.getImplementation()),
+                endpoint.getImplementation(),
+                name,
+                address,
+                serverConfig.getRequestReporter()
+        );
+        if (instrumented.isPresent()) {
+            return createLogProcessor(instrumented.get(), name, address, limits);
+        }
+        // Процессор не сгенерирован thrift, метрики собираются через proxy
         ServerInvocationHandler<I> handler = new ServerInvocationHandler<I>(
                 endpoint.getImplementation(),
                 name,
@@ -235,40 +463,228 @@ public abstract class AbstractThriftServer implements Closeable {
                 handler
         );
         TProcessor processor = endpoint.getEndpointProcessorFactory().apply(proxy);
-        return new TLogProcessor(processor, name, address);
+        return createLogProcessor(processor, name, address, limits);
+    }
+
+    private TProcessor createLogProcessor(
+            TProcessor processor,
+            String name,
+            ThriftClientAddress address,
+            EndpointLimits limits
+    ) {
+        // У THREAD_PER_CONNECTION запрос читает поток обработки, время в очереди не измеряется
+        Optional<ThriftAdmissionController> admissionController;
+        if (serverConfig.getServerEngine() == ThriftServerEngine.SELECTOR) {
+            admissionController = Optional.of(serverConfig.getAdmissionController());
+        } else {
+            admissionController = Optional.empty();
+        }
+        TLogProcessor logProcessor = new TLogProcessor(
+                processor,
+                name,
+                address,
+                admissionController,
+                limits,
+                serverConfig.isRenameThreads()
+        );
+        logProcessors.put(name, logProcessor);
+        ThriftMonitoring.getMonitor().registerServerEndpoint(
+                name,
+                logProcessor::getInFlight,
+                logProcessor::getRejected
+        );
+        return logProcessor;
+    }
+
+    /**
+     * Bulkhead всех имён одного endpoint общий
+     */
+    private static class EndpointLimits {
+        private final ThriftBulkhead endpointBulkhead;
+        private final Map<String, ThriftBulkhead> methodBulkheads = new HashMap<>();
+        private final Set<String> healthCheckMethods;
+
+        private EndpointLimits(ThriftEndpoint<?> endpoint, ThriftBulkhead serverBulkhead) {
+            endpointBulkhead = new ThriftBulkhead(endpoint.getMaxConcurrentRequests(), serverBulkhead);
+            for (Map.Entry<String, Integer> entry : endpoint.getMethodMaxConcurrentRequests().entrySet()) {
+                methodBulkheads.put(entry.getKey(), new ThriftBulkhead(entry.getValue(), endpointBulkhead));
+            }
+            healthCheckMethods = endpoint.getHealthCheckMethods();
+        }
+
+        private boolean isHealthCheck(String method) {
+            return healthCheckMethods.contains(method);
+        }
+
+        private ThriftBulkhead getBulkhead(String method) {
+            return methodBulkheads.getOrDefault(method, endpointBulkhead);
+        }
     }
 
     /**
      * этот процессор можно использовать только как вложенный в TMultiplexedProcessor
      */
     private static class TLogProcessor implements TProcessor {
+        private static final String THREAD_NAME = "{\"type\":\"thrift\"}";
+        private static final int MAX_CACHED_METHODS = 1024;
+
         private final TProcessor nested;
         private final String serviceName;
         private final ThriftClientAddress address;
+        /**
+         * Empty if server engine don't measure queue time
+         */
+        private final Optional<ThriftAdmissionController> admissionController;
+        private final EndpointLimits limits;
+        private final boolean renameThreads;
+        private final ConcurrentMap<String, MethodName> methodNames = new ConcurrentHashMap<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder rejected = new LongAdder();
 
-        private TLogProcessor(TProcessor nested, String serviceName, ThriftClientAddress address) {
+        private TLogProcessor(
+                TProcessor nested,
+                String serviceName,
+                ThriftClientAddress address,
+                Optional<ThriftAdmissionController> admissionController,
+                EndpointLimits limits,
+                boolean renameThreads
+        ) {
             Objects.requireNonNull(nested, "nested");
             Objects.requireNonNull(serviceName, "processorName");
             this.nested = nested;
             this.serviceName = serviceName;
             this.address = address;
+            this.admissionController = Objects.requireNonNull(admissionController, "admissionController");
+            this.limits = Objects.requireNonNull(limits, "limits");
+            this.renameThreads = renameThreads;
+        }
+
+        int getInFlight() {
+            return inFlight.get();
+        }
+
+        long getRejected() {
+            return rejected.sum();
         }
 
         @Override
         public boolean process(TProtocol in, TProtocol out) throws TException {
+            inFlight.incrementAndGet();
+            try {
+                return processMessage(in, out);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private boolean processMessage(TProtocol in, TProtocol out) throws TException {
             TMessage message = in.readMessageBegin();
             // Проверяем что spanId, parent span id и т.п. были инициализированы.
             ThriftLogContext.getRequestHeader();
-            Thread.currentThread().setName("{\"type\":\"thrift\",\"method\":\"" + serviceName + '.' + message.name + "\"}");
+            if (ThriftLogContext.isDeadlineExpired()) {
+                log.debug(
+                        "Request {}.{} dropped, deadline expired {} ms ago. Client ip {}",
+                        serviceName,
+                        message.name,
+                        -ThriftLogContext.getRemainingMillis().orElse(0),
+                        ThriftLogContext.getClientAddress()
+                );
+                reject(in, out, message, "Deadline expired before request processing");
+                return true;
+            }
+            // Health check не отбрасываем, иначе клиенты исключат сервер из балансировки
+            boolean healthCheck = limits.isHealthCheck(message.name);
+            boolean admitted = true;
+            long queueTimeNanos = 0;
+            if (admissionController.isPresent()) {
+                queueTimeNanos = TThreadedSelectorServerWithIpLogging.getQueueTimeNanos();
+                admitted = healthCheck || admissionController.get().tryAdmit(queueTimeNanos);
+                ThriftMonitoring.getMonitor().logServerQueueTime(serviceName, queueTimeNanos, !admitted);
+            }
+            if (!admitted) {
+                log.debug(
+                        "Request {}.{} shed, queue time {} ms. Client ip {}",
+                        serviceName,
+                        message.name,
+                        queueTimeNanos / 1_000_000d,
+                        ThriftLogContext.getClientAddress()
+                );
+                reject(in, out, message, "Server overloaded, request shed");
+                return true;
+            }
+            ThriftBulkhead bulkhead = healthCheck ? null : limits.getBulkhead(message.name);
+            if (bulkhead != null && !bulkhead.tryAcquire()) {
+                rejected.increment();
+                log.debug(
+                        "Request {}.{} rejected, concurrency limit reached. Client ip {}",
+                        serviceName,
+                        message.name,
+                        ThriftLogContext.getClientAddress()
+                );
+                reject(in, out, message, "Concurrency limit reached, request rejected");
+                return true;
+            }
+            MethodName methodName = getMethodName(message.name);
+            ThriftLogContext.setMethod(methodName.fullName);
+            if (renameThreads) {
+                Thread.currentThread().setName(methodName.threadName);
+            }
             try {
                 return nested.process(in, out);
             } finally {
-                Thread.currentThread().setName("{\"type\":\"thrift\"}");
-                ThriftLogContext.newExecution();
+                if (bulkhead != null) {
+                    bulkhead.release();
+                }
+                if (renameThreads) {
+                    Thread.currentThread().setName(THREAD_NAME);
+                }
+                ThriftLogContext.clearExecution();
+            }
+        }
+
+        private MethodName getMethodName(String method) {
+            MethodName name = methodNames.get(method);
+            if (name == null) {
+                name = new MethodName(serviceName, method);
+                // Имена методов приходят от клиента, не даём забить память мусором
+                if (methodNames.size() < MAX_CACHED_METHODS) {
+                    methodNames.putIfAbsent(method, name);
+                }
+            }
+            return name;
+        }
+
+        /**
+         * Запрос не передаётся обработчику, клиент сразу получает TApplicationException
+         */
+        private void reject(TProtocol in, TProtocol out, TMessage message, String reason) throws TException {
+            try {
+                TProtocolUtil.skip(in, TType.STRUCT);
+                in.readMessageEnd();
+                if (message.type == TMessageType.ONEWAY) {
+                    return;
+                }
+                TApplicationException exception = new TApplicationException(TApplicationException.INTERNAL_ERROR, reason);
+                out.writeMessageBegin(new TMessage(message.name, TMessageType.EXCEPTION, message.seqid));
+                exception.write(out);
+                out.writeMessageEnd();
+                out.getTransport().flush();
+            } finally {
+                ThriftLogContext.clearExecution();
             }
         }
     }
 
+    private static class MethodName {
+        private final String fullName;
+        private final String threadName;
+
+        private MethodName(String serviceName, String method) {
+            this.fullName = serviceName + '.' + method;
+            this.threadName = "{\"type\":\"thrift\",\"method\":\"" + fullName + "\"}";
+        }
+    }
+
 
     private static class ServerInvocationHandler<I> implements InvocationHandler{
         private final I delegate;
@@ -318,8 +734,8 @@ public abstract class AbstractThriftServer implements Closeable {
                             "Method call {}.{} with arguments {} client ip {}",
                             serviceName,
                             methodName,
-                            ThriftLogContext.getClientAddress(),
-                            Arrays.toString(args)
+                            Arrays.toString(args),
+                            ThriftLogContext.getClientAddress()
                     );
                 }
             } catch (Exception ex) {
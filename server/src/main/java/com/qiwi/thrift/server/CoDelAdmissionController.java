@@ -0,0 +1,80 @@
+package com.qiwi.thrift.server;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * CoDel-style load shedding.
+ * Server considered overloaded if minimal queue time during interval exceed target -
+ * queue not drained even once, so it is standing queue, not a burst.
+ * While overloaded requests waited more than two targets rejected, so queue time stay bounded
+ * and clients receive fast error instead of timeout.
+ */
+public class CoDelAdmissionController implements ThriftAdmissionController {
+    private static final long NO_REQUESTS = Long.MAX_VALUE;
+
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final long sloughNanos;
+    private final LongSupplier nanoClock;
+
+    private final AtomicLong intervalEnd;
+    private final AtomicLong minQueueTime = new AtomicLong(NO_REQUESTS);
+    private final LongAdder shedCount = new LongAdder();
+    private volatile boolean overloaded;
+
+    /**
+     * @param target acceptable queue time, 5 ms for example
+     * @param interval period of overload detection, should be about request latency, 100 ms for example
+     */
+    public CoDelAdmissionController(Duration target, Duration interval) {
+        this(target, interval, System::nanoTime);
+    }
+
+    CoDelAdmissionController(Duration target, Duration interval, LongSupplier nanoClock) {
+        this.targetNanos = target.toNanos();
+        this.intervalNanos = interval.toNanos();
+        this.sloughNanos = targetNanos * 2;
+        this.nanoClock = nanoClock;
+        this.intervalEnd = new AtomicLong(nanoClock.getAsLong() + intervalNanos);
+    }
+
+    @Override
+    public boolean tryAdmit(long queueTimeNanos) {
+        long now = nanoClock.getAsLong();
+        long end = intervalEnd.get();
+        if (now - end >= 0 && intervalEnd.compareAndSet(end, now + intervalNanos)) {
+            long min = minQueueTime.getAndSet(queueTimeNanos);
+            overloaded = min != NO_REQUESTS && min > targetNanos;
+            return true;
+        }
+        long min = minQueueTime.get();
+        while (queueTimeNanos < min && !minQueueTime.compareAndSet(min, queueTimeNanos)) {
+            min = minQueueTime.get();
+        }
+        if (overloaded && queueTimeNanos > sloughNanos) {
+            shedCount.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CoDelAdmissionController{" +
+                "targetNanos=" + targetNanos +
+                ", intervalNanos=" + intervalNanos +
+                ", overloaded=" + overloaded +
+                '}';
+    }
+}
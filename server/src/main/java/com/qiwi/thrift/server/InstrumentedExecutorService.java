@@ -0,0 +1,103 @@
+package com.qiwi.thrift.server;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collect same metrics for any executor type
+ */
+class InstrumentedExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final ThriftServerExecutorType type;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    InstrumentedExecutorService(ExecutorService delegate, ThriftServerExecutorType type) {
+        this.delegate = delegate;
+        this.type = type;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.increment();
+        try {
+            delegate.execute(() -> {
+                started.increment();
+                try {
+                    command.run();
+                } finally {
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            submitted.decrement();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    public ThriftServerExecutorType getType() {
+        return type;
+    }
+
+    /**
+     * @return requests waiting for thread
+     */
+    public long getQueued() {
+        return Math.max(submitted.sum() - started.sum(), 0);
+    }
+
+    /**
+     * @return requests processed now
+     */
+    public long getActive() {
+        return Math.max(started.sum() - completed.sum(), 0);
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedExecutorService{" +
+                "type=" + type +
+                ", delegate=" + delegate +
+                '}';
+    }
+}
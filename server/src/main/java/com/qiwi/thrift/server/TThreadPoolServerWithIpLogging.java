@@ -0,0 +1,113 @@
+package com.qiwi.thrift.server;
+
+import com.qiwi.thrift.tracing.ThriftLogContext;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.TProcessorFactory;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+
+import java.net.Socket;
+import java.util.Collection;
+
+/**
+ * Blocking thread-per-connection server. Client address resolved once per connection,
+ * when worker thread take connection.
+ */
+public class TThreadPoolServerWithIpLogging extends TThreadPoolServer {
+    private final ThriftConnectionTracker connectionTracker;
+
+    /**
+     * @param args server arguments, processor set by this constructor
+     * @param processor processor of incoming requests
+     * @param name server name in client metrics
+     */
+    public TThreadPoolServerWithIpLogging(Args args, TProcessor processor, String name) {
+        this(args, processor, new ThriftConnectionTracker(name));
+    }
+
+    private TThreadPoolServerWithIpLogging(Args args, TProcessor processor, ThriftConnectionTracker connectionTracker) {
+        super(args.processorFactory(new ConnectionProcessorFactory(processor, connectionTracker)));
+        this.connectionTracker = connectionTracker;
+        setServerEventHandler(connectionTracker);
+    }
+
+    /**
+     * @return connections and requests per client ip
+     */
+    public Collection<ThriftClientStatistic> getClientStatistics() {
+        return connectionTracker.getClients();
+    }
+
+    /**
+     * Close server socket, new connections refused.
+     * Connection threads finish current request and close connection
+     */
+    public void stopAccepting() {
+        super.stop();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        connectionTracker.close();
+    }
+
+    /**
+     * TThreadPoolServer call getProcessor and createContext of event handler in worker thread of connection,
+     * so connection created here passed to event handler through thread local
+     */
+    private static class ConnectionProcessorFactory extends TProcessorFactory {
+        private final TProcessor processor;
+        private final ThriftConnectionTracker connectionTracker;
+
+        private ConnectionProcessorFactory(TProcessor processor, ThriftConnectionTracker connectionTracker) {
+            super(processor);
+            this.processor = processor;
+            this.connectionTracker = connectionTracker;
+        }
+
+        @Override
+        public TProcessor getProcessor(TTransport transport) {
+            String clientAddress = resolveAddress(transport);
+            if (clientAddress == null) {
+                return processor;
+            }
+            ThriftConnectionTracker.Connection connection = connectionTracker.accept();
+            connection.connected(clientAddress);
+            return new ConnectionProcessor(processor, connection, clientAddress);
+        }
+
+        private static String resolveAddress(TTransport transport) {
+            if (!(transport instanceof TSocket)) {
+                return null;
+            }
+            Socket socket = ((TSocket) transport).getSocket();
+            if (socket == null || socket.getInetAddress() == null) {
+                return null;
+            }
+            return socket.getInetAddress().toString();
+        }
+    }
+
+    private static class ConnectionProcessor implements TProcessor {
+        private final TProcessor nested;
+        private final ThriftConnectionTracker.Connection connection;
+        private final String clientAddress;
+
+        private ConnectionProcessor(TProcessor nested, ThriftConnectionTracker.Connection connection, String clientAddress) {
+            this.nested = nested;
+            this.connection = connection;
+            this.clientAddress = clientAddress;
+        }
+
+        @Override
+        public boolean process(TProtocol in, TProtocol out) throws TException {
+            ThriftLogContext.setClientAddress(clientAddress);
+            connection.request();
+            return nested.process(in, out);
+        }
+    }
+}
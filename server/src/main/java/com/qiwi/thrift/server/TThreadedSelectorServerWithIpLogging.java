@@ -1,6 +1,7 @@
 package com.qiwi.thrift.server;
 
 import com.qiwi.thrift.tracing.ThriftLogContext;
+import org.apache.thrift.server.AbstractNonblockingServer;
 import org.apache.thrift.server.TThreadedSelectorServer;
 import org.apache.thrift.transport.TNonblockingSocket;
 import org.slf4j.Logger;
@@ -11,13 +12,23 @@ import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TThreadedSelectorServerWithIpLogging extends TThreadedSelectorServer {
     private static final Logger log = LoggerFactory.getLogger(TThreadedSelectorServerWithIpLogging.class);
+    private static final String DEFAULT_NAME = "server";
 
 
     private static final MethodHandle socketGetter;
+    private static final MethodHandle contextGetter;
+    private static final MethodHandle readBufferBytesGetter;
+    private static final MethodHandle acceptThreadGetter;
+    private static final MethodHandle stateGetter;
+    private static final MethodHandle bufferGetter;
+    private static final ThreadLocal<long[]> queueTimeNanos = ThreadLocal.withInitial(() -> new long[1]);
 
     static {
         MethodHandle getter = null;
@@ -37,8 +48,58 @@ public class TThreadedSelectorServerWithIpLogging extends TThreadedSelectorServe
             log.error("Unable to create socket address get", e);
         }
         socketGetter = getter;
+
+        getter = null;
+        try {
+            Field context = FrameBuffer.class.getDeclaredField("context_");
+            context.setAccessible(true);
+            getter = MethodHandles.lookup().unreflectGetter(context);
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            log.warn("Unsupported libthrift version, client address resolved on every request", e);
+        }
+        contextGetter = getter;
+
+        getter = null;
+        try {
+            Field allocated = AbstractNonblockingServer.class.getDeclaredField("readBufferBytesAllocated");
+            allocated.setAccessible(true);
+            getter = MethodHandles.lookup().unreflectGetter(allocated);
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            log.warn("Unsupported libthrift version, read buffer metrics not available", e);
+        }
+        readBufferBytesGetter = getter;
+
+        getter = null;
+        try {
+            Field acceptThread = TThreadedSelectorServer.class.getDeclaredField("acceptThread");
+            acceptThread.setAccessible(true);
+            getter = MethodHandles.lookup().unreflectGetter(acceptThread);
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            log.warn("Unsupported libthrift version, port released only on server stop", e);
+        }
+        acceptThreadGetter = getter;
+
+        getter = null;
+        MethodHandle buffer = null;
+        try {
+            Field state = FrameBuffer.class.getDeclaredField("state_");
+            state.setAccessible(true);
+            getter = MethodHandles.lookup().unreflectGetter(state);
+            Field frame = FrameBuffer.class.getDeclaredField("buffer_");
+            frame.setAccessible(true);
+            buffer = MethodHandles.lookup().unreflectGetter(frame);
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            log.warn("Unsupported libthrift version, idle connections not closed on drain", e);
+            getter = null;
+            buffer = null;
+        }
+        stateGetter = getter;
+        bufferGetter = buffer;
     }
 
+    private final ThriftConnectionTracker connectionTracker;
+    private final long readBufferBudget;
+    private final AtomicLong readBufferBytes;
 
     /**
      * Create the server with the specified Args configuration
@@ -46,26 +107,193 @@ public class TThreadedSelectorServerWithIpLogging extends TThreadedSelectorServe
      * @param args
      */
     public TThreadedSelectorServerWithIpLogging(Args args) {
+        this(args, DEFAULT_NAME);
+    }
+
+    /**
+     * @param args
+     * @param name server name in client metrics
+     */
+    public TThreadedSelectorServerWithIpLogging(Args args, String name) {
         super(args);
+        connectionTracker = new ThriftConnectionTracker(name);
+        setServerEventHandler(connectionTracker);
+        readBufferBudget = args.maxReadBufferBytes;
+        AtomicLong allocated = null;
+        if (readBufferBytesGetter != null) {
+            try {
+                allocated = (AtomicLong) readBufferBytesGetter.invoke(this);
+            } catch (Throwable ex) {
+                log.warn("Unable to access read buffer counter", ex);
+            }
+        }
+        readBufferBytes = allocated;
+    }
+
+
+    /**
+     * @return time between read of current request frame and start of its processing,
+     *         0 if called outside of server worker thread
+     */
+    public static long getQueueTimeNanos() {
+        return queueTimeNanos.get()[0];
+    }
+
+    /**
+     * @return connections and requests per client ip
+     */
+    public Collection<ThriftClientStatistic> getClientStatistics() {
+        return connectionTracker.getClients();
     }
 
+    /**
+     * Memory budget of all request frames, read but not yet processed.
+     * When budget exhausted selectors stop reading new frames until processing of previous frames finished
+     */
+    public long getReadBufferBudget() {
+        return readBufferBudget;
+    }
 
+    /**
+     * @return memory allocated by frames, read but not yet processed. -1 if not available in libthrift version
+     */
+    public long getReadBufferBytes() {
+        return readBufferBytes == null ? -1 : readBufferBytes.get();
+    }
 
-    @Override
-    protected Runnable getRunnable(FrameBuffer frameBuffer) {
-        return () -> {
-            if (socketGetter != null) {
+    /**
+     * Close server socket, new connections refused. Accepted connections served until stop
+     */
+    public void stopAccepting() {
+        stopListening();
+        // Сокет, зарегистрированный в селекторе, реально закрывается только на следующем select
+        if (acceptThreadGetter != null) {
+            try {
+                AcceptThread acceptThread = (AcceptThread) acceptThreadGetter.invoke(this);
+                if (acceptThread != null) {
+                    acceptThread.wakeupSelector();
+                }
+            } catch (Throwable ex) {
+                log.warn("Unable to wake up accept thread", ex);
+            }
+        }
+    }
+
+    /**
+     * Close connections waiting for next request, so clients send it to other server.
+     * Connection with request in progress become idle after response written, so called repeatedly on drain.
+     * Connections without any request not tracked, they closed on stop
+     * @return number of closed connections
+     */
+    public int closeIdleConnections() {
+        if (stateGetter == null || socketGetter == null) {
+            return 0;
+        }
+        int closed = 0;
+        for (ThriftConnectionTracker.Connection connection : connectionTracker.getConnections()) {
+            Object attachment = connection.attachment();
+            if (attachment instanceof FrameBuffer && isIdle((FrameBuffer) attachment)) {
                 try {
-                    SocketChannel socketChannel = (SocketChannel) socketGetter.invoke(frameBuffer);
-                    InetSocketAddress remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
-                    String adr = remoteAddress.getAddress().toString();
-                    ThriftLogContext.setClientAddress(adr);
+                    SocketChannel socketChannel = (SocketChannel) socketGetter.invoke((FrameBuffer) attachment);
+                    // Ключ отменяется при закрытии канала, селектор больше не вызовет deleteContext
+                    socketChannel.close();
+                    connection.close();
+                    closed++;
                 } catch (Throwable ex) {
-                    log.error("Unable to resolve remote address", ex);
+                    log.warn("Unable to close idle connection {}", connection.getClientAddress(), ex);
                 }
             }
-            frameBuffer.invoke();
+        }
+        return closed;
+    }
+
+    /**
+     * @return true if response written and no byte of next frame read
+     */
+    private static boolean isIdle(FrameBuffer frameBuffer) {
+        try {
+            Enum<?> state = (Enum<?>) stateGetter.invoke(frameBuffer);
+            ByteBuffer buffer = (ByteBuffer) bufferGetter.invoke(frameBuffer);
+            return "READING_FRAME_SIZE".equals(state.name()) && buffer.position() == 0;
+        } catch (Throwable ex) {
+            log.warn("Unable to get connection state", ex);
+            return false;
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        connectionTracker.close();
+    }
+
+    @Override
+    protected Runnable getRunnable(FrameBuffer frameBuffer) {
+        long readNanos = System.nanoTime();
+        return () -> {
+            long[] queueTime = queueTimeNanos.get();
+            queueTime[0] = System.nanoTime() - readNanos;
+            ThriftLogContext.setRequestReadNanos(readNanos);
+            String adr = getClientAddress(frameBuffer);
+            if (adr != null) {
+                ThriftLogContext.setClientAddress(adr);
+            }
+            try {
+                frameBuffer.invoke();
+            } finally {
+                queueTime[0] = 0;
+                ThriftLogContext.setRequestReadNanos(0);
+            }
         };
     }
 
+    private String getClientAddress(FrameBuffer frameBuffer) {
+        ThriftConnectionTracker.Connection connection = getConnection(frameBuffer);
+        if (connection == null) {
+            return resolveAddress(frameBuffer);
+        }
+        String adr = connection.getClientAddress();
+        if (adr == null) {
+            // Первый запрос соединения, адрес клиента не меняется, следующие запросы берут его из контекста
+            connection.attach(frameBuffer);
+            adr = resolveAddress(frameBuffer);
+            if (adr != null) {
+                connection.connected(adr);
+            }
+        }
+        connection.request();
+        return adr;
+    }
+
+    private static ThriftConnectionTracker.Connection getConnection(FrameBuffer frameBuffer) {
+        if (contextGetter == null) {
+            return null;
+        }
+        try {
+            Object context = contextGetter.invoke(frameBuffer);
+            if (context instanceof ThriftConnectionTracker.Connection) {
+                return (ThriftConnectionTracker.Connection) context;
+            } else {
+                return null;
+            }
+        } catch (Throwable ex) {
+            log.error("Unable to get connection context", ex);
+            return null;
+        }
+    }
+
+    private static String resolveAddress(FrameBuffer frameBuffer) {
+        if (socketGetter == null) {
+            return null;
+        }
+        try {
+            SocketChannel socketChannel = (SocketChannel) socketGetter.invoke(frameBuffer);
+            InetSocketAddress remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
+            return remoteAddress.getAddress().toString();
+        } catch (Throwable ex) {
+            log.error("Unable to resolve remote address", ex);
+            return null;
+        }
+    }
+
 }
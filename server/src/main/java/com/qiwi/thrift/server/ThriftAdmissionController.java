@@ -0,0 +1,16 @@
+package com.qiwi.thrift.server;
+
+/**
+ * Decide to process or shed request before it passed to implementation.
+ * Called from server worker threads concurrently.
+ */
+@FunctionalInterface
+public interface ThriftAdmissionController {
+    ThriftAdmissionController UNLIMITED = queueTimeNanos -> true;
+
+    /**
+     * @param queueTimeNanos time between request frame read and start of processing
+     * @return false if request should be rejected with overload error
+     */
+    boolean tryAdmit(long queueTimeNanos);
+}
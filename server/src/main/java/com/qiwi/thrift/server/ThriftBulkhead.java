@@ -0,0 +1,58 @@
+package com.qiwi.thrift.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limit of requests processed concurrently by method, endpoint or whole server.
+ * Request, what not fit in limit, rejected at once, so slow endpoint can't hold all server threads.
+ *
+ * Permit acquired from bulkhead and all its parents, method -> endpoint -> server.
+ */
+class ThriftBulkhead {
+    private final int limit;
+    private final ThriftBulkhead parent;
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * @param limit max requests processed concurrently, 0 - unlimited
+     * @param parent bulkhead of enclosing level, null for server level
+     */
+    ThriftBulkhead(int limit, ThriftBulkhead parent) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Concurrency limit must be non negative");
+        }
+        this.limit = limit;
+        this.parent = parent;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getActive() {
+        return active.get();
+    }
+
+    /**
+     * @return false if limit of this bulkhead or one of parents reached, in this case nothing acquired
+     */
+    boolean tryAcquire() {
+        int current = active.incrementAndGet();
+        if (limit > 0 && current > limit) {
+            active.decrementAndGet();
+            return false;
+        }
+        if (parent != null && !parent.tryAcquire()) {
+            active.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void release() {
+        active.decrementAndGet();
+        if (parent != null) {
+            parent.release();
+        }
+    }
+}
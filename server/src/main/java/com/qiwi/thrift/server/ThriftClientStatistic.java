@@ -0,0 +1,71 @@
+package com.qiwi.thrift.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connections and requests of one client address
+ */
+public class ThriftClientStatistic {
+    /**
+     * Statistic of clients above limit collected together
+     */
+    public static final String OTHER_CLIENTS = "other";
+
+    private final String clientAddress;
+    private final AtomicLong activeConnections = new AtomicLong();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+
+    ThriftClientStatistic(String clientAddress) {
+        this.clientAddress = clientAddress;
+    }
+
+    /**
+     * @return client ip, or OTHER_CLIENTS if too many clients connected to server
+     */
+    public String getClientAddress() {
+        return clientAddress;
+    }
+
+    /**
+     * @return open connections, what send at least one request
+     */
+    public long getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return total number of connections, what send at least one request
+     */
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    void connectionOpened() {
+        activeConnections.incrementAndGet();
+        connections.increment();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    void request() {
+        requests.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "ThriftClientStatistic{" +
+                "clientAddress='" + clientAddress + '\'' +
+                ", activeConnections=" + activeConnections +
+                ", connections=" + connections +
+                ", requests=" + requests +
+                '}';
+    }
+}
@@ -0,0 +1,170 @@
+package com.qiwi.thrift.server;
+
+import com.qiwi.thrift.metrics.ThriftMonitoring;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.ServerContext;
+import org.apache.thrift.server.TServerEventHandler;
+import org.apache.thrift.transport.TTransport;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Create context for every accepted connection. Client address resolved on first request
+ * and stored in context, so next requests of connection only read it.
+ */
+class ThriftConnectionTracker implements TServerEventHandler {
+    static final int MAX_CLIENTS = 4096;
+
+    private final String serverName;
+    private final ConcurrentMap<String, ThriftClientStatistic> clients = new ConcurrentHashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    /**
+     * Connection of blocking server, accepted in current thread and not yet passed to createContext
+     */
+    private final ThreadLocal<Connection> accepted = new ThreadLocal<>();
+
+    ThriftConnectionTracker(String serverName) {
+        this.serverName = serverName;
+    }
+
+    Collection<ThriftClientStatistic> getClients() {
+        return Collections.unmodifiableCollection(clients.values());
+    }
+
+    /**
+     * @return open connections
+     */
+    Collection<Connection> getConnections() {
+        return Collections.unmodifiableCollection(connections);
+    }
+
+    ThriftClientStatistic getClient(String clientAddress) {
+        ThriftClientStatistic statistic = clients.get(clientAddress);
+        if (statistic != null) {
+            return statistic;
+        }
+        if (clients.size() >= MAX_CLIENTS) {
+            clientAddress = ThriftClientStatistic.OTHER_CLIENTS;
+        }
+        return clients.computeIfAbsent(clientAddress, address -> {
+            ThriftClientStatistic created = new ThriftClientStatistic(address);
+            ThriftMonitoring.getMonitor().registerServerClient(
+                    serverName,
+                    address,
+                    created::getActiveConnections,
+                    created::getConnections,
+                    created::getRequests
+            );
+            return created;
+        });
+    }
+
+    void close() {
+        for (String clientAddress : clients.keySet()) {
+            ThriftMonitoring.getMonitor().unRegisterServerClient(serverName, clientAddress);
+        }
+        clients.clear();
+        connections.clear();
+    }
+
+    @Override
+    public void preServe() {
+    }
+
+    /**
+     * Used by blocking server, where connection known before createContext
+     * @return connection, returned by next createContext call in current thread
+     */
+    Connection accept() {
+        Connection stale = accepted.get();
+        if (stale != null) {
+            // Соединение закрылось до createContext
+            stale.close();
+        }
+        Connection connection = new Connection();
+        accepted.set(connection);
+        return connection;
+    }
+
+    @Override
+    public ServerContext createContext(TProtocol input, TProtocol output) {
+        Connection connection = accepted.get();
+        if (connection == null) {
+            connection = new Connection();
+        } else {
+            accepted.remove();
+        }
+        connections.add(connection);
+        return connection;
+    }
+
+    @Override
+    public void deleteContext(ServerContext serverContext, TProtocol input, TProtocol output) {
+        if (serverContext instanceof Connection) {
+            ((Connection) serverContext).close();
+        }
+    }
+
+    @Override
+    public void processContext(ServerContext serverContext, TTransport inputTransport, TTransport outputTransport) {
+    }
+
+    /**
+     * Context of one connection. Frames of connection processed sequentially,
+     * but each frame can be processed by other worker thread
+     */
+    class Connection implements ServerContext {
+        private volatile String clientAddress;
+        private volatile ThriftClientStatistic statistic;
+        private volatile Object attachment;
+
+        /**
+         * @return null if address not resolved yet
+         */
+        String getClientAddress() {
+            return clientAddress;
+        }
+
+        void connected(String clientAddress) {
+            ThriftClientStatistic client = getClient(clientAddress);
+            client.connectionOpened();
+            this.statistic = client;
+            this.clientAddress = clientAddress;
+        }
+
+        /**
+         * @param attachment server specific state of connection, selector server store frame buffer here
+         */
+        void attach(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        /**
+         * @return null if nothing attached
+         */
+        Object attachment() {
+            return attachment;
+        }
+
+        void request() {
+            ThriftClientStatistic client = statistic;
+            if (client != null) {
+                client.request();
+            }
+        }
+
+        void close() {
+            connections.remove(this);
+            attachment = null;
+            ThriftClientStatistic client = statistic;
+            if (client != null) {
+                statistic = null;
+                client.connectionClosed();
+            }
+        }
+    }
+}
@@ -17,6 +17,9 @@ public class ThriftEndpoint<I> {
     private final Set<String> endpointNames;
     private final Function<I, TProcessor> endpointProcessorFactory;
     private final Map<String, String> tags;
+    private final int maxConcurrentRequests;
+    private final Map<String, Integer> methodMaxConcurrentRequests;
+    private final Set<String> healthCheckMethods;
 
     private ThriftEndpoint(Builder<I> builder) {
         this.endpointNames = builder.getEndpointNames();
@@ -27,6 +30,9 @@ public class ThriftEndpoint<I> {
         this.interfaceClass = builder.getInterfaceClass();
         this.endpointProcessorFactory = builder.getEndpointProcessorFactory();
         this.tags = builder.getTags();
+        this.maxConcurrentRequests = builder.getMaxConcurrentRequests();
+        this.methodMaxConcurrentRequests = builder.getMethodMaxConcurrentRequests();
+        this.healthCheckMethods = builder.getHealthCheckMethods();
     }
 
     public Class<I> getInterfaceClass() {
@@ -61,6 +67,18 @@ public class ThriftEndpoint<I> {
         return tags;
     }
 
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public Map<String, Integer> getMethodMaxConcurrentRequests() {
+        return methodMaxConcurrentRequests;
+    }
+
+    public Set<String> getHealthCheckMethods() {
+        return healthCheckMethods;
+    }
+
     public static class Builder<I> {
         private final Class<I> interfaceClass;
         private final I implementation;
@@ -69,6 +87,9 @@ public class ThriftEndpoint<I> {
         private Optional<Set<String>> endpointNames = Optional.empty();
         private Function<I, TProcessor> endpointProcessorFactory;
         private Map<String, String> tags = new HashMap<>();
+        private int maxConcurrentRequests = 0;
+        private Map<String, Integer> methodMaxConcurrentRequests = new HashMap<>();
+        private Set<String> healthCheckMethods = Collections.emptySet();
 
         public Builder(Class<I> interfaceClass, I implementation) {
             this.interfaceClass = Objects.requireNonNull(interfaceClass);
@@ -161,7 +182,68 @@ public class ThriftEndpoint<I> {
             return this;
         }
 
+        public int getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        /**
+         * Bulkhead of endpoint: requests above limit rejected with TApplicationException,
+         * so slow endpoint can't hold all threads of server.
+         * @param maxConcurrentRequests - 0 - unlimited
+         * @return
+         */
+        public Builder<I> setMaxConcurrentRequests(int maxConcurrentRequests) {
+            if (maxConcurrentRequests < 0) {
+                throw new IllegalArgumentException("Concurrency limit must be non negative");
+            }
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        public Map<String, Integer> getMethodMaxConcurrentRequests() {
+            return Collections.unmodifiableMap(new HashMap<>(methodMaxConcurrentRequests));
+        }
+
+        /**
+         * Limit of single method, checked in addition to endpoint limit
+         * @param methodName - thrift method name
+         * @param maxConcurrentRequests - 0 - unlimited
+         * @return
+         */
+        public Builder<I> setMethodMaxConcurrentRequests(String methodName, int maxConcurrentRequests) {
+            if (maxConcurrentRequests < 0) {
+                throw new IllegalArgumentException("Concurrency limit must be non negative");
+            }
+            methodMaxConcurrentRequests.put(Objects.requireNonNull(methodName), maxConcurrentRequests);
+            return this;
+        }
+
+        public Set<String> getHealthCheckMethods() {
+            return healthCheckMethods;
+        }
+
+        /**
+         * Health check methods bypass concurrency limits and load shedding,
+         * and use threads reserved by health_check_reserved_threads.
+         * Default: empty, method names not guessed - business method named like health check would bypass limits.
+         * Required if endpoint has concurrency limits
+         * @param healthCheckMethods
+         * @return
+         */
+        public Builder<I> setHealthCheckMethods(Set<String> healthCheckMethods) {
+            this.healthCheckMethods = Collections.unmodifiableSet(new LinkedHashSet<>(healthCheckMethods));
+            return this;
+        }
+
         public ThriftEndpoint<I> build() {
+            boolean limited = maxConcurrentRequests > 0
+                    || methodMaxConcurrentRequests.values().stream().anyMatch(limit -> limit > 0);
+            // Иначе при достижении лимита health check отклоняется и клиенты исключают сервер из балансировки
+            if (limited && healthCheckMethods.isEmpty()) {
+                throw new IllegalStateException(
+                        "Endpoint " + getEndpointNames() + " has concurrency limits, but no health check methods"
+                );
+            }
             return new ThriftEndpoint<I>(this);
         }
     }
@@ -0,0 +1,272 @@
+package com.qiwi.thrift.server;
+
+import com.qiwi.thrift.metrics.ThriftCallType;
+import com.qiwi.thrift.metrics.ThriftMonitoring;
+import com.qiwi.thrift.tracing.ThriftLogContext;
+import com.qiwi.thrift.tracing.ThriftRequestReporter;
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import com.qiwi.thrift.utils.ThriftRequestStatus;
+import org.apache.thrift.ProcessFunction;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TBaseProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.meta_data.FieldMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Processor of generated service, what call implementation directly.
+ * Every ProcessFunction wrapped to report metrics, call ThriftRequestReporter and log errors,
+ * so there are no proxy, Method.invoke and arguments array on request path.
+ *
+ * Reflection used only on server start.
+ */
+class ThriftInstrumentedProcessor<I> extends TBaseProcessor<I> {
+    private static final Logger log = LoggerFactory.getLogger(ThriftInstrumentedProcessor.class);
+
+    private static final Method isOnewayMethod = findIsOneway();
+
+    private ThriftInstrumentedProcessor(I implementation, Map<String, ProcessFunction<I, ? extends TBase>> processMap) {
+        super(implementation, processMap);
+    }
+
+    /**
+     * @param processor processor created for implementation by endpoint processor factory
+     * @return empty if processor not generated by thrift, and can't be instrumented
+     */
+    @SuppressWarnings("unchecked")
+    static <I> Optional<TProcessor> wrap(
+            TProcessor processor,
+            I implementation,
+            String serviceName,
+            ThriftClientAddress address,
+            ThriftRequestReporter requestReporter
+    ) {
+        if (!(processor instanceof TBaseProcessor) || isOnewayMethod == null) {
+            return Optional.empty();
+        }
+        Map<String, ProcessFunction<I, ? extends TBase>> functions =
+                ((TBaseProcessor<I>) processor).getProcessMapView();
+        Map<String, ProcessFunction<I, ? extends TBase>> processMap = new HashMap<>();
+        try {
+            for (Map.Entry<String, ProcessFunction<I, ? extends TBase>> entry : functions.entrySet()) {
+                ProcessFunction<I, TBase> function = (ProcessFunction<I, TBase>) entry.getValue();
+                processMap.put(entry.getKey(), new InstrumentedFunction<>(
+                        function,
+                        (Boolean) isOnewayMethod.invoke(function),
+                        serviceName,
+                        address,
+                        requestReporter
+                ));
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Unable to instrument processor {} of service {}", processor.getClass(), serviceName, e);
+            return Optional.empty();
+        }
+        return Optional.of(new ThriftInstrumentedProcessor<>(implementation, processMap));
+    }
+
+    private static Method findIsOneway() {
+        try {
+            Method method = ProcessFunction.class.getDeclaredMethod("isOneway");
+            method.setAccessible(true);
+            return method;
+        } catch (NoSuchMethodException | RuntimeException e) {
+            log.warn("Unsupported libthrift version, proxy used to instrument server", e);
+            return null;
+        }
+    }
+
+    private static class InstrumentedFunction<I, T extends TBase> extends ProcessFunction<I, T> {
+        private final ProcessFunction<I, T> delegate;
+        private final boolean oneway;
+        private final String serviceName;
+        private final String methodName;
+        private final ThriftClientAddress address;
+        private final ThriftRequestReporter requestReporter;
+        /**
+         * Поля исключений из throws метода. Класс результата известен только после первого вызова
+         */
+        private volatile TFieldIdEnum[] exceptionFields;
+
+        private InstrumentedFunction(
+                ProcessFunction<I, T> delegate,
+                boolean oneway,
+                String serviceName,
+                ThriftClientAddress address,
+                ThriftRequestReporter requestReporter
+        ) {
+            super(delegate.getMethodName());
+            this.delegate = Objects.requireNonNull(delegate);
+            this.oneway = oneway;
+            this.serviceName = serviceName;
+            this.methodName = delegate.getMethodName();
+            this.address = address;
+            this.requestReporter = requestReporter;
+        }
+
+        @Override
+        protected boolean isOneway() {
+            return oneway;
+        }
+
+        @Override
+        public T getEmptyArgsInstance() {
+            return delegate.getEmptyArgsInstance();
+        }
+
+        @Override
+        public TBase getResult(I iface, T args) throws TException {
+            long startNanos = System.nanoTime();
+            try {
+                requestReporter.requestBegin(serviceName, methodName, ThriftCallType.SERVER);
+                if (log.isTraceEnabled()) {
+                    log.trace(
+                            "Method call {}.{} with arguments {} client ip {}",
+                            serviceName,
+                            methodName,
+                            args,
+                            ThriftLogContext.getClientAddress()
+                    );
+                }
+            } catch (Exception ex) {
+                log.warn(
+                        "RequestReporter.requestBegin for method {}.{} client ip {} fail with error",
+                        serviceName,
+                        methodName,
+                        ThriftLogContext.getClientAddress(),
+                        ex
+                );
+            }
+            ThriftRequestStatus status = ThriftRequestStatus.SUCCESS;
+            Throwable cause = null;
+            TBase response = null;
+            try {
+                response = delegate.getResult(iface, args);
+                // Исключения из throws сгенерированный код кладёт в результат
+                cause = getDeclaredException(response);
+                if (cause != null) {
+                    logFail(args, cause);
+                    status = ThriftRequestStatus.UNEXPECTED_ERROR;
+                }
+                return response;
+            } catch (RuntimeException | TException ex) {
+                cause = ex;
+                logFail(args, cause);
+                status = ThriftRequestStatus.UNEXPECTED_ERROR;
+                throw ex;
+            } catch (Throwable ex) {
+                cause = ex;
+                status = ThriftRequestStatus.UNEXPECTED_ERROR;
+                log.error(
+                        "Method {}.{} fail with error. Client ip {}",
+                        serviceName,
+                        methodName,
+                        ThriftLogContext.getClientAddress(),
+                        ex
+                );
+                throw ex;
+            } finally {
+                long duration = System.nanoTime() - startNanos;
+                try {
+                    ThriftMonitoring.getMonitor().logMethodCall(
+                            ThriftCallType.SERVER,
+                            address,
+                            serviceName,
+                            methodName,
+                            duration,
+                            status
+                    );
+                    requestReporter.requestEnd(
+                            serviceName,
+                            methodName,
+                            ThriftCallType.SERVER,
+                            status,
+                            duration,
+                            Optional.ofNullable(cause)
+                    );
+                    if (log.isDebugEnabled()) {
+                        log.debug(
+                                "Implementation respond {} in {} ms to method {}.{} with args {}",
+                                response,
+                                duration / 1_000_000d,
+                                serviceName,
+                                methodName,
+                                args,
+                                cause
+                        );
+                    }
+                } catch (Exception ex) {
+                    log.warn(
+                            "RequestReporter.requestEnd for method {}.{} client ip {} fail with error",
+                            serviceName,
+                            methodName,
+                            ThriftLogContext.getClientAddress(),
+                            ex
+                    );
+                }
+            }
+        }
+
+        private void logFail(T args, Throwable cause) {
+            if (cause instanceof RuntimeException) {
+                log.error(
+                        "Method {}.{} fail with exception. Args {}. Client ip {}",
+                        serviceName,
+                        methodName,
+                        args,
+                        ThriftLogContext.getClientAddress(),
+                        cause
+                );
+            } else {
+                log.info(
+                        "Method {}.{} fail with exception. Args {}. Client ip {}",
+                        serviceName,
+                        methodName,
+                        args,
+                        ThriftLogContext.getClientAddress(),
+                        cause
+                );
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Throwable getDeclaredException(TBase response) {
+            if (response == null) {
+                return null;
+            }
+            TFieldIdEnum[] fields = exceptionFields;
+            if (fields == null) {
+                fields = findExceptionFields(response.getClass());
+                exceptionFields = fields;
+            }
+            for (TFieldIdEnum field : fields) {
+                if (response.isSet(field)) {
+                    return (Throwable) response.getFieldValue(field);
+                }
+            }
+            return null;
+        }
+
+        private static TFieldIdEnum[] findExceptionFields(Class<? extends TBase> resultClass) {
+            List<TFieldIdEnum> fields = new ArrayList<>();
+            for (TFieldIdEnum field : FieldMetaData.getStructMetaDataMap(resultClass).keySet()) {
+                // 0 - success, остальные поля результата - исключения
+                if (field.getThriftFieldId() != 0) {
+                    fields.add(field);
+                }
+            }
+            return fields.toArray(new TFieldIdEnum[fields.size()]);
+        }
+    }
+}
@@ -5,15 +5,24 @@ import com.qiwi.thrift.tracing.ThriftRequestReporter;
 import com.qiwi.thrift.tracing.ThriftTraceMode;
 import com.qiwi.thrift.utils.ParameterSource;
 import com.qiwi.thrift.utils.ThriftClientAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Objects;
 import java.util.Optional;
 
 public class ThriftServerConfig {
+    private static final Logger log = LoggerFactory.getLogger(ThriftServerConfig.class);
 
     public static final int DEFAULT_THRIFT_POOL_SIZE = 128;
     public static final int DEFAULT_THRIFT_SELECTOR_THREADS = -1;
     public static final int DEFAULT_MAX_FRAME_SIZE = 1 * 1024 * 1024;
+    public static final int DEFAULT_EXECUTOR_QUEUE_SIZE = 1024;
+    private static final int FRAME_HEADER_SIZE = 4;
+    public static final long DEFAULT_READ_BUFFER_BUDGET = 64 * 1024 * 1024;
+    public static final Duration DEFAULT_DRAIN_TIMEOUT = Duration.ofSeconds(10);
+    public static final int DEFAULT_HEALTH_CHECK_RESERVED_THREADS = -1;
 
     private final int thriftPoolSize;
     private final int thriftSelectorThreads;
@@ -21,6 +30,16 @@ public class ThriftServerConfig {
     private final int maxFrameSizeBytes;
     private final ThriftTraceMode traceMode;
     private final ThriftRequestReporter requestReporter;
+    private final ThriftAdmissionController admissionController;
+    private final ThriftServerExecutorType executorType;
+    private final int executorQueueSize;
+    private final ThriftServerExecutorType.RejectionPolicy executorRejectionPolicy;
+    private final boolean renameThreads;
+    private final ThriftServerEngine serverEngine;
+    private final long readBufferBudgetBytes;
+    private final Duration drainGracePeriod;
+    private final Duration drainTimeout;
+    private final int healthCheckReservedThreads;
 
     public int getThriftPoolSize() {
         return thriftPoolSize;
@@ -51,6 +70,49 @@ public class ThriftServerConfig {
         return traceMode;
     }
 
+    public ThriftAdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public ThriftServerExecutorType getExecutorType() {
+        return executorType;
+    }
+
+    public int getExecutorQueueSize() {
+        return executorQueueSize;
+    }
+
+    public ThriftServerExecutorType.RejectionPolicy getExecutorRejectionPolicy() {
+        return executorRejectionPolicy;
+    }
+
+    public boolean isRenameThreads() {
+        return renameThreads;
+    }
+
+    public ThriftServerEngine getServerEngine() {
+        return serverEngine;
+    }
+
+    /**
+     * @return read buffer budget, not less than one frame of max size
+     */
+    public long getReadBufferBudgetBytes() {
+        return Math.max(readBufferBudgetBytes, maxFrameSizeBytes + FRAME_HEADER_SIZE);
+    }
+
+    public Duration getDrainGracePeriod() {
+        return drainGracePeriod;
+    }
+
+    public Duration getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public int getHealthCheckReservedThreads() {
+        return healthCheckReservedThreads;
+    }
+
     private ThriftServerConfig(
             Builder builder
     ) {
@@ -60,6 +122,16 @@ public class ThriftServerConfig {
         this.maxFrameSizeBytes = builder.getMaxFrameSizeBytes();
         this.requestReporter = builder.getRequestReporter();
         this.traceMode = builder.getTraceMode();
+        this.admissionController = builder.getAdmissionController();
+        this.executorType = builder.getExecutorType();
+        this.executorQueueSize = builder.getExecutorQueueSize();
+        this.executorRejectionPolicy = builder.getExecutorRejectionPolicy();
+        this.renameThreads = builder.isRenameThreads();
+        this.serverEngine = builder.getServerEngine();
+        this.readBufferBudgetBytes = builder.getReadBufferBudgetBytes();
+        this.drainGracePeriod = builder.getDrainGracePeriod();
+        this.drainTimeout = builder.getDrainTimeout();
+        this.healthCheckReservedThreads = builder.getHealthCheckReservedThreads();
     }
 
     @Override
@@ -75,7 +147,16 @@ public class ThriftServerConfig {
                 thriftSelectorThreads == that.thriftSelectorThreads &&
                 serverThriftPort == that.serverThriftPort &&
                 maxFrameSizeBytes == that.maxFrameSizeBytes &&
-                traceMode == that.traceMode;
+                readBufferBudgetBytes == that.readBufferBudgetBytes &&
+                executorQueueSize == that.executorQueueSize &&
+                renameThreads == that.renameThreads &&
+                healthCheckReservedThreads == that.healthCheckReservedThreads &&
+                traceMode == that.traceMode &&
+                executorType == that.executorType &&
+                executorRejectionPolicy == that.executorRejectionPolicy &&
+                serverEngine == that.serverEngine &&
+                Objects.equals(drainGracePeriod, that.drainGracePeriod) &&
+                Objects.equals(drainTimeout, that.drainTimeout);
     }
 
     @Override
@@ -85,7 +166,16 @@ public class ThriftServerConfig {
                 thriftSelectorThreads,
                 serverThriftPort,
                 maxFrameSizeBytes,
-                traceMode
+                traceMode,
+                executorType,
+                executorQueueSize,
+                executorRejectionPolicy,
+                renameThreads,
+                serverEngine,
+                readBufferBudgetBytes,
+                drainGracePeriod,
+                drainTimeout,
+                healthCheckReservedThreads
         );
     }
 
@@ -96,6 +186,18 @@ public class ThriftServerConfig {
         private int maxFrameSizeBytes = DEFAULT_MAX_FRAME_SIZE;
         private ThriftTraceMode traceMode = ThriftTraceMode.BASIC;
         private ThriftRequestReporter requestReporter = ThriftLogContext.getDefaultServerReporter();
+        private Duration admissionTargetQueueTime = Duration.ZERO;
+        private Duration admissionInterval = Duration.ofMillis(100);
+        private Duration drainGracePeriod = Duration.ZERO;
+        private Duration drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+        private int healthCheckReservedThreads = DEFAULT_HEALTH_CHECK_RESERVED_THREADS;
+        private ThriftAdmissionController admissionController = null;
+        private ThriftServerExecutorType executorType = ThriftServerExecutorType.FIXED;
+        private int executorQueueSize = DEFAULT_EXECUTOR_QUEUE_SIZE;
+        private ThriftServerExecutorType.RejectionPolicy executorRejectionPolicy = ThriftServerExecutorType.RejectionPolicy.CALLER_RUNS;
+        private boolean renameThreads = false;
+        private ThriftServerEngine serverEngine = ThriftServerEngine.SELECTOR;
+        private long readBufferBudgetBytes = DEFAULT_READ_BUFFER_BUDGET;
         private ParameterSource source = ParameterSource.EMPTY;
 
         public int getThriftPoolSize() {
@@ -185,6 +287,237 @@ public class ThriftServerConfig {
             return this;
         }
 
+        public Duration getAdmissionTargetQueueTime() {
+            return source.getDuration("admission_target_queue_time_ms", admissionTargetQueueTime);
+        }
+
+        /**
+         * Name: admission_target_queue_time_ms
+         * Default: 0 - load shedding disabled
+         * @param admissionTargetQueueTime - acceptable time between request read and processing start.
+         *                                 If queue time stay above target during admission interval,
+         *                                 server reject requests waited more than two targets with overload error.
+         *                                 Only for SELECTOR engine: THREAD_PER_CONNECTION read request
+         *                                 in processing thread, so queue time is unknown and requests never shed
+         * @return
+         */
+        public Builder setAdmissionTargetQueueTime(Duration admissionTargetQueueTime) {
+            this.admissionTargetQueueTime = Objects.requireNonNull(admissionTargetQueueTime);
+            return this;
+        }
+
+        public Duration getAdmissionInterval() {
+            return source.getDuration("admission_interval_ms", admissionInterval);
+        }
+
+        /**
+         * Name: admission_interval_ms
+         * Default: 100 ms
+         * @param admissionInterval - period of overload detection
+         * @return
+         */
+        public Builder setAdmissionInterval(Duration admissionInterval) {
+            this.admissionInterval = Objects.requireNonNull(admissionInterval);
+            return this;
+        }
+
+        public ThriftAdmissionController getAdmissionController() {
+            if (admissionController != null) {
+                return admissionController;
+            }
+            Duration target = getAdmissionTargetQueueTime();
+            if (target.isZero() || target.isNegative()) {
+                return ThriftAdmissionController.UNLIMITED;
+            }
+            return new CoDelAdmissionController(target, getAdmissionInterval());
+        }
+
+        /**
+         * @param admissionController - custom admission control, replace controller
+         *                            created by admission_target_queue_time_ms
+         * @return
+         */
+        public Builder setAdmissionController(ThriftAdmissionController admissionController) {
+            this.admissionController = Objects.requireNonNull(admissionController);
+            return this;
+        }
+
+        public ThriftServerExecutorType getExecutorType() {
+            String val = source.getString("executor_type", executorType.name());
+            try {
+                return ThriftServerExecutorType.valueOf(val);
+            } catch (IllegalArgumentException ex) {
+                log.error("Unable to parse parameter {} with value {}", source.getFullPath("executor_type"), val, ex);
+                return executorType;
+            }
+        }
+
+        /**
+         * Name: executor_type
+         * Default: FIXED
+         * @param executorType - FIXED - pool_size threads with unbounded queue;
+         *                     BOUNDED - pool_size threads with queue of executor_queue_size;
+         *                     WORK_STEALING - ForkJoinPool with pool_size parallelism;
+         *                     VIRTUAL - virtual thread per request, JDK 21+ only
+         * @return
+         */
+        public Builder setExecutorType(ThriftServerExecutorType executorType) {
+            this.executorType = Objects.requireNonNull(executorType);
+            return this;
+        }
+
+        public int getExecutorQueueSize() {
+            return source.getInteger("executor_queue_size", executorQueueSize);
+        }
+
+        /**
+         * Name: executor_queue_size
+         * Default: 1024
+         * @param executorQueueSize - max requests waiting for thread, used by BOUNDED executor only
+         * @return
+         */
+        public Builder setExecutorQueueSize(int executorQueueSize) {
+            this.executorQueueSize = executorQueueSize;
+            return this;
+        }
+
+        public ThriftServerExecutorType.RejectionPolicy getExecutorRejectionPolicy() {
+            String val = source.getString("executor_rejection_policy", executorRejectionPolicy.name());
+            try {
+                return ThriftServerExecutorType.RejectionPolicy.valueOf(val);
+            } catch (IllegalArgumentException ex) {
+                log.error("Unable to parse parameter {} with value {}", source.getFullPath("executor_rejection_policy"), val, ex);
+                return executorRejectionPolicy;
+            }
+        }
+
+        /**
+         * Name: executor_rejection_policy
+         * Default: CALLER_RUNS
+         * @param executorRejectionPolicy - action on full queue of BOUNDED executor.
+         *                                CALLER_RUNS - slow down reading of new requests;
+         *                                REJECT - close connection of rejected request
+         * @return
+         */
+        public Builder setExecutorRejectionPolicy(ThriftServerExecutorType.RejectionPolicy executorRejectionPolicy) {
+            this.executorRejectionPolicy = Objects.requireNonNull(executorRejectionPolicy);
+            return this;
+        }
+
+        public boolean isRenameThreads() {
+            return source.getBoolean("rename_threads", renameThreads);
+        }
+
+        /**
+         * Name: rename_threads
+         * Default: false
+         * @param renameThreads - compatibility mode: name of thread contains processed method, visible in thread dump.
+         *                      Rename of thread is expensive on high request rate,
+         *                      method always available in log MDC as thriftMethod
+         * @return
+         */
+        public Builder setRenameThreads(boolean renameThreads) {
+            this.renameThreads = renameThreads;
+            return this;
+        }
+
+        public ThriftServerEngine getServerEngine() {
+            String val = source.getString("server_engine", serverEngine.name());
+            try {
+                return ThriftServerEngine.valueOf(val);
+            } catch (IllegalArgumentException ex) {
+                log.error("Unable to parse parameter {} with value {}", source.getFullPath("server_engine"), val, ex);
+                return serverEngine;
+            }
+        }
+
+        /**
+         * Name: server_engine
+         * Default: SELECTOR
+         * @param serverEngine - SELECTOR - non blocking server, handlers executed by executor_type pool;
+         *                     THREAD_PER_CONNECTION - blocking server with thread per connection,
+         *                     pool_size limit number of connections, executor_type ignored.
+         *                     Use it for many small requests from few clients
+         * @return
+         */
+        public Builder setServerEngine(ThriftServerEngine serverEngine) {
+            this.serverEngine = Objects.requireNonNull(serverEngine);
+            return this;
+        }
+
+        public long getReadBufferBudgetBytes() {
+            String val = source.getString("read_buffer_budget_bytes", Long.toString(readBufferBudgetBytes));
+            try {
+                return Long.parseLong(val);
+            } catch (NumberFormatException ex) {
+                log.error("Unable to parse parameter {} with value {}", source.getFullPath("read_buffer_budget_bytes"), val, ex);
+                return readBufferBudgetBytes;
+            }
+        }
+
+        /**
+         * Name: read_buffer_budget_bytes
+         * Default: 64 megabytes
+         * @param readBufferBudgetBytes - memory for all requests read by SELECTOR engine, but not yet processed.
+         *                              When budget exhausted, server stop reading sockets until memory freed.
+         *                              Can't be less than max_frame_size_bytes
+         * @return
+         */
+        public Builder setReadBufferBudgetBytes(long readBufferBudgetBytes) {
+            this.readBufferBudgetBytes = readBufferBudgetBytes;
+            return this;
+        }
+
+        public Duration getDrainGracePeriod() {
+            return source.getDuration("drain_grace_period_ms", drainGracePeriod);
+        }
+
+        /**
+         * Name: drain_grace_period_ms
+         * Default: 0 - stop accepting connections right after deregistration
+         * @param drainGracePeriod - time server continue accept connections after StatStopListener.onStop,
+         *                         while clients reload node list
+         * @return
+         */
+        public Builder setDrainGracePeriod(Duration drainGracePeriod) {
+            this.drainGracePeriod = Objects.requireNonNull(drainGracePeriod);
+            return this;
+        }
+
+        public Duration getDrainTimeout() {
+            return source.getDuration("drain_timeout_ms", drainTimeout);
+        }
+
+        /**
+         * Name: drain_timeout_ms
+         * Default: 10 seconds
+         * @param drainTimeout - max wait of requests in flight, after server stop accept connections.
+         *                     Requests not completed in this time are lost
+         * @return
+         */
+        public Builder setDrainTimeout(Duration drainTimeout) {
+            this.drainTimeout = Objects.requireNonNull(drainTimeout);
+            return this;
+        }
+
+        public int getHealthCheckReservedThreads() {
+            return source.getInteger("health_check_reserved_threads", healthCheckReservedThreads);
+        }
+
+        /**
+         * Name: health_check_reserved_threads
+         * Default: -1 - one thread, if some endpoint declare health check methods, otherwise no reserve
+         * @param healthCheckReservedThreads - threads of SELECTOR engine executor, what can process only
+         *                                   health check methods of endpoints. Other requests above
+         *                                   pool_size - health_check_reserved_threads rejected.
+         *                                   0 - no reserve, ignored for VIRTUAL executor
+         * @return
+         */
+        public Builder setHealthCheckReservedThreads(int healthCheckReservedThreads) {
+            this.healthCheckReservedThreads = healthCheckReservedThreads;
+            return this;
+        }
+
         public Builder fromParameters(ParameterSource source){
             this.source = Objects.requireNonNull(source);
             return this;
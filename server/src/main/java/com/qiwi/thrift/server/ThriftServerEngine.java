@@ -0,0 +1,17 @@
+package com.qiwi.thrift.server;
+
+/**
+ * Network engine of server. Endpoints, protocol, tracing and metrics are the same for all engines
+ */
+public enum ThriftServerEngine {
+    /**
+     * TThreadedSelectorServer: selector threads read requests, handlers executed by executor_type pool.
+     * Low latency for long requests, waiting for database or other services, and for large number of clients
+     */
+    SELECTOR,
+    /**
+     * TThreadPoolServer: one blocking thread per connection, pool_size limit number of connections.
+     * Best throughput for many small requests from few clients, every connection hold thread while open
+     */
+    THREAD_PER_CONNECTION,
+}
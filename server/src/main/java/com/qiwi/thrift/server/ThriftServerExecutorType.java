@@ -0,0 +1,37 @@
+package com.qiwi.thrift.server;
+
+/**
+ * Executor of server request handlers
+ */
+public enum ThriftServerExecutorType {
+    /**
+     * pool_size threads with unbounded queue. Default
+     */
+    FIXED,
+    /**
+     * pool_size threads with queue of executor_queue_size requests.
+     * When queue full executor_rejection_policy applied
+     */
+    BOUNDED,
+    /**
+     * ForkJoinPool with pool_size parallelism
+     */
+    WORK_STEALING,
+    /**
+     * New virtual thread per request, for handlers waiting on database or other services.
+     * Require JDK 21+, on older JDK FIXED executor used
+     */
+    VIRTUAL,
+    ;
+
+    public enum RejectionPolicy {
+        /**
+         * Connection with rejected request closed
+         */
+        REJECT,
+        /**
+         * Request executed in selector thread. Selector stop reading new requests until handler finished
+         */
+        CALLER_RUNS,
+    }
+}
@@ -0,0 +1,156 @@
+package com.qiwi.thrift.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Create executor for request handlers by ThriftServerConfig
+ */
+final class ThriftServerExecutors {
+    private static final Logger log = LoggerFactory.getLogger(ThriftServerExecutors.class);
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor, available since JDK 21.
+     * Ищем через MethodHandle, чтобы jar собирался и работал на Java 8
+     */
+    private static final Optional<MethodHandle> virtualExecutorFactory = findVirtualExecutorFactory();
+
+    private static final long CONNECTION_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private ThriftServerExecutors() {
+    }
+
+    static InstrumentedExecutorService create(ThriftServerConfig config) {
+        ThriftServerExecutorType type = config.getExecutorType();
+        int poolSize = config.getThriftPoolSize();
+        switch (type) {
+            case FIXED:
+                return new InstrumentedExecutorService(fixed(poolSize), type);
+            case BOUNDED:
+                RejectedExecutionHandler handler;
+                switch (config.getExecutorRejectionPolicy()) {
+                    case CALLER_RUNS:
+                        handler = new ThreadPoolExecutor.CallerRunsPolicy();
+                        break;
+                    case REJECT:
+                        handler = new ThreadPoolExecutor.AbortPolicy();
+                        break;
+                    default:
+                        throw new IllegalStateException("Policy " + config.getExecutorRejectionPolicy() + " not implemented");
+                }
+                return new InstrumentedExecutorService(
+                        new ThreadPoolExecutor(
+                                poolSize,
+                                poolSize,
+                                0L,
+                                TimeUnit.MILLISECONDS,
+                                new ArrayBlockingQueue<>(Math.max(config.getExecutorQueueSize(), 1)),
+                                threadFactory(),
+                                handler
+                        ),
+                        type
+                );
+            case WORK_STEALING:
+                return new InstrumentedExecutorService(
+                        new ForkJoinPool(
+                                poolSize,
+                                pool -> {
+                                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                                    thread.setName("{\"type\":\"thrift\"}");
+                                    return thread;
+                                },
+                                null,
+                                true
+                        ),
+                        type
+                );
+            case VIRTUAL:
+                if (virtualExecutorFactory.isPresent()) {
+                    try {
+                        return new InstrumentedExecutorService(
+                                (ExecutorService) virtualExecutorFactory.get().invoke(),
+                                type
+                        );
+                    } catch (Throwable e) {
+                        log.error("Unable to create virtual thread executor, fixed pool used", e);
+                    }
+                } else {
+                    log.warn("Virtual threads require JDK 21+, fixed pool used");
+                }
+                return new InstrumentedExecutorService(fixed(poolSize), ThriftServerExecutorType.FIXED);
+            default:
+                throw new IllegalStateException("Executor " + type + " not implemented");
+        }
+    }
+
+    /**
+     * @return max number of requests processed concurrently by executor of create, 0 - unlimited
+     */
+    static int getThreadLimit(ThriftServerConfig config) {
+        if (config.getExecutorType() == ThriftServerExecutorType.VIRTUAL && virtualExecutorFactory.isPresent()) {
+            return 0;
+        }
+        return config.getThriftPoolSize();
+    }
+
+    /**
+     * Executor of thread-per-connection server, every task process all requests of one connection.
+     * Without queue - when all threads busy TThreadPoolServer wait for free thread before accept
+     */
+    static InstrumentedExecutorService createConnectionExecutor(ThriftServerConfig config) {
+        return new InstrumentedExecutorService(
+                new ThreadPoolExecutor(
+                        0,
+                        config.getThriftPoolSize(),
+                        CONNECTION_THREAD_KEEP_ALIVE_SECONDS,
+                        TimeUnit.SECONDS,
+                        new SynchronousQueue<>(),
+                        threadFactory()
+                ),
+                ThriftServerExecutorType.BOUNDED
+        );
+    }
+
+    private static ExecutorService fixed(int poolSize) {
+        return new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory()
+        );
+    }
+
+    private static ThreadFactory threadFactory() {
+        return r -> new Thread(r, "{\"type\":\"thrift\"}");
+    }
+
+    private static Optional<MethodHandle> findVirtualExecutorFactory() {
+        try {
+            return Optional.of(MethodHandles.publicLookup().findStatic(
+                    Executors.class,
+                    "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class)
+            ));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.qiwi.thrift.server;
+
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@SuppressWarnings("MagicNumber")
+public class CoDelAdmissionControllerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test(groups = "unit")
+    public void shedOnStandingQueue() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        CoDelAdmissionController controller = new CoDelAdmissionController(
+                Duration.ofMillis(5),
+                Duration.ofMillis(100),
+                clock::get
+        );
+
+        // Короткий всплеск - минимальное время в очереди меньше целевого
+        assertTrue(controller.tryAdmit(50 * MS));
+        assertTrue(controller.tryAdmit(MS));
+        clock.set(100 * MS);
+        assertTrue(controller.tryAdmit(20 * MS));
+        assertFalse(controller.isOverloaded());
+
+        // Очередь не рассасывается весь интервал
+        assertTrue(controller.tryAdmit(30 * MS));
+        clock.set(200 * MS);
+        assertTrue(controller.tryAdmit(30 * MS));
+        assertTrue(controller.isOverloaded());
+        assertFalse(controller.tryAdmit(30 * MS));
+        assertTrue(controller.tryAdmit(8 * MS));
+        assertEquals(controller.getShedCount(), 1);
+
+        // Очередь опустела
+        assertTrue(controller.tryAdmit(MS));
+        clock.set(300 * MS);
+        assertTrue(controller.tryAdmit(30 * MS));
+        assertFalse(controller.isOverloaded());
+        assertTrue(controller.tryAdmit(30 * MS));
+    }
+
+    @Test(groups = "unit")
+    public void idleIntervalNotOverloaded() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        CoDelAdmissionController controller = new CoDelAdmissionController(
+                Duration.ofMillis(5),
+                Duration.ofMillis(100),
+                clock::get
+        );
+        clock.set(1000 * MS);
+        assertTrue(controller.tryAdmit(30 * MS));
+        assertFalse(controller.isOverloaded());
+    }
+}
@@ -0,0 +1,47 @@
+package com.qiwi.thrift.server;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ThriftBulkheadTest {
+    @Test(groups = "unit")
+    public void limit() throws Exception {
+        ThriftBulkhead bulkhead = new ThriftBulkhead(2, null);
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        assertEquals(bulkhead.getActive(), 2);
+        bulkhead.release();
+        assertTrue(bulkhead.tryAcquire());
+    }
+
+    @Test(groups = "unit")
+    public void unlimited() throws Exception {
+        ThriftBulkhead bulkhead = new ThriftBulkhead(0, null);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(bulkhead.tryAcquire());
+        }
+        assertEquals(bulkhead.getActive(), 100);
+    }
+
+    @Test(groups = "unit")
+    public void parentLimit() throws Exception {
+        ThriftBulkhead server = new ThriftBulkhead(1, null);
+        ThriftBulkhead endpoint = new ThriftBulkhead(0, server);
+        ThriftBulkhead method = new ThriftBulkhead(5, endpoint);
+
+        assertTrue(method.tryAcquire());
+        assertFalse(endpoint.tryAcquire());
+        assertFalse(method.tryAcquire());
+        // Неудачная попытка не занимает место на нижних уровнях
+        assertEquals(method.getActive(), 1);
+        assertEquals(endpoint.getActive(), 1);
+
+        method.release();
+        assertEquals(server.getActive(), 0);
+        assertTrue(endpoint.tryAcquire());
+    }
+}
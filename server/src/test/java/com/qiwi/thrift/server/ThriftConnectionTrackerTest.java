@@ -0,0 +1,48 @@
+package com.qiwi.thrift.server;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+@SuppressWarnings("MagicNumber")
+public class ThriftConnectionTrackerTest {
+    @Test(groups = "unit")
+    public void countConnectionsAndRequests() throws Exception {
+        ThriftConnectionTracker tracker = new ThriftConnectionTracker("test");
+        ThriftConnectionTracker.Connection first = (ThriftConnectionTracker.Connection) tracker.createContext(null, null);
+        ThriftConnectionTracker.Connection second = (ThriftConnectionTracker.Connection) tracker.createContext(null, null);
+        assertNull(first.getClientAddress());
+
+        first.connected("/10.0.0.1");
+        second.connected("/10.0.0.1");
+        first.request();
+        first.request();
+        second.request();
+
+        ThriftClientStatistic statistic = tracker.getClient("/10.0.0.1");
+        assertEquals(first.getClientAddress(), "/10.0.0.1");
+        assertEquals(statistic.getActiveConnections(), 2);
+        assertEquals(statistic.getRequests(), 3);
+
+        tracker.deleteContext(first, null, null);
+        tracker.deleteContext(first, null, null);
+        assertEquals(statistic.getActiveConnections(), 1);
+        assertEquals(statistic.getConnections(), 2);
+        assertEquals(tracker.getClients().size(), 1);
+        tracker.close();
+        assertEquals(tracker.getClients().size(), 0);
+    }
+
+    @Test(groups = "unit")
+    public void limitClients() throws Exception {
+        ThriftConnectionTracker tracker = new ThriftConnectionTracker("test");
+        for (int i = 0; i < ThriftConnectionTracker.MAX_CLIENTS; i++) {
+            tracker.getClient("/10.0." + (i / 256) + '.' + (i % 256));
+        }
+        ThriftClientStatistic other = tracker.getClient("/192.168.0.1");
+        assertEquals(other.getClientAddress(), ThriftClientStatistic.OTHER_CLIENTS);
+        assertEquals(tracker.getClients().size(), ThriftConnectionTracker.MAX_CLIENTS + 1);
+        tracker.close();
+    }
+}
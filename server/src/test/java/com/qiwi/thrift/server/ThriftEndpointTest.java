@@ -0,0 +1,28 @@
+package com.qiwi.thrift.server;
+
+import com.qiwi.thrift.pool.server.DemoServer;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+
+public class ThriftEndpointTest {
+    @Test(groups = "unit", expectedExceptions = IllegalStateException.class)
+    public void limitWithoutHealthCheck() throws Exception {
+        new ThriftEndpoint.Builder<>(DemoServer.Iface.class, mock(DemoServer.Iface.class))
+                .setMethodMaxConcurrentRequests("request", 10)
+                .build();
+    }
+
+    @Test(groups = "unit")
+    public void limitWithHealthCheck() throws Exception {
+        ThriftEndpoint<DemoServer.Iface> endpoint = new ThriftEndpoint.Builder<>(DemoServer.Iface.class, mock(DemoServer.Iface.class))
+                .setMaxConcurrentRequests(10)
+                .setHealthCheckMethods(Collections.singleton("healthCheck"))
+                .build();
+
+        assertEquals(endpoint.getHealthCheckMethods(), Collections.singleton("healthCheck"));
+    }
+}
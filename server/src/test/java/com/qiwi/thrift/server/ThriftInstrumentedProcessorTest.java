@@ -0,0 +1,129 @@
+package com.qiwi.thrift.server;
+
+import com.qiwi.thrift.metrics.ThriftCallType;
+import com.qiwi.thrift.pool.server.DemoServer;
+import com.qiwi.thrift.pool.server.TestException;
+import com.qiwi.thrift.pool.types.MapResult;
+import com.qiwi.thrift.tracing.ThriftRequestReporter;
+import com.qiwi.thrift.utils.ThriftClientAddress;
+import com.qiwi.thrift.utils.ThriftRequestStatus;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@SuppressWarnings("MagicNumber")
+public class ThriftInstrumentedProcessorTest {
+    private static final ThriftClientAddress ADDRESS = ThriftClientAddress.parse("localhost:9090");
+
+    private static TProcessor createProcessor(DemoServer.Iface implementation, ThriftRequestReporter reporter) {
+        Optional<TProcessor> processor = ThriftInstrumentedProcessor.wrap(
+                new DemoServer.Processor<>(implementation),
+                implementation,
+                "DemoServer",
+                ADDRESS,
+                reporter
+        );
+        assertTrue(processor.isPresent());
+        return processor.get();
+    }
+
+    private static DemoServer.requestWithError_result call(TProcessor processor) throws Exception {
+        TMemoryBuffer request = new TMemoryBuffer(256);
+        TProtocol requestProtocol = new TBinaryProtocol(request);
+        requestProtocol.writeMessageBegin(new TMessage("requestWithError", TMessageType.CALL, 1));
+        new DemoServer.requestWithError_args("text", 42).write(requestProtocol);
+        requestProtocol.writeMessageEnd();
+
+        TMemoryBuffer response = new TMemoryBuffer(256);
+        assertTrue(processor.process(requestProtocol, new TBinaryProtocol(response)));
+
+        TProtocol responseProtocol = new TBinaryProtocol(response);
+        TMessage message = responseProtocol.readMessageBegin();
+        assertEquals(message.type, TMessageType.REPLY);
+        assertEquals(message.seqid, 1);
+        DemoServer.requestWithError_result result = new DemoServer.requestWithError_result();
+        result.read(responseProtocol);
+        responseProtocol.readMessageEnd();
+        return result;
+    }
+
+    @Test(groups = "unit")
+    public void success() throws Exception {
+        DemoServer.Iface implementation = mock(DemoServer.Iface.class);
+        MapResult expected = new MapResult();
+        when(implementation.requestWithError("text", 42)).thenReturn(expected);
+        ThriftRequestReporter reporter = mock(ThriftRequestReporter.class);
+
+        DemoServer.requestWithError_result result = call(createProcessor(implementation, reporter));
+
+        assertEquals(result.getSuccess(), expected);
+        verify(reporter).requestBegin("DemoServer", "requestWithError", ThriftCallType.SERVER);
+        verify(reporter).requestEnd(
+                eq("DemoServer"),
+                eq("requestWithError"),
+                eq(ThriftCallType.SERVER),
+                eq(ThriftRequestStatus.SUCCESS),
+                anyLong(),
+                eq(Optional.empty())
+        );
+    }
+
+    @Test(groups = "unit")
+    public void declaredException() throws Exception {
+        DemoServer.Iface implementation = mock(DemoServer.Iface.class);
+        TestException exception = new TestException("fail");
+        when(implementation.requestWithError("text", 42)).thenThrow(exception);
+        ThriftRequestReporter reporter = mock(ThriftRequestReporter.class);
+
+        DemoServer.requestWithError_result result = call(createProcessor(implementation, reporter));
+
+        assertEquals(result.getError(), exception);
+        verify(reporter).requestEnd(
+                eq("DemoServer"),
+                eq("requestWithError"),
+                eq(ThriftCallType.SERVER),
+                eq(ThriftRequestStatus.UNEXPECTED_ERROR),
+                anyLong(),
+                eq(Optional.of(exception))
+        );
+    }
+
+    @Test(groups = "unit")
+    public void error() throws Exception {
+        DemoServer.Iface implementation = mock(DemoServer.Iface.class);
+        OutOfMemoryError error = new OutOfMemoryError("fail");
+        when(implementation.requestWithError("text", 42)).thenThrow(error);
+        ThriftRequestReporter reporter = mock(ThriftRequestReporter.class);
+
+        try {
+            call(createProcessor(implementation, reporter));
+            fail("Error must be rethrown");
+        } catch (OutOfMemoryError ex) {
+            assertSame(ex, error);
+        }
+        verify(reporter).requestEnd(
+                eq("DemoServer"),
+                eq("requestWithError"),
+                eq(ThriftCallType.SERVER),
+                eq(ThriftRequestStatus.UNEXPECTED_ERROR),
+                anyLong(),
+                eq(Optional.of(error))
+        );
+    }
+}
@@ -0,0 +1,108 @@
+package com.qiwi.thrift.server;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@SuppressWarnings("MagicNumber")
+public class ThriftServerExecutorsTest {
+
+    private static ThriftServerConfig.Builder builder() {
+        return new ThriftServerConfig.Builder()
+                .setThriftPoolSize(1);
+    }
+
+    @Test(groups = "unit")
+    public void boundedReject() throws Exception {
+        InstrumentedExecutorService executor = ThriftServerExecutors.create(builder()
+                .setExecutorType(ThriftServerExecutorType.BOUNDED)
+                .setExecutorQueueSize(1)
+                .setExecutorRejectionPolicy(ThriftServerExecutorType.RejectionPolicy.REJECT)
+                .build());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            executor.execute(() -> { });
+            assertEquals(executor.getActive(), 1);
+            assertEquals(executor.getQueued(), 1);
+            try {
+                executor.execute(() -> { });
+                fail("Queue full");
+            } catch (RejectedExecutionException expected) {
+                assertEquals(executor.getRejected(), 1);
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(executor.getCompleted(), 2);
+        assertEquals(executor.getQueued(), 0);
+    }
+
+    @Test(groups = "unit")
+    public void boundedCallerRuns() throws Exception {
+        InstrumentedExecutorService executor = ThriftServerExecutors.create(builder()
+                .setExecutorType(ThriftServerExecutorType.BOUNDED)
+                .setExecutorQueueSize(1)
+                .build());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            executor.execute(() -> { });
+            Thread[] runner = new Thread[1];
+            executor.execute(() -> runner[0] = Thread.currentThread());
+            assertEquals(runner[0], Thread.currentThread());
+            assertEquals(executor.getRejected(), 0);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(executor.getCompleted(), 3);
+    }
+
+    @Test(groups = "unit")
+    public void workStealingAndVirtual() throws Exception {
+        for (ThriftServerExecutorType type : new ThriftServerExecutorType[]{
+                ThriftServerExecutorType.WORK_STEALING,
+                ThriftServerExecutorType.VIRTUAL,
+        }) {
+            InstrumentedExecutorService executor = ThriftServerExecutors.create(builder()
+                    .setExecutorType(type)
+                    .build());
+            CountDownLatch done = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++) {
+                executor.execute(done::countDown);
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(executor.getCompleted(), 10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}